@@ -0,0 +1,158 @@
+// Copyright 2026-10-19 PlanBase Inc. & Glen Peterson
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.planbase.pdf.layoutmanager.bench;
+
+import com.planbase.pdf.layoutmanager.Cell;
+import com.planbase.pdf.layoutmanager.Coord;
+import com.planbase.pdf.layoutmanager.LogicalPage;
+import com.planbase.pdf.layoutmanager.PdfLayoutMgr;
+import com.planbase.pdf.layoutmanager.TableBuilder;
+import com.planbase.pdf.layoutmanager.TablePart;
+import com.planbase.pdf.layoutmanager.Text;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ <p>Typical table and paragraph workloads, with each operation counted as one rendered cell, one
+ wrapped line, or one committed page.  Run them with the GC profiler (AllocationMain does this)
+ and gc.alloc.rate.norm is the number of bytes allocated per cell, line or page.</p>
+
+ <p>Rendering goes from Cell.render() through LogicalPage into the PageBuffer of each physical
+ page.  Committing sends every buffered PdfItem to PDFBox with PdfItem.commit().</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AllocationBenchmark {
+    private static final int ROWS = 100;
+    private static final int COLS = 5;
+    private static final int CELLS = ROWS * COLS;
+
+    /** The paragraph is the same every time, so it always wraps to the same number of lines. */
+    private static final int PARAGRAPH_LINES = 74;
+    private static final double PARAGRAPH_WIDTH = 300;
+
+    private static final int PAGES = 10;
+
+    private String[][] cells;
+    private String paragraph;
+
+    @Setup public void setUpText() {
+        cells = new String[ROWS][COLS];
+        for (int r = 0; r < ROWS; r++) {
+            for (int c = 0; c < COLS; c++) {
+                cells[r][c] = Fixtures.winAnsiWords(15 + ((c % 3) * 10), (r * COLS) + c);
+            }
+        }
+        paragraph = Fixtures.winAnsiWords(5000, 11);
+        double padding = Fixtures.CELL.padding().left() + Fixtures.CELL.padding().right();
+        long lines = Math.round(Text.of(Fixtures.TEXT, paragraph)
+                                    .calcDimensions(PARAGRAPH_WIDTH - padding).getHeight() /
+                                Fixtures.TEXT.lineHeight());
+        if (lines != PARAGRAPH_LINES) {
+            throw new IllegalStateException("Expected the paragraph to wrap to " +
+                                            PARAGRAPH_LINES + " lines, not " + lines);
+        }
+    }
+
+    /** A fresh logical page to render onto.  It's committed and saved outside the measurement. */
+    @State(Scope.Thread)
+    public static class Page {
+        PdfLayoutMgr pageMgr;
+        LogicalPage lp;
+
+        @Setup(Level.Invocation) public void setUpPage() {
+            pageMgr = PdfLayoutMgr.newRgbPageMgr();
+            lp = pageMgr.logicalPageStart(LogicalPage.Orientation.PORTRAIT);
+        }
+
+        @TearDown(Level.Invocation) public void tearDownPage() throws IOException {
+            lp.commit();
+            pageMgr.save(OutputStream.nullOutputStream());
+        }
+    }
+
+    /** Bytes per table cell, from TableBuilder down to the PageBuffer. */
+    @Benchmark @OperationsPerInvocation(CELLS)
+    public Coord tableCell(Page page) {
+        LogicalPage lp = page.lp;
+        TableBuilder tb = lp.tableBuilder(Coord.of(40, lp.yPageTop()));
+        tb.addCellWidths(100, 100, 100, 100, 100);
+        TablePart part = tb.partBuilder().cellStyle(Fixtures.CELL).textStyle(Fixtures.TEXT);
+        for (String[] row : cells) {
+            part.rowBuilder().addTextCells(row).buildRow();
+        }
+        part.buildPart();
+        return tb.buildTable();
+    }
+
+    /** Bytes per wrapped line of a paragraph in a single cell, including the wrapping. */
+    @Benchmark @OperationsPerInvocation(PARAGRAPH_LINES)
+    public Coord paragraphLine(Page page) {
+        LogicalPage lp = page.lp;
+        return lp.putCell(40, lp.yPageTop(),
+                          Cell.of(Fixtures.CELL, PARAGRAPH_WIDTH, Fixtures.TEXT, paragraph));
+    }
+
+    /** A logical page of text that fills PAGES physical pages, ready to commit. */
+    @State(Scope.Thread)
+    public static class Committing {
+        PdfLayoutMgr pageMgr;
+        LogicalPage lp;
+
+        @Setup(Level.Invocation) public void setUpPages() {
+            pageMgr = PdfLayoutMgr.newRgbPageMgr();
+            lp = pageMgr.logicalPageStart(LogicalPage.Orientation.PORTRAIT);
+            double lineHeight = 14;
+            double y = lp.yPageTop();
+            double pageHeight = lp.yPageTop() - lp.yPageBottom();
+            int linesPerPage = (int) (pageHeight / lineHeight);
+            for (int i = 0; i < PAGES * linesPerPage; i++) {
+                lp.putCell(40, y - (i * lineHeight),
+                           Cell.of(Fixtures.CELL, 500, Fixtures.TEXT,
+                                   "Line " + i + " of the quarterly report"));
+            }
+        }
+
+        @TearDown(Level.Invocation) public void tearDownPages() throws IOException {
+            pageMgr.save(OutputStream.nullOutputStream());
+        }
+    }
+
+    /** Bytes per committed page, mostly PdfItem.commit() into PDFBox. */
+    @Benchmark @OperationsPerInvocation(PAGES)
+    public PdfLayoutMgr committedPage(Committing state) throws IOException {
+        return state.lp.commit();
+    }
+}
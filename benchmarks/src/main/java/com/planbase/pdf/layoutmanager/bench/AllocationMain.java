@@ -0,0 +1,45 @@
+// Copyright 2026-10-19 PlanBase Inc. & Glen Peterson
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.planbase.pdf.layoutmanager.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ Runs AllocationBenchmark under the JMH GC profiler and writes JSON results to
+ target/jmh-alloc-result.json.  The gc.alloc.rate.norm metric in those results is bytes per cell,
+ wrapped line or committed page.  Other JMH options on the command line still apply:
+
+ <pre><code>java -cp target/benchmarks.jar com.planbase.pdf.layoutmanager.bench.AllocationMain -f 2</code></pre>
+ */
+public class AllocationMain {
+    static final String RESULT_FILE = "target/jmh-alloc-result.json";
+
+    public static void main(String[] args) throws Exception {
+        Options opts = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .include(AllocationBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result(RESULT_FILE)
+                .build();
+        new Runner(opts).run();
+    }
+}
@@ -0,0 +1,42 @@
+// Copyright 2026-10-19 PlanBase Inc. & Glen Peterson
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.planbase.pdf.layoutmanager.bench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ Runs JMH, writing machine-readable results to target/jmh-result.json unless the command line
+ already says where (or in what format) to put them.  All other arguments are passed through to
+ JMH unchanged, so <code>-h</code> lists the options.
+ */
+public class BenchmarkMain {
+    static final String DEFAULT_RESULT_FILE = "target/jmh-result.json";
+
+    public static void main(String[] args) throws Exception {
+        List<String> allArgs = new ArrayList<>(Arrays.asList(args));
+        if (!allArgs.contains("-rf")) {
+            allArgs.add("-rf");
+            allArgs.add("json");
+        }
+        if (!allArgs.contains("-rff")) {
+            allArgs.add("-rff");
+            allArgs.add(DEFAULT_RESULT_FILE);
+        }
+        org.openjdk.jmh.Main.main(allArgs.toArray(new String[0]));
+    }
+}
@@ -0,0 +1,96 @@
+// Copyright 2026-10-19 PlanBase Inc. & Glen Peterson
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.planbase.pdf.layoutmanager.bench;
+
+import com.planbase.pdf.layoutmanager.Cell;
+import com.planbase.pdf.layoutmanager.LogicalPage;
+import com.planbase.pdf.layoutmanager.PdfLayoutMgr;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ Measures LogicalPage.commit(), which writes the content stream of every physical page the
+ logical page covers (about 50 lines of text per page) and compresses it at the given level.
+ A small commit takes well under a millisecond, so each invocation commits BATCH logical pages
+ and JMH divides by that.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CommitBenchmark {
+    @Param({"100", "1000"})
+    public int lines;
+
+    /** Deflater.NO_COMPRESSION, BEST_SPEED and DEFAULT_COMPRESSION. */
+    @Param({"0", "1", "-1"})
+    public int compressionLevel;
+
+    private static final int BATCH = 10;
+
+    private String[] strs;
+    private final PdfLayoutMgr[] pageMgrs = new PdfLayoutMgr[BATCH];
+    private final LogicalPage[] lps = new LogicalPage[BATCH];
+
+    @Setup public void setUpText() {
+        strs = new String[lines];
+        for (int i = 0; i < lines; i++) { strs[i] = Fixtures.winAnsiWords(70, i); }
+    }
+
+    @Setup(Level.Invocation) public void setUpPages() {
+        for (int b = 0; b < BATCH; b++) {
+            pageMgrs[b] = PdfLayoutMgr.newRgbPageMgr().compressionLevel(compressionLevel);
+            LogicalPage lp = pageMgrs[b].logicalPageStart(LogicalPage.Orientation.PORTRAIT);
+            for (int i = 0; i < lines; i++) {
+                lp.putCell(40, lp.yPageTop() - (i * 14),
+                           Cell.of(Fixtures.CELL, 500, Fixtures.TEXT, strs[i]));
+            }
+            lps[b] = lp;
+        }
+    }
+
+    @TearDown(Level.Invocation) public void tearDownPages() throws IOException {
+        for (PdfLayoutMgr pageMgr : pageMgrs) {
+            pageMgr.save(OutputStream.nullOutputStream());
+        }
+    }
+
+    @Benchmark @OperationsPerInvocation(BATCH)
+    public void commit(Blackhole bh) throws IOException {
+        for (LogicalPage lp : lps) {
+            bh.consume(lp.commit());
+        }
+    }
+}
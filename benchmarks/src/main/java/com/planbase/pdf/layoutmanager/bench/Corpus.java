@@ -0,0 +1,306 @@
+// Copyright 2026-10-19 PlanBase Inc. & Glen Peterson
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.planbase.pdf.layoutmanager.bench;
+
+import com.planbase.pdf.layoutmanager.BorderStyle;
+import com.planbase.pdf.layoutmanager.Cell;
+import com.planbase.pdf.layoutmanager.CellStyle;
+import com.planbase.pdf.layoutmanager.Coord;
+import com.planbase.pdf.layoutmanager.LineStyle;
+import com.planbase.pdf.layoutmanager.LogicalPage;
+import com.planbase.pdf.layoutmanager.Padding;
+import com.planbase.pdf.layoutmanager.PdfLayoutMgr;
+import com.planbase.pdf.layoutmanager.Renderable;
+import com.planbase.pdf.layoutmanager.ScaledJpeg;
+import com.planbase.pdf.layoutmanager.ScaledPng;
+import com.planbase.pdf.layoutmanager.TableBuilder;
+import com.planbase.pdf.layoutmanager.TablePart;
+import com.planbase.pdf.layoutmanager.Text;
+import com.planbase.pdf.layoutmanager.TextStyle;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ <p>Realistic documents for measuring the whole library end to end.  Each workload is generated
+ from fixed seeds, so the same scale always makes the same pages.  At a scale of 1:</p>
+
+ <ul>
+   <li>INVOICES: 500 separate one-page invoices, each with a logo, a header and 20 line items.</li>
+   <li>LEDGER: one 100,000-row, 7-column ledger built with TableBuilder.</li>
+   <li>CATALOG: one catalog of 500 distinct product images, alternating ScaledJpeg and
+   ScaledPng, three to a row with captions.</li>
+   <li>CONTRACT: one contract of about 300 pages of numbered clauses, each a Cell nested inside
+   its section's Cell.</li>
+ </ul>
+
+ <p>Input data (strings and images) is made before the clock starts.  The documents are saved to
+ memory, as a server would before sending them.</p>
+ */
+public enum Corpus {
+    INVOICES(500) {
+        private BufferedImage logo;
+        private List<String[][]> invoices;
+
+        @Override void prepare(int n) {
+            logo = Fixtures.photo(120, 40);
+            Random rand = new Random(101);
+            invoices = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                String[][] items = new String[20][];
+                for (int r = 0; r < items.length; r++) {
+                    int qty = 1 + rand.nextInt(20);
+                    int cents = 100 + rand.nextInt(50000);
+                    items[r] = new String[] { "SKU-" + (10000 + rand.nextInt(90000)),
+                                              Fixtures.winAnsiWords(20 + rand.nextInt(40),
+                                                                    rand.nextLong()),
+                                              Integer.toString(qty), money(cents),
+                                              money(qty * cents) };
+                }
+                invoices.add(items);
+            }
+        }
+
+        @Override List<byte[]> generate() throws IOException {
+            List<byte[]> docs = new ArrayList<>(invoices.size());
+            for (int i = 0; i < invoices.size(); i++) {
+                PdfLayoutMgr pageMgr = PdfLayoutMgr.newRgbPageMgr();
+                LogicalPage lp = pageMgr.logicalPageStart(LogicalPage.Orientation.PORTRAIT);
+                double y = lp.yPageTop();
+                lp.putCell(40, y, Cell.of(PLAIN, 130, ScaledPng.of(logo)));
+                lp.putCell(380, y, Cell.of(PLAIN, 190, lines(HEADING, "INVOICE #" + (2026000 + i),
+                                                             "Date: 2026-10-19",
+                                                             "Terms: Net 30")));
+                y = lp.putCell(40, y - 60, Cell.of(PLAIN, 250,
+                                                   lines(BODY, "Bill to:", "Customer " + i,
+                                                         (100 + i) + " Main Street",
+                                                         "Springfield, ST 12345"))).getY() - 20;
+                TableBuilder tb = lp.tableBuilder(Coord.of(40, y));
+                tb.addCellWidths(70, 230, 50, 90, 90);
+                TablePart header = tb.partBuilder().cellStyle(GRID).textStyle(BOLD);
+                header.rowBuilder().addTextCells("Item", "Description", "Qty", "Price", "Amount")
+                      .buildRow();
+                header.buildPart();
+                TablePart body = tb.partBuilder().cellStyle(GRID).textStyle(BODY);
+                for (String[] item : invoices.get(i)) {
+                    body.rowBuilder().addTextCells(item).buildRow();
+                }
+                body.buildPart();
+                y = tb.buildTable().getY();
+                lp.putCell(380, y - 10, Cell.of(PLAIN, 150, BOLD, "Total due: $1,234.56"));
+                docs.add(save(pageMgr, lp));
+            }
+            return docs;
+        }
+    },
+
+    LEDGER(100000) {
+        private String[][] rows;
+
+        @Override void prepare(int n) {
+            Random rand = new Random(202);
+            rows = new String[n][];
+            long balance = 0;
+            for (int r = 0; r < n; r++) {
+                long amount = rand.nextInt(200000) - 90000;
+                balance += amount;
+                rows[r] = new String[] { Integer.toString(r + 1),
+                                         "2026-" + pad2(1 + ((r / 9000) % 12)) + "-" +
+                                         pad2(1 + ((r / 300) % 28)),
+                                         Integer.toString(1000 + rand.nextInt(9000)),
+                                         Fixtures.winAnsiWords(10 + rand.nextInt(30),
+                                                               rand.nextLong()),
+                                         (amount < 0) ? "" : money(amount),
+                                         (amount < 0) ? money(-amount) : "",
+                                         money(balance) };
+            }
+        }
+
+        @Override List<byte[]> generate() throws IOException {
+            PdfLayoutMgr pageMgr = PdfLayoutMgr.newRgbPageMgr();
+            LogicalPage lp = pageMgr.logicalPageStart(LogicalPage.Orientation.LANDSCAPE);
+            TableBuilder tb = lp.tableBuilder(Coord.of(40, lp.yPageTop()));
+            tb.addCellWidths(50, 70, 50, 230, 80, 80, 90);
+            TablePart header = tb.partBuilder().cellStyle(GRID).textStyle(BOLD);
+            header.rowBuilder().addTextCells("Entry", "Date", "Account", "Memo", "Debit",
+                                             "Credit", "Balance").buildRow();
+            header.buildPart();
+            TablePart body = tb.partBuilder().cellStyle(GRID).textStyle(BODY);
+            for (String[] row : rows) {
+                body.rowBuilder().addTextCells(row).buildRow();
+            }
+            body.buildPart();
+            tb.buildTable();
+            List<byte[]> docs = new ArrayList<>(1);
+            docs.add(save(pageMgr, lp));
+            return docs;
+        }
+    },
+
+    CATALOG(500) {
+        private List<BufferedImage> images;
+        private List<String> captions;
+
+        @Override void prepare(int n) {
+            Random rand = new Random(303);
+            images = new ArrayList<>(n);
+            captions = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                images.add(product(rand, 160, 120));
+                captions.add("Item " + (i + 1) + ": " +
+                             Fixtures.winAnsiWords(30 + rand.nextInt(50), rand.nextLong()) +
+                             " - " + money(100 + rand.nextInt(100000)));
+            }
+        }
+
+        @Override List<byte[]> generate() throws IOException {
+            PdfLayoutMgr pageMgr = PdfLayoutMgr.newRgbPageMgr();
+            LogicalPage lp = pageMgr.logicalPageStart(LogicalPage.Orientation.PORTRAIT);
+            TableBuilder tb = lp.tableBuilder(Coord.of(40, lp.yPageTop()));
+            tb.addCellWidths(170, 170, 170);
+            TablePart part = tb.partBuilder().cellStyle(GRID).textStyle(BODY);
+            for (int i = 0; i < images.size(); i += 3) {
+                Cell[] cells = new Cell[3];
+                for (int c = 0; c < 3; c++) {
+                    List<Renderable> contents = new ArrayList<>(2);
+                    int idx = i + c;
+                    if (idx < images.size()) {
+                        BufferedImage bi = images.get(idx);
+                        contents.add(((idx % 2) == 0) ? ScaledJpeg.of(bi, 160, 120)
+                                                      : ScaledPng.of(bi, 160, 120));
+                        contents.add(Text.of(BODY, captions.get(idx)));
+                    }
+                    cells[c] = Cell.of(GRID, 170, contents);
+                }
+                part.rowBuilder().addCells(cells).buildRow();
+            }
+            part.buildPart();
+            tb.buildTable();
+            List<byte[]> docs = new ArrayList<>(1);
+            docs.add(save(pageMgr, lp));
+            return docs;
+        }
+    },
+
+    CONTRACT(300) {
+        // About this many clauses fill a page.
+        private static final int CLAUSES_PER_PAGE = 11;
+        private List<String[]> sections;
+
+        @Override void prepare(int pages) {
+            Random rand = new Random(404);
+            sections = new ArrayList<>();
+            int clauses = pages * CLAUSES_PER_PAGE;
+            while (clauses > 0) {
+                String[] section = new String[Math.min(clauses, 3 + rand.nextInt(8))];
+                for (int c = 0; c < section.length; c++) {
+                    section[c] = Fixtures.winAnsiWords(300 + rand.nextInt(500), rand.nextLong());
+                }
+                sections.add(section);
+                clauses -= section.length;
+            }
+        }
+
+        @Override List<byte[]> generate() throws IOException {
+            PdfLayoutMgr pageMgr = PdfLayoutMgr.newRgbPageMgr();
+            LogicalPage lp = pageMgr.logicalPageStart(LogicalPage.Orientation.PORTRAIT);
+            lp.putCellAsHeaderFooter(40, 30, Cell.of(PLAIN, 500, BODY,
+                                                     "Master Services Agreement - Confidential"));
+            double y = lp.yPageTop();
+            for (int s = 0; s < sections.size(); s++) {
+                String[] section = sections.get(s);
+                List<Renderable> clauses = new ArrayList<>(section.length + 1);
+                clauses.add(Text.of(HEADING, "Section " + (s + 1)));
+                for (int c = 0; c < section.length; c++) {
+                    // Each clause is its own indented cell inside the section's cell.
+                    clauses.add(Cell.of(CLAUSE, 480, BODY, (s + 1) + "." + (c + 1) + "  " +
+                                                          section[c]));
+                }
+                y = lp.putCell(40, y, Cell.of(PLAIN, 500, clauses)).getY() - 8;
+            }
+            List<byte[]> docs = new ArrayList<>(1);
+            docs.add(save(pageMgr, lp));
+            return docs;
+        }
+    };
+
+    private static final TextStyle BODY = TextStyle.of(PDType1Font.TIMES_ROMAN, 10, Color.BLACK);
+    private static final TextStyle BOLD = TextStyle.of(PDType1Font.HELVETICA_BOLD, 9, Color.BLACK);
+    private static final TextStyle HEADING = TextStyle.of(PDType1Font.HELVETICA_BOLD, 12,
+                                                          new Color(0, 0, 120));
+    private static final CellStyle PLAIN = CellStyle.of(CellStyle.Align.TOP_LEFT, Padding.of(2),
+                                                        null, null);
+    private static final CellStyle GRID =
+            CellStyle.of(CellStyle.Align.TOP_LEFT, Padding.of(3), null,
+                         BorderStyle.of(Color.GRAY, 0.5));
+    private static final CellStyle CLAUSE =
+            CellStyle.of(CellStyle.Align.TOP_LEFT, Padding.of(2, 2, 4, 20), null,
+                         BorderStyle.NO_BORDERS.left(LineStyle.of(Color.LIGHT_GRAY)));
+
+    /** The size of this workload at a scale of 1: invoices, rows, images or pages. */
+    final int fullSize;
+
+    Corpus(int n) { fullSize = n; }
+
+    /** Makes the input data for the given number of invoices, rows, images or pages. */
+    abstract void prepare(int n);
+
+    /** Lays out and saves the prepared documents, returning each one's bytes. */
+    abstract List<byte[]> generate() throws IOException;
+
+    /** Prepares the input data for this workload at the given scale (1.0 is the full size). */
+    void prepareScaled(double scale) { prepare(Math.max(1, (int) Math.round(fullSize * scale))); }
+
+    private static byte[] save(PdfLayoutMgr pageMgr, LogicalPage lp) throws IOException {
+        lp.commit();
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        pageMgr.save(bos);
+        return bos.toByteArray();
+    }
+
+    private static List<Renderable> lines(TextStyle style, String... ss) {
+        List<Renderable> ls = new ArrayList<>(ss.length);
+        for (String s : ss) { ls.add(Text.of(style, s)); }
+        return ls;
+    }
+
+    private static String money(long cents) {
+        return String.format("$%,d.%02d", cents / 100, cents % 100);
+    }
+
+    private static String pad2(int i) { return (i < 10) ? "0" + i : Integer.toString(i); }
+
+    /** A product shot: a colored blob on a light background, with a little noise. */
+    private static BufferedImage product(Random rand, int width, int height) {
+        BufferedImage bi = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        int color = rand.nextInt(0xffffff);
+        int cx = width / 2, cy = height / 2, r2 = (height * height) / 9;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int dx = x - cx, dy = y - cy;
+                int rgb = ((dx * dx) + (dy * dy) < r2) ? color : 0xf0f0f0;
+                bi.setRGB(x, y, rgb ^ rand.nextInt(8));
+            }
+        }
+        return bi;
+    }
+}
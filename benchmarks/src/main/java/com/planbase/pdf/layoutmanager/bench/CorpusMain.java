@@ -0,0 +1,157 @@
+// Copyright 2026-10-19 PlanBase Inc. & Glen Peterson
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.planbase.pdf.layoutmanager.bench;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ <p>Runs the Corpus workloads and reports wall time, pages per second, bytes allocated and output
+ bytes for each one.  Prints a table and writes the same numbers as JSON to
+ target/corpus-result.json.</p>
+
+ <pre><code>java -cp target/benchmarks.jar com.planbase.pdf.layoutmanager.bench.CorpusMain [options] [workload...]
+
+ --scale 0.1   make each workload a tenth of its full size (default 1)
+ --warmup 1    untimed runs of each workload first (default 1)
+ --runs 3      timed runs of each workload; the median is reported (default 3)
+ --out file    where to write the JSON (default target/corpus-result.json)</code></pre>
+
+ <p>Workloads are INVOICES, LEDGER, CATALOG and CONTRACT (default all).  Allocation is counted on
+ the running thread only, so image compression that's spread across other threads isn't
+ included.</p>
+ */
+public class CorpusMain {
+    static final class Result {
+        final Corpus workload;
+        final double scale;
+        final int docs;
+        final int pages;
+        final long outputBytes;
+        final long wallNanos;
+        final long allocatedBytes;
+
+        Result(Corpus w, double s, int d, int p, long out, long wall, long alloc) {
+            workload = w; scale = s; docs = d; pages = p; outputBytes = out; wallNanos = wall;
+            allocatedBytes = alloc;
+        }
+
+        double pagesPerSecond() { return pages / (wallNanos / 1e9); }
+
+        String toJson() {
+            return String.format(Locale.ROOT,
+                                 "{\"workload\":\"%s\",\"scale\":%s,\"documents\":%d,\"pages\":%d," +
+                                 "\"wallMillis\":%.3f,\"pagesPerSecond\":%.2f," +
+                                 "\"allocatedBytes\":%d,\"outputBytes\":%d}",
+                                 workload.name(), scale, docs, pages, wallNanos / 1e6,
+                                 pagesPerSecond(), allocatedBytes, outputBytes);
+        }
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /** Prepares and runs one workload, returning the median of the timed runs. */
+    static Result measure(Corpus workload, double scale, int warmups, int runs) throws IOException {
+        workload.prepareScaled(scale);
+        for (int i = 0; i < warmups; i++) {
+            workload.generate();
+        }
+        long[] walls = new long[runs];
+        long[] allocs = new long[runs];
+        List<byte[]> docs = null;
+        for (int i = 0; i < runs; i++) {
+            // Let the last run's output go before measuring this one.
+            docs = null;
+            System.gc();
+            long alloc = allocatedBytes();
+            long start = System.nanoTime();
+            docs = workload.generate();
+            walls[i] = System.nanoTime() - start;
+            allocs[i] = allocatedBytes() - alloc;
+        }
+        // Same seeds, same pages, so any run will do for counting.
+        int pages = 0;
+        long outputBytes = 0;
+        for (byte[] doc : docs) {
+            outputBytes += doc.length;
+            try (PDDocument pd = PDDocument.load(doc)) {
+                pages += pd.getNumberOfPages();
+            }
+        }
+        Arrays.sort(walls);
+        Arrays.sort(allocs);
+        return new Result(workload, scale, docs.size(), pages, outputBytes, walls[runs / 2],
+                          allocs[runs / 2]);
+    }
+
+    public static void main(String[] args) throws IOException {
+        double scale = 1;
+        int warmups = 1;
+        int runs = 3;
+        Path out = Paths.get("target", "corpus-result.json");
+        Set<Corpus> workloads = EnumSet.noneOf(Corpus.class);
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--scale": scale = Double.parseDouble(args[++i]); break;
+                case "--warmup": warmups = Integer.parseInt(args[++i]); break;
+                case "--runs": runs = Integer.parseInt(args[++i]); break;
+                case "--out": out = Paths.get(args[++i]); break;
+                default: workloads.add(Corpus.valueOf(args[i].toUpperCase(Locale.ROOT)));
+            }
+        }
+        if (runs < 1) { throw new IllegalArgumentException("Need at least one run"); }
+        if (workloads.isEmpty()) { workloads = EnumSet.allOf(Corpus.class); }
+
+        List<Result> results = new ArrayList<>();
+        System.out.println(String.format("%-10s %6s %7s %10s %10s %12s %12s", "workload", "docs",
+                                         "pages", "wall ms", "pages/s", "alloc MB", "output KB"));
+        for (Corpus workload : workloads) {
+            Result r = measure(workload, scale, warmups, runs);
+            results.add(r);
+            System.out.println(String.format("%-10s %6d %7d %10.1f %10.1f %12.1f %12d",
+                                             workload.name(), r.docs, r.pages, r.wallNanos / 1e6,
+                                             r.pagesPerSecond(), r.allocatedBytes / 1048576.0,
+                                             r.outputBytes / 1024));
+        }
+
+        if (out.getParent() != null) { Files.createDirectories(out.getParent()); }
+        try (PrintWriter pw = new PrintWriter(Files.newBufferedWriter(out, StandardCharsets.UTF_8))) {
+            pw.println("[");
+            for (int i = 0; i < results.size(); i++) {
+                pw.print("  " + results.get(i).toJson());
+                pw.println((i < results.size() - 1) ? "," : "");
+            }
+            pw.println("]");
+        }
+        System.out.println("Wrote " + out);
+    }
+}
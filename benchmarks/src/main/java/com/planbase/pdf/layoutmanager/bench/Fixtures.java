@@ -0,0 +1,92 @@
+// Copyright 2026-10-19 PlanBase Inc. & Glen Peterson
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.planbase.pdf.layoutmanager.bench;
+
+import com.planbase.pdf.layoutmanager.Cell;
+import com.planbase.pdf.layoutmanager.CellStyle;
+import com.planbase.pdf.layoutmanager.LogicalPage;
+import com.planbase.pdf.layoutmanager.Padding;
+import com.planbase.pdf.layoutmanager.PdfLayoutMgr;
+import com.planbase.pdf.layoutmanager.ScaledPng;
+import com.planbase.pdf.layoutmanager.TextStyle;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.Random;
+
+/** Inputs shared by the benchmarks.  Everything is generated from fixed seeds. */
+final class Fixtures {
+    private Fixtures() { throw new UnsupportedOperationException("No instances!"); }
+
+    static final TextStyle TEXT = TextStyle.of(PDType1Font.HELVETICA, 9, Color.BLACK);
+    static final CellStyle CELL = CellStyle.of(CellStyle.Align.TOP_LEFT, Padding.of(2), null, null);
+
+    private static final String[] WORDS = new String[] {
+            "the", "quarterly", "report", "shows", "revenue", "of", "Ωmega", "café", "and",
+            "“quoted”", "widgets", "—", "shipped", "to", "Zürich", "on", "time", "naïve", "bullets",
+            "€12.50", "per", "unit", "Привет", "from", "a", "customer" };
+
+    /** Returns roughly the given number of characters of words separated by single spaces. */
+    static String words(int length, long seed) {
+        Random rand = new Random(seed);
+        StringBuilder sb = new StringBuilder(length + 16);
+        while (sb.length() < length) {
+            if (sb.length() > 0) { sb.append(' '); }
+            sb.append(WORDS[rand.nextInt(WORDS.length)]);
+        }
+        return sb.toString();
+    }
+
+    /** Same as words(), but only with characters that WinAnsi can encode. */
+    static String winAnsiWords(int length, long seed) {
+        return words(length, seed).replace("Ωmega", "omega").replace("Привет", "hello");
+    }
+
+    /** An opaque image with smooth gradients and a little noise, like a small photo. */
+    static BufferedImage photo(int width, int height) {
+        Random rand = new Random(7);
+        BufferedImage bi = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                bi.setRGB(x, y, (((x * 255) / width) << 16) | (((y * 255) / height) << 8) |
+                                rand.nextInt(32));
+            }
+        }
+        return bi;
+    }
+
+    private static final BufferedImage REPORT_PHOTO = photo(200, 150);
+
+    /**
+     Lays out and commits the given number of pages, each with the same small photo at the top and
+     30 lines of text under it.
+     */
+    static PdfLayoutMgr report(PdfLayoutMgr pageMgr, int pages) throws IOException {
+        for (int p = 0; p < pages; p++) {
+            LogicalPage lp = pageMgr.logicalPageStart(LogicalPage.Orientation.PORTRAIT);
+            lp.putCell(40, lp.yPageTop(), Cell.of(CELL, 200, ScaledPng.of(REPORT_PHOTO, 200, 150)));
+            for (int i = 0; i < 30; i++) {
+                lp.putCell(40, lp.yPageTop() - 160 - (i * 14),
+                           Cell.of(CELL, 500, TEXT, "Page " + p + " line " + i + " " +
+                                                    winAnsiWords(60, (p * 31) + i)));
+            }
+            lp.commit();
+        }
+        return pageMgr;
+    }
+}
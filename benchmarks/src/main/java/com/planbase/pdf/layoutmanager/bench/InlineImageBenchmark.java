@@ -0,0 +1,77 @@
+// Copyright 2026-10-19 PlanBase Inc. & Glen Peterson
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.planbase.pdf.layoutmanager.bench;
+
+import com.planbase.pdf.layoutmanager.Cell;
+import com.planbase.pdf.layoutmanager.CellStyle;
+import com.planbase.pdf.layoutmanager.LogicalPage;
+import com.planbase.pdf.layoutmanager.Padding;
+import com.planbase.pdf.layoutmanager.PdfLayoutMgr;
+import com.planbase.pdf.layoutmanager.ScaledPng;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ Lays out, commits and saves a table of 2,000 tiny icons, drawn as one shared XObject
+ (inlineImageMaxBytes of 0) or as inline images.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InlineImageBenchmark {
+    private static final CellStyle ICON_CELL =
+            CellStyle.of(CellStyle.Align.MIDDLE_CENTER, Padding.of(1), null, null);
+
+    @Param({"0", "4096"})
+    public int inlineImageMaxBytes;
+
+    private BufferedImage icon;
+
+    @Setup public void setUp() { icon = Fixtures.photo(16, 16); }
+
+    @Benchmark public void iconTable() throws IOException {
+        PdfLayoutMgr pageMgr = PdfLayoutMgr.newRgbPageMgr()
+                                           .inlineImageMaxBytes(inlineImageMaxBytes);
+        LogicalPage lp = pageMgr.logicalPageStart();
+        ScaledPng png = ScaledPng.of(icon, 12, 12);
+        for (int row = 0; row < 50; row++) {
+            Cell[] cells = new Cell[40];
+            for (int col = 0; col < cells.length; col++) {
+                cells[col] = Cell.of(ICON_CELL, 16, png);
+            }
+            lp.putRow(20, lp.yPageTop() - (row * 16), cells);
+        }
+        lp.commit();
+        pageMgr.save(OutputStream.nullOutputStream());
+    }
+}
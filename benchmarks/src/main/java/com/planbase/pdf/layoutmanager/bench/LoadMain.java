@@ -0,0 +1,226 @@
+// Copyright 2026-10-19 PlanBase Inc. & Glen Peterson
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.planbase.pdf.layoutmanager.bench;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ <p>Renders a mix of small documents on 1..N threads at once, one PdfLayoutMgr per document, the
+ way a server does one per request.  For each thread count it reports documents per second, p50
+ and p99 latency, and scaling efficiency (throughput divided by the thread count times the
+ single-thread throughput).  Contention on shared static state, like font metrics or the WinAnsi
+ tables, shows up as efficiency falling off before the processors run out.</p>
+
+ <pre><code>java -cp target/benchmarks.jar com.planbase.pdf.layoutmanager.bench.LoadMain [options]
+
+ --threads 1,2,4,8   thread counts to try (default powers of 2 up to twice the processors)
+ --kinds platform,virtual   (default both; virtual threads need Java 21 or later)
+ --seconds 10        how long to measure each thread count (default 10)
+ --warmup 5          seconds of untimed load before each kind of thread (default 5)
+ --out file          where to write the JSON (default target/load-result.json)</code></pre>
+
+ <p>Each worker takes the next document from a fixed rotation of the mix: mostly invoices, with
+ some short ledgers, contracts and catalog pages.</p>
+ */
+public class LoadMain {
+    /** The document mix.  Each one is a Corpus workload prepared at a small size. */
+    private static final Corpus[] MIX = new Corpus[] {
+            Corpus.INVOICES, Corpus.LEDGER, Corpus.INVOICES, Corpus.CONTRACT, Corpus.INVOICES,
+            Corpus.INVOICES, Corpus.CATALOG, Corpus.INVOICES };
+
+    private static void prepareMix() {
+        Corpus.INVOICES.prepare(1);
+        Corpus.LEDGER.prepare(300);
+        Corpus.CONTRACT.prepare(5);
+        Corpus.CATALOG.prepare(9);
+    }
+
+    static final class Step {
+        final String kind;
+        final int threads;
+        final long docs;
+        final double seconds;
+        final double p50Millis;
+        final double p99Millis;
+        double efficiency = 1;
+
+        Step(String k, int t, long d, double s, double p50, double p99) {
+            kind = k; threads = t; docs = d; seconds = s; p50Millis = p50; p99Millis = p99;
+        }
+
+        double docsPerSecond() { return docs / seconds; }
+
+        String toJson() {
+            return String.format(Locale.ROOT,
+                                 "{\"kind\":\"%s\",\"threads\":%d,\"documents\":%d," +
+                                 "\"docsPerSecond\":%.2f,\"p50Millis\":%.3f,\"p99Millis\":%.3f," +
+                                 "\"efficiency\":%.3f}",
+                                 kind, threads, docs, docsPerSecond(), p50Millis, p99Millis,
+                                 efficiency);
+        }
+    }
+
+    /** Returns a new virtual-thread-per-task executor, or null before Java 21. */
+    static ExecutorService virtualThreadExecutor() {
+        try {
+            Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) m.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    private static ExecutorService executor(String kind, int threads) {
+        if ("virtual".equals(kind)) {
+            ExecutorService es = virtualThreadExecutor();
+            if (es == null) {
+                throw new IllegalStateException("Virtual threads need Java 21 or later");
+            }
+            return es;
+        }
+        return Executors.newFixedThreadPool(threads);
+    }
+
+    /** Runs the given number of workers until the deadline, returning each document's latency. */
+    static Step run(String kind, int threads, long nanos) throws Exception {
+        ExecutorService es = executor(kind, threads);
+        try {
+            long start = System.nanoTime();
+            long deadline = start + nanos;
+            List<Future<long[]>> futures = new ArrayList<>(threads);
+            for (int t = 0; t < threads; t++) {
+                final int first = t;
+                futures.add(es.submit(() -> {
+                    long[] latencies = new long[1024];
+                    int n = 0;
+                    int next = first;
+                    long now = System.nanoTime();
+                    while (now < deadline) {
+                        Corpus doc = MIX[next++ % MIX.length];
+                        try {
+                            doc.generate();
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                        long end = System.nanoTime();
+                        if (n == latencies.length) { latencies = Arrays.copyOf(latencies, n * 2); }
+                        latencies[n++] = end - now;
+                        now = end;
+                    }
+                    return Arrays.copyOf(latencies, n);
+                }));
+            }
+            List<long[]> perThread = new ArrayList<>(threads);
+            for (Future<long[]> f : futures) { perThread.add(f.get()); }
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            int total = 0;
+            for (long[] ls : perThread) { total += ls.length; }
+            long[] all = new long[total];
+            int i = 0;
+            for (long[] ls : perThread) {
+                System.arraycopy(ls, 0, all, i, ls.length);
+                i += ls.length;
+            }
+            Arrays.sort(all);
+            return new Step(kind, threads, total, seconds, percentile(all, 0.5) / 1e6,
+                            percentile(all, 0.99) / 1e6);
+        } finally {
+            es.shutdown();
+            es.awaitTermination(1, TimeUnit.MINUTES);
+        }
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        if (sorted.length == 0) { return 0; }
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(p * sorted.length) - 1)];
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<Integer> threadCounts = new ArrayList<>();
+        List<String> kinds = new ArrayList<>(Arrays.asList("platform", "virtual"));
+        double seconds = 10;
+        double warmup = 5;
+        Path out = Paths.get("target", "load-result.json");
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--threads":
+                    for (String s : args[++i].split(",")) { threadCounts.add(Integer.parseInt(s.trim())); }
+                    break;
+                case "--kinds": kinds = Arrays.asList(args[++i].split(",")); break;
+                case "--seconds": seconds = Double.parseDouble(args[++i]); break;
+                case "--warmup": warmup = Double.parseDouble(args[++i]); break;
+                case "--out": out = Paths.get(args[++i]); break;
+                default: throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        if (threadCounts.isEmpty()) {
+            int max = 2 * Runtime.getRuntime().availableProcessors();
+            for (int t = 1; t < max; t *= 2) { threadCounts.add(t); }
+            threadCounts.add(max);
+        }
+        if ( kinds.contains("virtual") && (virtualThreadExecutor() == null) ) {
+            System.out.println("Skipping virtual threads, which need Java 21 or later.");
+            kinds = new ArrayList<>(kinds);
+            kinds.remove("virtual");
+        }
+
+        prepareMix();
+        int maxThreads = threadCounts.stream().mapToInt(Integer::intValue).max().getAsInt();
+        List<Step> steps = new ArrayList<>();
+        System.out.println(String.format("%-9s %7s %8s %10s %9s %9s %10s", "kind", "threads",
+                                         "docs", "docs/s", "p50 ms", "p99 ms", "efficiency"));
+        for (String kind : kinds) {
+            run(kind, maxThreads, (long) (warmup * 1e9));
+            Step single = run(kind, 1, (long) (seconds * 1e9));
+            for (int threads : threadCounts) {
+                Step step = (threads == 1) ? single : run(kind, threads, (long) (seconds * 1e9));
+                step.efficiency = step.docsPerSecond() / (threads * single.docsPerSecond());
+                steps.add(step);
+                System.out.println(String.format("%-9s %7d %8d %10.1f %9.2f %9.2f %9.0f%%",
+                                                 kind, threads, step.docs, step.docsPerSecond(),
+                                                 step.p50Millis, step.p99Millis,
+                                                 step.efficiency * 100));
+            }
+        }
+
+        if (out.getParent() != null) { Files.createDirectories(out.getParent()); }
+        try (PrintWriter pw = new PrintWriter(Files.newBufferedWriter(out, StandardCharsets.UTF_8))) {
+            pw.println("[");
+            for (int i = 0; i < steps.size(); i++) {
+                pw.print("  " + steps.get(i).toJson());
+                pw.println((i < steps.size() - 1) ? "," : "");
+            }
+            pw.println("]");
+        }
+        System.out.println("Wrote " + out);
+    }
+}
@@ -0,0 +1,98 @@
+// Copyright 2026-10-19 PlanBase Inc. & Glen Peterson
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.planbase.pdf.layoutmanager.bench;
+
+import com.planbase.pdf.layoutmanager.Coord;
+import com.planbase.pdf.layoutmanager.Dim;
+import com.planbase.pdf.layoutmanager.LineStyle;
+import com.planbase.pdf.layoutmanager.LogicalPage;
+import com.planbase.pdf.layoutmanager.PdfLayoutMgr;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ Draws one line or rectangle from the top of a logical page down across the given number of
+ physical pages, so most of the work is finding (and making) the pages it crosses.  One drawing
+ takes microseconds, so each invocation draws on BATCH fresh logical pages and JMH divides by
+ that, which keeps the per-invocation setup and timestamps out of the result.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PageBreakBenchmark {
+    private static final LineStyle LINE = LineStyle.of(Color.BLUE);
+
+    @Param({"1", "10", "100"})
+    public int pages;
+
+    private static final int BATCH = 50;
+
+    private final PdfLayoutMgr[] pageMgrs = new PdfLayoutMgr[BATCH];
+    private final LogicalPage[] lps = new LogicalPage[BATCH];
+    private double height;
+
+    @Setup(Level.Invocation) public void setUpPages() {
+        for (int i = 0; i < BATCH; i++) {
+            pageMgrs[i] = PdfLayoutMgr.newRgbPageMgr();
+            lps[i] = pageMgrs[i].logicalPageStart(LogicalPage.Orientation.PORTRAIT);
+        }
+        // End half way down the last page so rounding never adds a page.
+        height = (pages - 0.5) * (lps[0].yPageTop() - lps[0].yPageBottom());
+    }
+
+    @TearDown(Level.Invocation) public void tearDownPages() throws IOException {
+        for (int i = 0; i < BATCH; i++) {
+            lps[i].commit();
+            pageMgrs[i].save(OutputStream.nullOutputStream());
+        }
+    }
+
+    @Benchmark @OperationsPerInvocation(BATCH)
+    public void putLine(Blackhole bh) {
+        for (LogicalPage lp : lps) {
+            bh.consume(lp.putLine(40, lp.yPageTop(), 500, lp.yPageTop() - height, LINE));
+        }
+    }
+
+    @Benchmark @OperationsPerInvocation(BATCH)
+    public void putRect(Blackhole bh) {
+        for (LogicalPage lp : lps) {
+            bh.consume(lp.putRect(Coord.of(40, lp.yPageTop()), Dim.of(200, height),
+                                  Color.LIGHT_GRAY));
+        }
+    }
+}
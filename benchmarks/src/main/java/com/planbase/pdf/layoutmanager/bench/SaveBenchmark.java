@@ -0,0 +1,68 @@
+// Copyright 2026-10-19 PlanBase Inc. & Glen Peterson
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.planbase.pdf.layoutmanager.bench;
+
+import com.planbase.pdf.layoutmanager.PdfLayoutMgr;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ Saves a committed report to a stream that throws the bytes away, in each of the output formats.
+ This is PDFBox serializing (or our writers compressing and linearizing), without any disk.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SaveBenchmark {
+    @Param({"10", "100"})
+    public int pages;
+
+    @Param({"plain", "compressObjects", "linearize"})
+    public String format;
+
+    private PdfLayoutMgr pageMgr;
+
+    @Setup(Level.Invocation) public void setUpDoc() throws IOException {
+        pageMgr = Fixtures.report(PdfLayoutMgr.newRgbPageMgr()
+                                              .compressObjects("compressObjects".equals(format))
+                                              .linearize("linearize".equals(format)),
+                                  pages);
+    }
+
+    @TearDown(Level.Invocation) public void tearDownDoc() { pageMgr = null; }
+
+    @Benchmark public void save() throws IOException {
+        pageMgr.save(OutputStream.nullOutputStream());
+    }
+}
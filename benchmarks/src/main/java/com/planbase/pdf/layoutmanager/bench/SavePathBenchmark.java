@@ -0,0 +1,96 @@
+// Copyright 2026-10-19 PlanBase Inc. & Glen Peterson
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.planbase.pdf.layoutmanager.bench;
+
+import com.planbase.pdf.layoutmanager.PdfLayoutMgr;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ Saves a 100-page report to a temporary file through each of the ways save() can reach a file:
+ a buffered OutputStream, a FileChannel the caller opened, save(Path) and save(Path, true) for
+ memory-mapped output.  Only the last two force the file to disk.  A document can only be saved
+ once, so each iteration builds one outside the measurement and saves it once.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 10)
+@Measurement(iterations = 30)
+@Fork(1)
+public class SavePathBenchmark {
+    @Param({"stream", "channel", "path", "mapped"})
+    public String target;
+
+    private Path file;
+    private PdfLayoutMgr pageMgr;
+
+    @Setup public void setUpFile() throws IOException {
+        file = Files.createTempFile("SavePathBenchmark", ".pdf");
+    }
+
+    @TearDown public void tearDownFile() throws IOException { Files.deleteIfExists(file); }
+
+    @Setup(Level.Iteration) public void setUpDoc() throws IOException {
+        pageMgr = Fixtures.report(PdfLayoutMgr.newRgbPageMgr(), 100);
+    }
+
+    @TearDown(Level.Iteration) public void tearDownDoc() { pageMgr = null; }
+
+    @Benchmark public void save() throws IOException {
+        switch (target) {
+            case "stream":
+                try (OutputStream os = new BufferedOutputStream(Files.newOutputStream(file))) {
+                    pageMgr.save(os);
+                }
+                break;
+            case "channel":
+                try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE,
+                                                       StandardOpenOption.TRUNCATE_EXISTING)) {
+                    pageMgr.save(ch);
+                }
+                break;
+            case "path":
+                pageMgr.save(file);
+                break;
+            case "mapped":
+                pageMgr.save(file, true);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown target: " + target);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+// Copyright 2026-10-19 PlanBase Inc. & Glen Peterson
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.planbase.pdf.layoutmanager.bench;
+
+import com.planbase.pdf.layoutmanager.Coord;
+import com.planbase.pdf.layoutmanager.LogicalPage;
+import com.planbase.pdf.layoutmanager.PdfLayoutMgr;
+import com.planbase.pdf.layoutmanager.TableBuilder;
+import com.planbase.pdf.layoutmanager.TablePart;
+import com.planbase.pdf.layoutmanager.TableRowBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ Builds and renders a table of rows x columns of short text cells onto a fresh logical page.
+ Big tables break across many pages.  Committing and saving happen outside the measurement.
+ A small table takes microseconds, so each invocation builds BATCH tables, each on its own
+ logical page, and JMH divides by that.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TableBenchmark {
+    @Param({"10", "100", "1000"})
+    public int rows;
+
+    @Param({"2", "8"})
+    public int cols;
+
+    private static final int BATCH = 10;
+
+    private String[][] cells;
+    private double[] widths;
+    private final PdfLayoutMgr[] pageMgrs = new PdfLayoutMgr[BATCH];
+    private final LogicalPage[] lps = new LogicalPage[BATCH];
+
+    @Setup public void setUpCells() {
+        cells = new String[rows][cols];
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < cols; c++) {
+                cells[r][c] = Fixtures.winAnsiWords(20 + (((r + c) % 4) * 15), (r * cols) + c);
+            }
+        }
+        widths = new double[cols];
+        for (int c = 0; c < cols; c++) { widths[c] = 500.0 / cols; }
+    }
+
+    @Setup(Level.Invocation) public void setUpPages() {
+        for (int i = 0; i < BATCH; i++) {
+            pageMgrs[i] = PdfLayoutMgr.newRgbPageMgr();
+            lps[i] = pageMgrs[i].logicalPageStart(LogicalPage.Orientation.PORTRAIT);
+        }
+    }
+
+    @TearDown(Level.Invocation) public void tearDownPages() throws IOException {
+        for (int i = 0; i < BATCH; i++) {
+            lps[i].commit();
+            pageMgrs[i].save(OutputStream.nullOutputStream());
+        }
+    }
+
+    @Benchmark @OperationsPerInvocation(BATCH)
+    public void buildTable(Blackhole bh) {
+        for (LogicalPage lp : lps) {
+            bh.consume(table(lp));
+        }
+    }
+
+    private Coord table(LogicalPage lp) {
+        TableBuilder tb = lp.tableBuilder(Coord.of(40, lp.yPageTop()));
+        tb.addCellWidths(widths);
+        TablePart part = tb.partBuilder().cellStyle(Fixtures.CELL).textStyle(Fixtures.TEXT);
+        for (String[] row : cells) {
+            TableRowBuilder trb = part.rowBuilder();
+            trb.addTextCells(row);
+            trb.buildRow();
+        }
+        part.buildPart();
+        return tb.buildTable();
+    }
+}
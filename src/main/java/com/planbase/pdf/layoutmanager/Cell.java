@@ -117,6 +117,7 @@ public class Cell implements Renderable {
     public double width() { return width; }
 
     private void calcDimensionsForReal(final double maxWidth) {
+        LayoutTrace.laidOut(this);
         PreCalcRows pcrs = new PreCalcRows();
         Dim blockDim = Dim.ZERO;
         Padding padding = cellStyle.padding();
@@ -148,11 +149,13 @@ public class Cell implements Renderable {
 
     /** {@inheritDoc} */
     @Override public Dim calcDimensions(final double maxWidth) {
-        // I think zero or negative width cells might be OK to ignore.  I'd like to try to make
-        // Text.calcDimensionsForReal() handle this situation before throwing an error here.
-//        if (maxWidth < 0) {
-//            throw new IllegalArgumentException("maxWidth must be positive, not " + maxWidth);
-//        }
+        LayoutTrace trace = LayoutTrace.current();
+        if (trace == null) { return calcDimensionsUntraced(maxWidth); }
+        return trace.measure(this, maxWidth, () -> calcDimensionsUntraced(maxWidth));
+    }
+
+    private Dim calcDimensionsUntraced(final double maxWidth) {
+        // Zero or negative width cells are OK.  Text in them shows one word per line.
         Dim blockDim = ensurePreCalcRows(maxWidth).blockDim;
         return ((cellStyle.padding() == null) ? blockDim : cellStyle.padding().addTo(blockDim));
 //        System.out.println("Cell.calcDimensions(" + maxWidth + ") blockDim=" + blockDim +
@@ -167,6 +170,13 @@ public class Cell implements Renderable {
     */
     @Override public Coord render(LogicalPage lp, Coord outerTopLeft,
                                   final Dim outerDimensions, boolean allPages) {
+        LayoutTrace trace = LayoutTrace.current();
+        if (trace == null) { return renderUntraced(lp, outerTopLeft, outerDimensions, allPages); }
+        return trace.render(this, () -> renderUntraced(lp, outerTopLeft, outerDimensions, allPages));
+    }
+
+    private Coord renderUntraced(LogicalPage lp, Coord outerTopLeft,
+                                 final Dim outerDimensions, boolean allPages) {
 //        System.out.println("Cell.render(" + this.toString());
 //        new Exception().printStackTrace();
 
@@ -192,7 +202,11 @@ public class Cell implements Renderable {
 //            System.out.println("\tCell.render outerTopLeft before padding=" + outerTopLeft);
             innerTopLeft = padding.applyTopLeft(outerTopLeft);
 //            System.out.println("\tCell.render innerTopLeft after padding=" + innerTopLeft);
-            innerDimensions = padding.subtractFrom(outerDimensions);
+            // A cell can be narrower than its padding.  Then there's no room inside it at all.
+            innerDimensions = Dim.of(Math.max(0, outerDimensions.getWidth() -
+                                                 (padding.left() + padding.right())),
+                                     Math.max(0, outerDimensions.getHeight() -
+                                                 (padding.top() + padding.bottom())));
         }
         Dim wrappedBlockDim = pcrs.blockDim;
 //        System.out.println("\tCell.render cellStyle.align()=" + cellStyle.align());
@@ -0,0 +1,247 @@
+// Copyright 2026-10-19 PlanBase Inc. & Glen Peterson
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.planbase.pdf.layoutmanager;
+
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSInteger;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSString;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.graphics.color.PDIndexed;
+import org.apache.pdfbox.pdmodel.graphics.image.CCITTFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ Looks at every pixel of an opaque image to see if it can be embedded with fewer bits per pixel
+ than 24-bit RGB: black-and-white images become 1-bit CCITT G4, grayscale images become 8-bit
+ DeviceGray, and images with 256 colors or fewer become Indexed.  A scanned form or a chart is
+ often 5-20 times smaller this way.
+ */
+final class ColorReducer {
+    private ColorReducer() { throw new UnsupportedOperationException("No instances!"); }
+
+    static final int MAX_PALETTE = 256;
+
+    enum Kind { BILEVEL, GRAY, INDEXED, RGB }
+
+    /**
+     The result of scanning an image.  If kind is INDEXED, palette holds the colors (0xRRGGBB) in
+     the order they were found.
+     */
+    static final class Analysis {
+        final Kind kind;
+        final int[] palette;
+        private Analysis(Kind k, int[] p) { kind = k; palette = p; }
+    }
+
+    /**
+     Scans the image and returns the most compact kind it can be embedded as.  Images with any
+     transparency are always RGB (not reduced) because PDFBox needs to make a soft mask for those.
+     */
+    static Analysis analyze(BufferedImage bi) {
+        final int w = bi.getWidth();
+        final int h = bi.getHeight();
+        final boolean hasAlpha = bi.getColorModel().hasAlpha();
+        boolean gray = true;
+        boolean bilevel = true;
+        ColorTable colors = new ColorTable();
+        int[] row = new int[w];
+        for (int y = 0; y < h; y++) {
+            bi.getRGB(0, y, w, 1, row, 0, w);
+            for (int argb : row) {
+                if ( hasAlpha && ((argb >>> 24) != 0xff) ) {
+                    return new Analysis(Kind.RGB, null);
+                }
+                int r = (argb >> 16) & 0xff;
+                int g = (argb >> 8) & 0xff;
+                int b = argb & 0xff;
+                if ( gray && ((r != g) || (g != b)) ) {
+                    gray = false;
+                    bilevel = false;
+                }
+                if ( bilevel && (r != 0) && (r != 0xff) ) {
+                    bilevel = false;
+                }
+                if (colors != null) {
+                    colors.add(argb & 0xffffff);
+                    if (colors.size() > MAX_PALETTE) {
+                        colors = null;
+                    }
+                }
+                if (!gray && (colors == null)) {
+                    return new Analysis(Kind.RGB, null);
+                }
+            }
+        }
+        return bilevel ? new Analysis(Kind.BILEVEL, null) :
+               gray ? new Analysis(Kind.GRAY, null) :
+               new Analysis(Kind.INDEXED, colors.palette());
+    }
+
+    /**
+     Embeds the given image in the most compact lossless form it can.
+     @param level the Deflater compression level for anything that's Flate encoded.
+     */
+    static PDImageXObject createLossless(PDDocument doc, BufferedImage bi, int level)
+            throws IOException {
+        Analysis a = analyze(bi);
+        switch (a.kind) {
+            case BILEVEL: return CCITTFactory.createFromImage(doc, toBilevel(bi));
+            case GRAY: return ParallelFlate.createFlate(doc, bi, true, level);
+            case INDEXED: return createIndexed(doc, bi, a.palette, level);
+            default: return ParallelFlate.createLossless(doc, bi, level);
+        }
+    }
+
+    /**
+     Copies the red channel of an image that has already been determined to be gray into a
+     TYPE_BYTE_GRAY image.  Drawing into the gray image with a Graphics2D would apply a color
+     conversion and change the values.  This is suitable for the JPEGFactory which encodes the
+     raster samples directly.  Don't pass it to the LosslessFactory which treats TYPE_BYTE_GRAY as
+     linear (not sRGB) gray and would lighten it.
+     */
+    static BufferedImage toGray(BufferedImage bi) {
+        if (bi.getType() == BufferedImage.TYPE_BYTE_GRAY) { return bi; }
+        final int w = bi.getWidth();
+        final int h = bi.getHeight();
+        BufferedImage gray = new BufferedImage(w, h, BufferedImage.TYPE_BYTE_GRAY);
+        WritableRaster raster = gray.getRaster();
+        int[] row = new int[w];
+        int[] samples = new int[w];
+        for (int y = 0; y < h; y++) {
+            bi.getRGB(0, y, w, 1, row, 0, w);
+            for (int x = 0; x < w; x++) {
+                samples[x] = (row[x] >> 16) & 0xff;
+            }
+            raster.setSamples(0, y, w, 1, 0, samples);
+        }
+        return gray;
+    }
+
+    private static BufferedImage toBilevel(BufferedImage bi) {
+        if ( (bi.getType() == BufferedImage.TYPE_BYTE_BINARY) &&
+             (bi.getColorModel().getPixelSize() == 1) ) {
+            return bi;
+        }
+        final int w = bi.getWidth();
+        final int h = bi.getHeight();
+        BufferedImage bw = new BufferedImage(w, h, BufferedImage.TYPE_BYTE_BINARY);
+        WritableRaster raster = bw.getRaster();
+        int[] row = new int[w];
+        int[] samples = new int[w];
+        for (int y = 0; y < h; y++) {
+            bi.getRGB(0, y, w, 1, row, 0, w);
+            for (int x = 0; x < w; x++) {
+                samples[x] = (row[x] & 0xff) == 0 ? 0 : 1;
+            }
+            raster.setSamples(0, y, w, 1, 0, samples);
+        }
+        return bw;
+    }
+
+    private static PDImageXObject createIndexed(PDDocument doc, BufferedImage bi, int[] palette,
+                                                int level) throws IOException {
+        final int w = bi.getWidth();
+        final int h = bi.getHeight();
+        final int bpc = (palette.length <= 2) ? 1 :
+                        (palette.length <= 4) ? 2 :
+                        (palette.length <= 16) ? 4 : 8;
+        ColorTable indices = new ColorTable();
+        for (int color : palette) { indices.add(color); }
+
+        // Each row starts on a byte boundary.
+        final int bytesPerRow = ((w * bpc) + 7) / 8;
+        final int pixelsPerByte = 8 / bpc;
+        byte[] packed = new byte[bytesPerRow];
+        int[] row = new int[w];
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (DeflaterPool.Lease lease = DeflaterPool.lease(level, false);
+             DeflaterOutputStream dos = new DeflaterOutputStream(bos, lease.deflater,
+                                                                 lease.buf.length)) {
+            for (int y = 0; y < h; y++) {
+                bi.getRGB(0, y, w, 1, row, 0, w);
+                Arrays.fill(packed, (byte) 0);
+                for (int x = 0; x < w; x++) {
+                    int idx = indices.indexOf(row[x] & 0xffffff);
+                    int shift = 8 - (bpc * ((x % pixelsPerByte) + 1));
+                    packed[x / pixelsPerByte] |= (byte) (idx << shift);
+                }
+                dos.write(packed);
+            }
+        }
+
+        byte[] lookup = new byte[palette.length * 3];
+        for (int i = 0; i < palette.length; i++) {
+            lookup[i * 3] = (byte) (palette[i] >> 16);
+            lookup[(i * 3) + 1] = (byte) (palette[i] >> 8);
+            lookup[(i * 3) + 2] = (byte) palette[i];
+        }
+        COSArray csArray = new COSArray();
+        csArray.add(COSName.INDEXED);
+        csArray.add(COSName.DEVICERGB);
+        csArray.add(COSInteger.get(palette.length - 1));
+        csArray.add(new COSString(lookup));
+
+        return new PDImageXObject(doc, new ByteArrayInputStream(bos.toByteArray()),
+                                  COSName.FLATE_DECODE, w, h, bpc, new PDIndexed(csArray));
+    }
+
+    /**
+     A tiny open-addressing hash table from 24-bit color to the order it was added in.  Avoids
+     boxing an Integer for every pixel of a big image.
+     */
+    private static final class ColorTable {
+        // More than twice MAX_PALETTE so that it never fills up.
+        private static final int SLOTS = 1024;
+        private final int[] keys = new int[SLOTS];
+        private final int[] values = new int[SLOTS];
+        private final int[] order = new int[MAX_PALETTE + 1];
+        private int size = 0;
+
+        ColorTable() { Arrays.fill(keys, -1); }
+
+        private int slot(int color) {
+            int i = (color * 0x9E3779B1) >>> 22; // top 10 bits
+            while ( (keys[i] != -1) && (keys[i] != color) ) {
+                i = (i + 1) & (SLOTS - 1);
+            }
+            return i;
+        }
+
+        void add(int color) {
+            int i = slot(color);
+            if (keys[i] == -1) {
+                keys[i] = color;
+                values[i] = size;
+                order[size] = color;
+                size++;
+            }
+        }
+
+        int indexOf(int color) { return values[slot(color)]; }
+
+        int size() { return size; }
+
+        int[] palette() { return Arrays.copyOf(order, size); }
+    }
+}
@@ -0,0 +1,229 @@
+// Copyright 2026-10-19 PlanBase Inc. & Glen Peterson
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.planbase.pdf.layoutmanager;
+
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSBoolean;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSFloat;
+import org.apache.pdfbox.cos.COSInteger;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSNull;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.cos.COSString;
+import org.apache.pdfbox.pdfwriter.COSWriter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.ToIntFunction;
+
+/**
+ Serializes the kinds of COS objects that this package produces (pages, content streams,
+ standard fonts, images, and pages copied from loaded PDFs) for the PDF writers in this
+ package.  Streams, and dictionaries of the types in INDIRECT_TYPES, are written as indirect
+ objects, so they can be shared between pages.  Everything else is written directly inside
+ whatever uses it.  The caller decides the object numbers.
+ */
+final class CosSerializer {
+    private CosSerializer() { throw new UnsupportedOperationException("No instances!"); }
+
+    private static COSBase resolve(COSBase value) {
+        return (value instanceof COSObject) ? ((COSObject) value).getObject() : value;
+    }
+
+    // Font descriptors must be indirect objects (section 9.8.1 of the PDF spec), and fonts,
+    // graphics states and patterns are often shared between pages.  Other dictionaries are left
+    // direct even if they were indirect in a loaded PDF, so that a resource shared by content
+    // (see StreamingPdfWriter) hashes the same whether it was loaded or made here.
+    private static final Set<COSName> INDIRECT_TYPES =
+            new HashSet<>(Arrays.asList(COSName.FONT, COSName.FONT_DESC, COSName.EXT_G_STATE,
+                                        COSName.PATTERN));
+
+    /** Returns true if the given object must be written as an indirect object. */
+    static boolean isIndirect(COSBase value) {
+        value = resolve(value);
+        return (value instanceof COSStream) ||
+               ( (value instanceof COSDictionary) &&
+                 INDIRECT_TYPES.contains(((COSDictionary) value).getCOSName(COSName.TYPE)) );
+    }
+
+    /**
+     Adds to the given collection the indirect objects that the given object refers to (but not
+     the objects those refer to in turn).
+     @param value the object to search.
+     @param skip a dictionary key to ignore (or null).
+     @param into where to put the indirect objects found.
+     */
+    static void indirectChildren(COSBase value, COSName skip, Collection<COSBase> into) {
+        value = resolve(value);
+        if (value instanceof COSDictionary) {
+            for (Map.Entry<COSName,COSBase> entry : ((COSDictionary) value).entrySet()) {
+                if (entry.getKey().equals(skip)) { continue; }
+                COSBase child = resolve(entry.getValue());
+                if (isIndirect(child)) {
+                    into.add(child);
+                } else {
+                    indirectChildren(child, null, into);
+                }
+            }
+        } else if (value instanceof COSArray) {
+            for (COSBase item : (COSArray) value) {
+                COSBase child = resolve(item);
+                if (isIndirect(child)) {
+                    into.add(child);
+                } else {
+                    indirectChildren(child, null, into);
+                }
+            }
+        }
+    }
+
+    static void ascii(String s, OutputStream sink) throws IOException {
+        sink.write(s.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    static void writeRef(int num, OutputStream sink) throws IOException {
+        ascii(" " + num + " 0 R", sink);
+    }
+
+    /**
+     Writes the given object directly, except for indirect objects inside it, which are written as
+     references.
+     @param value the object to write.
+     @param sink where to write it.
+     @param objNums returns the object number of an indirect object.
+     */
+    static void writeDirect(COSBase value, OutputStream sink, ToIntFunction<COSBase> objNums)
+            throws IOException {
+        value = resolve(value);
+        if ( (value == null) || (value instanceof COSNull) ) {
+            ascii("null", sink);
+        } else if (isIndirect(value)) {
+            writeRef(objNums.applyAsInt(value), sink);
+        } else if (value instanceof COSDictionary) {
+            sink.write(COSWriter.DICT_OPEN);
+            writeEntries((COSDictionary) value, null, sink, objNums);
+            sink.write(COSWriter.DICT_CLOSE);
+        } else if (value instanceof COSArray) {
+            sink.write(COSWriter.ARRAY_OPEN);
+            boolean first = true;
+            for (COSBase item : (COSArray) value) {
+                if (!first) { sink.write(' '); }
+                first = false;
+                writeDirect(item, sink, objNums);
+            }
+            sink.write(COSWriter.ARRAY_CLOSE);
+        } else if (value instanceof COSName) {
+            ((COSName) value).writePDF(sink);
+        } else if (value instanceof COSInteger) {
+            ((COSInteger) value).writePDF(sink);
+        } else if (value instanceof COSFloat) {
+            ((COSFloat) value).writePDF(sink);
+        } else if (value instanceof COSBoolean) {
+            ((COSBoolean) value).writePDF(sink);
+        } else if (value instanceof COSString) {
+            COSWriter.writeString((COSString) value, sink);
+        } else {
+            throw new IllegalStateException("Can't serialize a " + value.getClass().getSimpleName());
+        }
+    }
+
+    /**
+     Writes an object read from an existing PDF file, leaving references to that file's other
+     objects as references (for rewriting one object in an incremental update).
+     */
+    static void writeLoaded(COSBase value, OutputStream sink) throws IOException {
+        if (value instanceof COSObject) {
+            COSObject ref = (COSObject) value;
+            ascii(ref.getObjectNumber() + " " + ref.getGenerationNumber() + " R", sink);
+        } else if (value instanceof COSStream) {
+            throw new IllegalStateException("A stream must be an indirect object.");
+        } else if (value instanceof COSDictionary) {
+            sink.write(COSWriter.DICT_OPEN);
+            for (Map.Entry<COSName,COSBase> entry : ((COSDictionary) value).entrySet()) {
+                entry.getKey().writePDF(sink);
+                sink.write(' ');
+                writeLoaded(entry.getValue(), sink);
+                sink.write('\n');
+            }
+            sink.write(COSWriter.DICT_CLOSE);
+        } else if (value instanceof COSArray) {
+            sink.write(COSWriter.ARRAY_OPEN);
+            boolean first = true;
+            for (COSBase item : (COSArray) value) {
+                if (!first) { sink.write(' '); }
+                first = false;
+                writeLoaded(item, sink);
+            }
+            sink.write(COSWriter.ARRAY_CLOSE);
+        } else {
+            // No references inside, so it's the same either way.
+            writeDirect(value, sink, obj -> {
+                throw new IllegalStateException("Unexpected indirect object");
+            });
+        }
+    }
+
+    /** Writes the key/value pairs of a dictionary, skipping the given key (if any). */
+    static void writeEntries(COSDictionary dict, COSName skip, OutputStream sink,
+                             ToIntFunction<COSBase> objNums) throws IOException {
+        for (Map.Entry<COSName,COSBase> entry : dict.entrySet()) {
+            if (entry.getKey().equals(skip)) { continue; }
+            entry.getKey().writePDF(sink);
+            sink.write(' ');
+            writeDirect(entry.getValue(), sink, objNums);
+            sink.write('\n');
+        }
+    }
+
+    /** Writes the body of an indirect object (without the "n 0 obj" and "endobj" around it). */
+    static void writeBody(COSBase value, OutputStream sink, ToIntFunction<COSBase> objNums)
+            throws IOException {
+        value = resolve(value);
+        if (value instanceof COSStream) {
+            writeStream((COSStream) value, sink, objNums);
+        } else {
+            sink.write(COSWriter.DICT_OPEN);
+            writeEntries((COSDictionary) value, null, sink, objNums);
+            sink.write(COSWriter.DICT_CLOSE);
+        }
+    }
+
+    /** Writes a stream's dictionary (with the correct length) and its (still encoded) data. */
+    static void writeStream(COSStream stream, OutputStream sink, ToIntFunction<COSBase> objNums)
+            throws IOException {
+        sink.write(COSWriter.DICT_OPEN);
+        writeEntries(stream, COSName.LENGTH, sink, objNums);
+        COSName.LENGTH.writePDF(sink);
+        ascii(" " + stream.getLength(), sink);
+        sink.write(COSWriter.DICT_CLOSE);
+        sink.write(COSWriter.STREAM);
+        sink.write('\n');
+        try (InputStream is = stream.createRawInputStream()) {
+            is.transferTo(sink);
+        }
+        sink.write('\n');
+        sink.write(COSWriter.ENDSTREAM);
+    }
+}
@@ -0,0 +1,204 @@
+// Copyright 2026-10-19 PlanBase Inc. & Glen Peterson
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.planbase.pdf.layoutmanager;
+
+import org.apache.pdfbox.pdmodel.graphics.image.PDImage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ <p>Adds up what a document cost to make: pages, items of each type and content-stream bytes on
+ each page, images and their encoded size and encoding time, fonts, and the total time spent in
+ each phase.  Register one as the manager's LayoutListener before laying anything out, then read
+ it after saving:</p>
+
+ <pre><code>CostReport report = new CostReport();
+PdfLayoutMgr pageMgr = PdfLayoutMgr.newRgbPageMgr().layoutListener(report);
+// ... lay out and commit pages ...
+pageMgr.save(os);
+logger.info(report.toString());</code></pre>
+
+ <p>Header and footer items (see LogicalPage.putCellAsHeaderFooter()) are drawn on every page of
+ their logical page, but aren't counted as items.  Not thread-safe: read it on the thread that
+ saved the document (or after the future from saveAsync() completes, or the publisher() calls
+ onComplete()).</p>
+ */
+public class CostReport implements LayoutListener {
+
+    /** Where the time goes.  Render includes adding items and encoding images. */
+    public enum Phase { MEASURE, RENDER, ADD_ITEM, COMMIT_PAGE, ENCODE_IMAGE, SAVE; }
+
+    /** What one physical page cost. */
+    public static class Page {
+        private final int pageNum;
+        private final Map<String,Integer> items = new TreeMap<>();
+        private int itemCount = 0;
+        private long contentBytes = 0;
+        private long commitNanos = 0;
+
+        private Page(int pn) { pageNum = pn; }
+
+        /** The physical page number, counting from 1. */
+        public int pageNum() { return pageNum; }
+
+        /** The number of each type of item (Text, DrawLine, FillRect, DrawImage) on this page. */
+        public Map<String,Integer> items() { return Collections.unmodifiableMap(items); }
+
+        /** The total number of items on this page. */
+        public int itemCount() { return itemCount; }
+
+        /** The size of this page's (compressed) content stream. */
+        public long contentBytes() { return contentBytes; }
+
+        /** The time it took to commit this page. */
+        public long commitNanos() { return commitNanos; }
+    }
+
+    private final Map<Integer,Page> pages = new TreeMap<>();
+    private final Map<Phase,Long> phaseNanos = new EnumMap<>(Phase.class);
+    private final Set<String> fonts = new TreeSet<>();
+    private int imageCount = 0;
+    private long imageBytes = 0;
+    private int savedPages = 0;
+
+    private Page page(int pageNum) {
+        return pages.computeIfAbsent(pageNum, Page::new);
+    }
+
+    private void time(Phase phase, long nanos) {
+        phaseNanos.merge(phase, nanos, Long::sum);
+    }
+
+    /** {@inheritDoc} */
+    @Override public void measured(Cell cell, double maxWidth, long nanos) {
+        time(Phase.MEASURE, nanos);
+    }
+
+    /** {@inheritDoc} */
+    @Override public void rendered(Cell cell, long nanos) { time(Phase.RENDER, nanos); }
+
+    /** {@inheritDoc} */
+    @Override public void itemAdded(int pageNum, PdfItem item, long nanos) {
+        Page page = page(pageNum);
+        page.items.merge(item.getClass().getSimpleName(), 1, Integer::sum);
+        page.itemCount++;
+        if (item instanceof PdfLayoutMgr.PageBuffer.Text) {
+            fonts.add(((PdfLayoutMgr.PageBuffer.Text) item).style.font().getName());
+        }
+        time(Phase.ADD_ITEM, nanos);
+    }
+
+    /** {@inheritDoc} */
+    @Override public void pageCommitted(int pageNum, int items, long contentBytes, long nanos) {
+        Page page = page(pageNum);
+        page.contentBytes = contentBytes;
+        page.commitNanos = nanos;
+        time(Phase.COMMIT_PAGE, nanos);
+    }
+
+    /** {@inheritDoc} */
+    @Override public void imageEncoded(String format, PDImage image, long nanos) {
+        imageCount++;
+        imageBytes += LayoutEvents.encodedBytes(image);
+        time(Phase.ENCODE_IMAGE, nanos);
+    }
+
+    /** {@inheritDoc} */
+    @Override public void saved(int pageCount, long nanos) {
+        savedPages = pageCount;
+        time(Phase.SAVE, nanos);
+    }
+
+    /**
+     The number of pages saved, or if the document hasn't been saved yet, the number of pages
+     with anything on them so far.
+     */
+    public int pageCount() { return (savedPages > 0) ? savedPages : pages.size(); }
+
+    /** What each page cost, in page order.  Only includes pages that had items or were committed. */
+    public List<Page> pages() { return Collections.unmodifiableList(new ArrayList<>(pages.values())); }
+
+    /** The number of each type of item in the whole document. */
+    public Map<String,Integer> items() {
+        Map<String,Integer> ret = new TreeMap<>();
+        for (Page page : pages.values()) {
+            for (Map.Entry<String,Integer> e : page.items.entrySet()) {
+                ret.merge(e.getKey(), e.getValue(), Integer::sum);
+            }
+        }
+        return ret;
+    }
+
+    /** The total size of all the pages' content streams. */
+    public long contentBytes() {
+        long ret = 0;
+        for (Page page : pages.values()) { ret += page.contentBytes; }
+        return ret;
+    }
+
+    /** The number of images encoded (each image is only encoded once per size it's shown at). */
+    public int imageCount() { return imageCount; }
+
+    /** The total encoded size of all the images. */
+    public long imageBytes() { return imageBytes; }
+
+    /** The names of the fonts used for text on the pages. */
+    public Set<String> fonts() { return Collections.unmodifiableSet(fonts); }
+
+    /** The total time spent in the given phase. */
+    public long nanos(Phase phase) {
+        Long ret = phaseNanos.get(phase);
+        return (ret == null) ? 0 : ret;
+    }
+
+    /** The page with the biggest content stream, or null if there are no pages. */
+    public Page biggestPage() {
+        Page ret = null;
+        for (Page page : pages.values()) {
+            if ( (ret == null) || (page.contentBytes > ret.contentBytes) ) { ret = page; }
+        }
+        return ret;
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.1fms", nanos / 1000000.0);
+    }
+
+    /** A few lines summarizing the whole document and its biggest page. */
+    @Override public String toString() {
+        StringBuilder sb = new StringBuilder("CostReport(");
+        sb.append(pageCount()).append(" pages, items ").append(items())
+          .append(", ").append(contentBytes()).append(" content bytes, ")
+          .append(imageCount).append(" images in ").append(imageBytes).append(" bytes, fonts ")
+          .append(fonts).append(")\n  time:");
+        for (Phase phase : Phase.values()) {
+            sb.append(" ").append(phase.name().toLowerCase()).append("=").append(millis(nanos(phase)));
+        }
+        Page biggest = biggestPage();
+        if (biggest != null) {
+            sb.append("\n  biggest page: #").append(biggest.pageNum).append(" with ")
+              .append(biggest.contentBytes).append(" content bytes and items ")
+              .append(biggest.items);
+        }
+        return sb.toString();
+    }
+}
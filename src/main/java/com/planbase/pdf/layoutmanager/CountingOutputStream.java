@@ -0,0 +1,39 @@
+// Copyright 2026-10-19 PlanBase Inc. & Glen Peterson
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.planbase.pdf.layoutmanager;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/** Keeps track of how many bytes have been written, for cross-reference tables. */
+final class CountingOutputStream extends FilterOutputStream {
+    private long count = 0;
+
+    CountingOutputStream(OutputStream os) { super(os); }
+
+    /** Returns the number of bytes written so far. */
+    long count() { return count; }
+
+    @Override public void write(int b) throws IOException {
+        out.write(b);
+        count++;
+    }
+
+    @Override public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        count += len;
+    }
+}
@@ -0,0 +1,153 @@
+// Copyright 2026-10-19 PlanBase Inc. & Glen Peterson
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.planbase.pdf.layoutmanager;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ <p>Keeps Deflaters (and an output buffer for each) for reuse.  Creating a Deflater allocates
+ and initializes about 256K of native zlib state, which is more work than compressing a typical
+ page's content stream.  A Deflater that's returned is reset() and handed to the next caller who
+ wants the same level.</p>
+
+ <p>At most {@link #MAX_IDLE} idle Deflaters are kept for each level.  Any more than that are
+ ended when they're returned.</p>
+ */
+final class DeflaterPool {
+    private DeflaterPool() { throw new UnsupportedOperationException("No instances!"); }
+
+    static final int MAX_IDLE = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+
+    private static final int BUF_SIZE = 64 * 1024;
+
+    /** A pooled Deflater and its buffer.  Give it back by calling close(). */
+    static final class Lease implements AutoCloseable {
+        final Deflater deflater;
+        final byte[] buf = new byte[BUF_SIZE];
+        private final int slot;
+        private boolean closed = false;
+
+        private Lease(int level, boolean nowrap, int s) {
+            deflater = new Deflater(level, nowrap);
+            slot = s;
+        }
+
+        /** Resets the Deflater and returns it to the pool. */
+        @Override public void close() {
+            if (closed) { return; }
+            closed = true;
+            deflater.reset();
+            if (IDLE_COUNTS[slot].incrementAndGet() <= MAX_IDLE) {
+                POOLS[slot].add(this);
+            } else {
+                IDLE_COUNTS[slot].decrementAndGet();
+                deflater.end();
+            }
+        }
+    }
+
+    // One pool for each level (-1 through 9), with and without the zlib wrapper.
+    private static final int SLOTS = 2 * (Deflater.BEST_COMPRESSION + 2);
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static final Queue<Lease>[] POOLS = new Queue[SLOTS];
+    private static final AtomicInteger[] IDLE_COUNTS = new AtomicInteger[SLOTS];
+    static {
+        for (int i = 0; i < SLOTS; i++) {
+            POOLS[i] = new ConcurrentLinkedQueue<>();
+            IDLE_COUNTS[i] = new AtomicInteger(0);
+        }
+    }
+
+    /** Throws an IllegalArgumentException unless level is a valid Deflater compression level. */
+    static void checkLevel(int level) {
+        if ( (level < Deflater.DEFAULT_COMPRESSION) || (level > Deflater.BEST_COMPRESSION) ) {
+            throw new IllegalArgumentException("Compression level must be from " +
+                                               Deflater.DEFAULT_COMPRESSION + " (default) to " +
+                                               Deflater.BEST_COMPRESSION + " (best), not " + level);
+        }
+    }
+
+    /**
+     Returns a Deflater (with a buffer) that's ready to use.  Close the lease when done, and don't
+     touch the Deflater after that.
+     @param level a Deflater compression level (or -1 for the default).
+     @param nowrap true for raw deflate data, false for the zlib format that FlateDecode wants.
+     */
+    static Lease lease(int level, boolean nowrap) {
+        checkLevel(level);
+        int slot = ((level + 1) * 2) + (nowrap ? 1 : 0);
+        Lease lease = POOLS[slot].poll();
+        if (lease == null) {
+            return new Lease(level, nowrap, slot);
+        }
+        IDLE_COUNTS[slot].decrementAndGet();
+        lease.closed = false;
+        return lease;
+    }
+
+    /** Compresses the given bytes into the zlib format used by FlateDecode. */
+    static byte[] deflate(byte[] data, int level) throws IOException {
+        try (Lease lease = lease(level, false)) {
+            Deflater deflater = lease.deflater;
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, data.length / 3));
+            deflater.setInput(data);
+            deflater.finish();
+            while (!deflater.finished()) {
+                out.write(lease.buf, 0, deflater.deflate(lease.buf));
+            }
+            return out.toByteArray();
+        }
+    }
+
+    /**
+     Compresses everything from the input stream into the output stream, in the zlib format used
+     by FlateDecode, without holding the whole input or output in memory.  Closes neither stream.
+     */
+    static void deflate(InputStream in, OutputStream out, int level) throws IOException {
+        try (Lease lease = lease(level, false)) {
+            // Doesn't end() a Deflater it was given, so the lease can still reset and reuse it.
+            DeflaterOutputStream dos = new DeflaterOutputStream(out, lease.deflater);
+            int n;
+            while ((n = in.read(lease.buf)) > 0) {
+                dos.write(lease.buf, 0, n);
+            }
+            dos.finish();
+        }
+    }
+
+    /**
+     Returns the two-byte zlib header for the given level.  Readers ignore the level bits, but
+     they may as well be honest.
+     */
+    static byte[] zlibHeader(int level) {
+        // FLEVEL: 0 fastest, 1 fast, 2 default, 3 maximum.  The check bits make the header a
+        // multiple of 31.
+        int fLevel = (level == Deflater.DEFAULT_COMPRESSION) ? 2 :
+                     (level <= 1) ? 0 :
+                     (level <= 5) ? 1 :
+                     (level == 6) ? 2 : 3;
+        int header = (0x78 << 8) | (fLevel << 6);
+        header += (31 - (header % 31)) % 31;
+        return new byte[] { (byte) (header >>> 8), (byte) header };
+    }
+}
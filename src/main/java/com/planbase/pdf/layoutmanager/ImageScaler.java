@@ -0,0 +1,86 @@
+// Copyright 2026-10-19 PlanBase Inc. & Glen Peterson
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.planbase.pdf.layoutmanager;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+
+/**
+ Resamples images down to the resolution they will actually be printed at so that we don't embed
+ a 12-megapixel photo in a one-inch cell.
+ */
+final class ImageScaler {
+    private ImageScaler() { throw new UnsupportedOperationException("No instances!"); }
+
+    /**
+     How many pixels an image needs along one axis to show the given number of document units at
+     the given dots per inch.  Never less than one.
+     */
+    static int pixelsFor(double docUnits, double dpi) {
+        return Math.max(1, (int) Math.ceil(docUnits / PdfLayoutMgr.DOC_UNITS_PER_INCH * dpi));
+    }
+
+    /**
+     Returns an image no larger than maxW x maxH pixels.  If the source already fits, it is returned
+     as-is.  Otherwise, the image is shrunk by successive halving with bilinear interpolation and
+     a final bicubic step.  Halving avoids the aliasing you get from a single big bilinear or
+     bicubic step, which only samples a few of the source pixels under each destination pixel.
+
+     @param src the source image
+     @param maxW the maximum width in pixels
+     @param maxH the maximum height in pixels
+     @return an image that fits in maxW x maxH (possibly the source image)
+     */
+    static BufferedImage downsample(BufferedImage src, int maxW, int maxH) {
+        final int targetW = Math.min(src.getWidth(), maxW);
+        final int targetH = Math.min(src.getHeight(), maxH);
+        if ( (targetW == src.getWidth()) && (targetH == src.getHeight()) ) {
+            return src;
+        }
+        final int type = (src.getType() == BufferedImage.TYPE_BYTE_GRAY) ? BufferedImage.TYPE_BYTE_GRAY :
+                         src.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB :
+                         BufferedImage.TYPE_INT_RGB;
+
+        BufferedImage img = src;
+        int w = src.getWidth();
+        int h = src.getHeight();
+        do {
+            // Halve until the next halving would go below the target, then take one last step.
+            w = (w / 2 >= targetW) ? w / 2 : targetW;
+            h = (h / 2 >= targetH) ? h / 2 : targetH;
+            boolean last = (w == targetW) && (h == targetH);
+            img = scale(img, w, h, type,
+                        last ? RenderingHints.VALUE_INTERPOLATION_BICUBIC
+                             : RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        } while ( (w != targetW) || (h != targetH) );
+        return img;
+    }
+
+    private static BufferedImage scale(BufferedImage src, int w, int h, int type, Object interpolation) {
+        BufferedImage dest = new BufferedImage(w, h, type);
+        Graphics2D g = dest.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, interpolation);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.setRenderingHint(RenderingHints.KEY_ALPHA_INTERPOLATION,
+                               RenderingHints.VALUE_ALPHA_INTERPOLATION_QUALITY);
+            g.drawImage(src, 0, 0, w, h, null);
+        } finally {
+            g.dispose();
+        }
+        return dest;
+    }
+}
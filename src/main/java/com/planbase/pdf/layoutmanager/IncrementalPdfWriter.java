@@ -0,0 +1,357 @@
+// Copyright 2026-10-19 PlanBase Inc. & Glen Peterson
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.planbase.pdf.layoutmanager;
+
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSDocument;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSObjectKey;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.io.RandomAccessBufferedFileInputStream;
+import org.apache.pdfbox.pdfparser.PDFParser;
+import org.apache.pdfbox.pdfwriter.COSWriter;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ <p>Appends pages to an existing PDF file as an incremental update (section 7.5.6 of the PDF
+ spec): the new pages and their resources, a new page tree node holding them, a new version of
+ the root page tree node with that node added to its kids, and a cross-reference section
+ covering just those objects, with /Prev pointing back to the file's previous one.  None of the
+ existing file is rewritten, so the cost depends on the new pages, not the whole document.</p>
+
+ <p>Each append adds one kid to the root of the page tree, which stays small even after years
+ of daily appends.  If the file uses a cross-reference stream, so does the update.</p>
+ */
+final class IncrementalPdfWriter {
+    private IncrementalPdfWriter() { throw new UnsupportedOperationException("No instances!"); }
+
+    /** What we need to know about the existing file. */
+    private static final class Existing {
+        long fileSize;
+        long prevXref;
+        int size;
+        boolean xrefStream;
+        COSObject root;
+        COSObject pagesRef;
+        int pageCount;
+        COSBase info;
+        COSBase id;
+        // The root page tree node as it will be rewritten, up to (not including) the end of its
+        // /Kids array.
+        byte[] pagesStart;
+    }
+
+    private static PDDocument parse(RandomAccessBufferedFileInputStream input) throws IOException {
+        // Not lenient, because a lenient parser checks the offset of every object in the file
+        // (which takes as long as the file is big).  We only need the trailer and page tree root.
+        PDFParser parser = new PDFParser(input);
+        parser.setLenient(false);
+        parser.parse();
+        return parser.getPDDocument();
+    }
+
+    private static Existing read(Path path) throws IOException {
+        Existing ret = new Existing();
+        ret.fileSize = Files.size(path);
+        // The document closes the input too, but if parsing fails there's no document to close.
+        try (RandomAccessBufferedFileInputStream input =
+                     new RandomAccessBufferedFileInputStream(path.toFile());
+             PDDocument old = parse(input)) {
+            if (old.isEncrypted()) {
+                throw new IllegalStateException("Can't append to an encrypted PDF.");
+            }
+            COSDocument cos = old.getDocument();
+            COSDictionary trailer = cos.getTrailer();
+            ret.prevXref = cos.getStartXref();
+            // PDFBox merges the trailers of every update, and the /Size it keeps may be an old
+            // one, so go by the highest object number in the cross-reference sections.
+            long highest = 0;
+            for (COSObjectKey key : cos.getXrefTable().keySet()) {
+                highest = Math.max(highest, key.getNumber());
+            }
+            ret.size = (int) Math.max(trailer.getInt(COSName.SIZE), highest + 1);
+            ret.xrefStream = cos.isXRefStream();
+            COSBase root = trailer.getItem(COSName.ROOT);
+            COSDictionary catalog = trailer.getCOSDictionary(COSName.ROOT);
+            COSBase pagesRef = (catalog == null) ? null : catalog.getItem(COSName.PAGES);
+            if ( !(root instanceof COSObject) || !(pagesRef instanceof COSObject) ||
+                 (ret.size < 1) ) {
+                throw new IllegalStateException("Can't find the page tree of " + path);
+            }
+            ret.root = (COSObject) root;
+            ret.pagesRef = (COSObject) pagesRef;
+            ret.info = trailer.getItem(COSName.INFO);
+            ret.id = trailer.getItem(COSName.ID);
+
+            COSDictionary pages = catalog.getCOSDictionary(COSName.PAGES);
+            ret.pageCount = pages.getInt(COSName.COUNT, 0);
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            bos.write(COSWriter.DICT_OPEN);
+            for (Map.Entry<COSName,COSBase> entry : pages.entrySet()) {
+                if (entry.getKey().equals(COSName.KIDS) || entry.getKey().equals(COSName.COUNT)) {
+                    continue;
+                }
+                entry.getKey().writePDF(bos);
+                bos.write(' ');
+                CosSerializer.writeLoaded(entry.getValue(), bos);
+                bos.write('\n');
+            }
+            COSName.KIDS.writePDF(bos);
+            bos.write(' ');
+            bos.write(COSWriter.ARRAY_OPEN);
+            COSBase kids = pages.getDictionaryObject(COSName.KIDS);
+            if (kids instanceof COSArray) {
+                for (COSBase kid : (COSArray) kids) {
+                    CosSerializer.writeLoaded(kid, bos);
+                    bos.write(' ');
+                }
+            }
+            ret.pagesStart = bos.toByteArray();
+        }
+        return ret;
+    }
+
+    /** Numbers and writes the new objects. */
+    private static final class Appender {
+        private final CountingOutputStream out;
+        private final long base;
+        private final List<Long> offsets = new ArrayList<>();
+        private final int firstNum;
+        private final Map<COSBase,Integer> objNums = new IdentityHashMap<>();
+        private final Deque<COSBase> pending = new ArrayDeque<>();
+        private final Deque<Integer> pendingNums = new ArrayDeque<>();
+
+        Appender(OutputStream os, long fileSize, int firstObjNum) {
+            out = new CountingOutputStream(new BufferedOutputStream(os, 64 * 1024));
+            base = fileSize;
+            firstNum = firstObjNum;
+        }
+
+        long position() { return base + out.count(); }
+
+        int newObjNum() {
+            offsets.add(0L);
+            return firstNum + offsets.size() - 1;
+        }
+
+        void startObj(int num) throws IOException {
+            offsets.set(num - firstNum, position());
+            ascii(num + " 0 obj\n");
+        }
+
+        void endObj() throws IOException { ascii("\nendobj\n"); }
+
+        void ascii(String s) throws IOException { CosSerializer.ascii(s, out); }
+
+        int reference(COSBase obj) {
+            Integer num = objNums.get(obj);
+            if (num == null) {
+                num = newObjNum();
+                objNums.put(obj, num);
+                pending.add(obj);
+                pendingNums.add(num);
+            }
+            return num;
+        }
+
+        void writePending() throws IOException {
+            while (!pending.isEmpty()) {
+                COSBase obj = pending.remove();
+                int num = pendingNums.remove();
+                startObj(num);
+                CosSerializer.writeBody(obj, out, this::reference);
+                endObj();
+                if (obj instanceof COSStream) {
+                    // Each stream is written once, so let go of it.
+                    ((COSStream) obj).close();
+                }
+            }
+        }
+    }
+
+    private static String ref(COSObject obj) {
+        return obj.getObjectNumber() + " " + obj.getGenerationNumber() + " R";
+    }
+
+    /**
+     Appends the given pages to the end of the given PDF file.
+     @param path an existing, unencrypted PDF file.
+     @param pages the pages to add, in order.
+     */
+    static void append(Path path, List<PDPage> pages) throws IOException {
+        Existing old = read(path);
+        // Write the update to a scratch file and only add it to the end of the PDF once it's
+        // complete, so that a font or image that won't serialize (or a full disk) can't leave
+        // half an update after the file's %%EOF.
+        Path update = Files.createTempFile("IncrementalPdfWriter", ".pdf");
+        try {
+            try (OutputStream os = Files.newOutputStream(update)) {
+                writeUpdate(os, old, pages);
+            }
+            try (FileChannel from = FileChannel.open(update, StandardOpenOption.READ);
+                 FileChannel to = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                try {
+                    long size = from.size();
+                    long done = 0;
+                    while (done < size) {
+                        long n = to.transferFrom(from, old.fileSize + done, size - done);
+                        if (n == 0) {
+                            throw new IOException(path + " changed while appending to it");
+                        }
+                        done += n;
+                    }
+                } catch (IOException | RuntimeException e) {
+                    // Cut off whatever part of the update made it in.
+                    to.truncate(old.fileSize);
+                    throw e;
+                }
+            }
+        } finally {
+            Files.deleteIfExists(update);
+        }
+    }
+
+    /** Writes the update that goes after the end of the existing file. */
+    private static void writeUpdate(OutputStream os, Existing old, List<PDPage> pages)
+            throws IOException {
+        Appender app = new Appender(os, old.fileSize, old.size);
+        // In case the file doesn't end with a newline.
+        app.ascii("\n");
+
+        int nodeNum = app.newObjNum();
+        List<Integer> pageNums = new ArrayList<>(pages.size());
+        for (PDPage page : pages) {
+            int pageNum = app.newObjNum();
+            pageNums.add(pageNum);
+            app.startObj(pageNum);
+            app.out.write(COSWriter.DICT_OPEN);
+            CosSerializer.writeEntries(page.getCOSObject(), COSName.PARENT, app.out,
+                                       app::reference);
+            app.ascii("/Parent " + nodeNum + " 0 R");
+            app.out.write(COSWriter.DICT_CLOSE);
+            app.endObj();
+            app.writePending();
+        }
+
+        // The new pages hang off a new node, which is the last kid of the root.  Our pages
+        // have their own resources and page boxes, but not always a /Rotate, so make sure
+        // they don't inherit one from the existing root.
+        app.startObj(nodeNum);
+        StringBuilder sB = new StringBuilder("<</Type /Pages /Parent ")
+                .append(ref(old.pagesRef)).append(" /Rotate 0 /Count ").append(pages.size())
+                .append(" /Kids [");
+        for (int i = 0; i < pageNums.size(); i++) {
+            sB.append((i % 10) == 0 ? "\n" : " ").append(pageNums.get(i)).append(" 0 R");
+        }
+        app.ascii(sB.append("]>>").toString());
+        app.endObj();
+
+        // The new version of the root of the page tree replaces the old one.
+        long pagesOffset = app.position();
+        app.ascii(old.pagesRef.getObjectNumber() + " " +
+                  old.pagesRef.getGenerationNumber() + " obj\n");
+        app.out.write(old.pagesStart);
+        app.ascii(nodeNum + " 0 R]\n/Count " + (old.pageCount + pages.size()) + ">>");
+        app.endObj();
+
+        if (old.xrefStream) {
+            writeXrefStream(app, old, pagesOffset);
+        } else {
+            writeXrefTable(app, old, pagesOffset);
+        }
+        app.out.flush();
+    }
+
+    private static String trailerEntries(Existing old, int size) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        CosSerializer.ascii("/Size " + size + " /Root " + ref(old.root) + " /Prev " + old.prevXref,
+                            bos);
+        if (old.info != null) {
+            CosSerializer.ascii(" /Info ", bos);
+            CosSerializer.writeLoaded(old.info, bos);
+        }
+        if (old.id != null) {
+            CosSerializer.ascii(" /ID ", bos);
+            CosSerializer.writeLoaded(old.id, bos);
+        }
+        return bos.toString("ISO-8859-1");
+    }
+
+    private static void writeXrefTable(Appender app, Existing old, long pagesOffset)
+            throws IOException {
+        long startXref = app.position();
+        int size = old.size + app.offsets.size();
+        StringBuilder sB = new StringBuilder(20 * (app.offsets.size() + 1) + 200);
+        sB.append("xref\n")
+          .append(old.pagesRef.getObjectNumber()).append(" 1\n")
+          .append(xrefEntry(pagesOffset, old.pagesRef.getGenerationNumber()))
+          .append(old.size).append(' ').append(app.offsets.size()).append('\n');
+        for (long offset : app.offsets) {
+            sB.append(xrefEntry(offset, 0));
+        }
+        sB.append("trailer\n<<").append(trailerEntries(old, size)).append(">>\n")
+          .append("startxref\n").append(startXref).append("\n%%EOF\n");
+        app.ascii(sB.toString());
+    }
+
+    private static String xrefEntry(long offset, int gen) {
+        return String.format("%010d %05d n\r\n", offset, gen);
+    }
+
+    private static void writeXrefStream(Appender app, Existing old, long pagesOffset)
+            throws IOException {
+        int xrefNum = app.newObjNum();
+        long startXref = app.position();
+        app.offsets.set(xrefNum - old.size, startXref);
+        int size = old.size + app.offsets.size();
+
+        int fieldBytes = 1;
+        while ((startXref >>> (8 * fieldBytes)) != 0) {
+            fieldBytes++;
+        }
+        ByteArrayOutputStream rows = new ByteArrayOutputStream((app.offsets.size() + 1) * (fieldBytes + 3));
+        StreamingPdfWriter.writeXrefRow(rows, 1, pagesOffset, fieldBytes,
+                                        old.pagesRef.getGenerationNumber());
+        for (long offset : app.offsets) {
+            StreamingPdfWriter.writeXrefRow(rows, 1, offset, fieldBytes, 0);
+        }
+        byte[] data = StreamingPdfWriter.deflate(rows.toByteArray());
+        app.ascii(xrefNum + " 0 obj\n<</Type /XRef " + trailerEntries(old, size) +
+                  " /Index [" + old.pagesRef.getObjectNumber() + " 1 " + old.size + " " +
+                  app.offsets.size() + "] /W [1 " + fieldBytes + " 2]" +
+                  " /Filter /FlateDecode /Length " + data.length + ">>\nstream\n");
+        app.out.write(data);
+        app.ascii("\nendstream\nendobj\nstartxref\n" + startXref + "\n%%EOF\n");
+    }
+}
@@ -0,0 +1,266 @@
+// Copyright 2026-10-19 PlanBase Inc. & Glen Peterson
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.planbase.pdf.layoutmanager;
+
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSBoolean;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSInteger;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.cos.COSString;
+import org.apache.pdfbox.filter.DecodeOptions;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.graphics.color.PDColorSpace;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImage;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.apache.pdfbox.pdmodel.graphics.image.PDInlineImage;
+import org.apache.pdfbox.util.Matrix;
+
+import java.awt.Paint;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ <p>Converts small image XObjects to inline images (BI ... ID ... EI in the content stream).  A
+ viewer can draw an inline image without looking up a named resource and an indirect object, which
+ adds up when the same little icon is drawn thousands of times.  The trade-off is that the image
+ data is repeated every time it's drawn, so this is only worth it for really small images.</p>
+
+ <p>PDFBox's PDPageContentStream.drawImage(PDInlineImage...) writes the decoded samples with no
+ filter, and drops the lookup table of an Indexed color space.  So this class writes the whole
+ BI ... EI operator itself, once per image, with the still-encoded data and the filter, decode
+ parameters and color space that go with it.</p>
+ */
+final class InlineImages {
+    private InlineImages() { throw new UnsupportedOperationException("No instances!"); }
+
+    // The image dictionary entries that have an inline abbreviation (Table 93 of the PDF spec).
+    // An image with any other entry (a soft mask, metadata, etc.) is left as an XObject.
+    private static final Set<COSName> KNOWN_KEYS = new HashSet<>(Arrays.asList(
+            COSName.TYPE, COSName.SUBTYPE, COSName.LENGTH, COSName.WIDTH, COSName.HEIGHT,
+            COSName.BITS_PER_COMPONENT, COSName.COLORSPACE, COSName.FILTER, COSName.DECODE_PARMS,
+            COSName.DECODE, COSName.INTERPOLATE));
+
+    private static final byte[] BEGIN = "BI\n".getBytes(StandardCharsets.ISO_8859_1);
+    private static final byte[] DATA = "ID ".getBytes(StandardCharsets.ISO_8859_1);
+    private static final byte[] END = "\nEI\n".getBytes(StandardCharsets.ISO_8859_1);
+
+    /**
+     An image to draw inline.  Acts like the PDInlineImage it would be read back as, and also
+     holds the bytes of the complete BI ... EI operator to write into the content stream.
+     */
+    static final class Inline implements PDImage {
+        private final PDInlineImage image;
+        private final byte[] operator;
+
+        private Inline(PDInlineImage i, byte[] op) { image = i; operator = op; }
+
+        /** The complete BI ... EI operator: the number of bytes added each time it's drawn. */
+        int length() { return operator.length; }
+
+        /** Draws this image with its lower-left corner at x, y scaled to the given size. */
+        @SuppressWarnings("deprecation")
+        void draw(PDPageContentStream stream, float x, float y, float width, float height)
+                throws IOException {
+            stream.saveGraphicsState();
+            stream.transform(new Matrix(width, 0, 0, height, x, y));
+            // Not deprecated for any reason that applies here: PDFBox has no other way to write
+            // an operator it can't write correctly itself.
+            stream.appendRawCommands(operator);
+            stream.restoreGraphicsState();
+        }
+
+        @Override public COSBase getCOSObject() { return image.getCOSObject(); }
+        @Override public BufferedImage getImage() throws IOException { return image.getImage(); }
+        @Override public BufferedImage getImage(Rectangle region, int subsampling)
+                throws IOException {
+            return image.getImage(region, subsampling);
+        }
+        @Override public BufferedImage getStencilImage(Paint paint) throws IOException {
+            return image.getStencilImage(paint);
+        }
+        @Override public InputStream createInputStream() throws IOException {
+            return image.createInputStream();
+        }
+        @Override public InputStream createInputStream(List<String> stopFilters)
+                throws IOException {
+            return image.createInputStream(stopFilters);
+        }
+        @Override public InputStream createInputStream(DecodeOptions options) throws IOException {
+            return image.createInputStream(options);
+        }
+        @Override public boolean isEmpty() { return image.isEmpty(); }
+        @Override public boolean isStencil() { return image.isStencil(); }
+        @Override public void setStencil(boolean isStencil) { throw unmodifiable(); }
+        @Override public int getBitsPerComponent() { return image.getBitsPerComponent(); }
+        @Override public void setBitsPerComponent(int bitsPerComponent) { throw unmodifiable(); }
+        @Override public PDColorSpace getColorSpace() throws IOException {
+            return image.getColorSpace();
+        }
+        @Override public void setColorSpace(PDColorSpace colorSpace) { throw unmodifiable(); }
+        @Override public int getHeight() { return image.getHeight(); }
+        @Override public void setHeight(int height) { throw unmodifiable(); }
+        @Override public int getWidth() { return image.getWidth(); }
+        @Override public void setWidth(int width) { throw unmodifiable(); }
+        @Override public void setDecode(COSArray decode) { throw unmodifiable(); }
+        @Override public COSArray getDecode() { return image.getDecode(); }
+        @Override public boolean getInterpolate() { return image.getInterpolate(); }
+        @Override public void setInterpolate(boolean value) { throw unmodifiable(); }
+        @Override public String getSuffix() { return image.getSuffix(); }
+
+        private static UnsupportedOperationException unmodifiable() {
+            return new UnsupportedOperationException("The operator has already been written");
+        }
+    }
+
+    /**
+     Returns an inline image with the same (still encoded) data as the given XObject, or null if
+     the whole BI ... EI operator would be bigger than maxBytes, or the XObject uses a feature that
+     can't be inlined (soft masks, color spaces other than DeviceGray, DeviceRGB, or Indexed on
+     one of those, or unusual filters).
+     */
+    static Inline toInline(PDImageXObject xObj, int maxBytes) throws IOException {
+        COSStream stream = xObj.getCOSObject();
+        if (stream.getLength() > maxBytes) {
+            return null;
+        }
+        for (COSName key : stream.keySet()) {
+            if (!KNOWN_KEYS.contains(key)) { return null; }
+        }
+
+        COSBase cs = abbreviateColorSpace(stream.getDictionaryObject(COSName.COLORSPACE));
+        COSBase filter = abbreviateFilter(stream.getDictionaryObject(COSName.FILTER));
+        if ( (cs == null) || (filter == null) ) {
+            return null;
+        }
+
+        byte[] data;
+        try (InputStream is = stream.createRawInputStream()) {
+            data = is.readAllBytes();
+        }
+        if (containsEndOperator(data)) {
+            return null;
+        }
+
+        // Use the abbreviated keys from Table 93 of the PDF spec.
+        COSDictionary dict = new COSDictionary();
+        dict.setInt(COSName.W, xObj.getWidth());
+        dict.setInt(COSName.H, xObj.getHeight());
+        dict.setInt(COSName.BPC, xObj.getBitsPerComponent());
+        dict.setItem(COSName.CS, cs);
+        if (filter != COSName.NONE) {
+            dict.setItem(COSName.F, filter);
+        }
+        COSBase decodeParms = stream.getDictionaryObject(COSName.DECODE_PARMS);
+        if (decodeParms != null) {
+            dict.setItem(COSName.DP, decodeParms);
+        }
+        COSBase decode = stream.getDictionaryObject(COSName.DECODE);
+        if (decode != null) {
+            dict.setItem(COSName.D, decode);
+        }
+        if (stream.getBoolean(COSName.INTERPOLATE, false)) {
+            dict.setItem(COSName.I, COSBoolean.TRUE);
+        }
+        // PDF 2.0 adds the length so that readers don't have to guess where binary data ends.
+        dict.setInt(COSName.L, data.length);
+
+        ByteArrayOutputStream op = new ByteArrayOutputStream(data.length + 128);
+        op.write(BEGIN);
+        for (Map.Entry<COSName,COSBase> entry : dict.entrySet()) {
+            entry.getKey().writePDF(op);
+            op.write(' ');
+            CosSerializer.writeDirect(entry.getValue(), op, obj -> {
+                throw new IllegalStateException("An inline image can't refer to other objects");
+            });
+            op.write('\n');
+        }
+        op.write(DATA);
+        op.write(data);
+        op.write(END);
+        if (op.size() > maxBytes) {
+            return null;
+        }
+        return new Inline(new PDInlineImage(dict, data, null), op.toByteArray());
+    }
+
+    private static boolean isWhitespace(int b) {
+        return (b == ' ') || (b == '\n') || (b == '\r') || (b == '\t') || (b == '\f') || (b == 0);
+    }
+
+    /**
+     Returns true if the data has "EI" followed by whitespace in it.  Readers that don't know the
+     /L entry look for that to find the end of the data, so an image that contains it is left as
+     an XObject.
+     */
+    private static boolean containsEndOperator(byte[] data) {
+        for (int i = 0; i < data.length - 1; i++) {
+            if ( (data[i] == 'E') && (data[i + 1] == 'I') &&
+                 ( (i + 2 == data.length) || isWhitespace(data[i + 2]) ) ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static COSBase abbreviateColorSpace(COSBase cs) throws IOException {
+        if (COSName.DEVICERGB.equals(cs)) { return COSName.RGB; }
+        if (COSName.DEVICEGRAY.equals(cs)) { return COSName.G; }
+        if ( (cs instanceof COSArray) && (((COSArray) cs).size() == 4) &&
+             COSName.INDEXED.equals(((COSArray) cs).getObject(0)) ) {
+            COSArray indexed = (COSArray) cs;
+            COSBase base = indexed.getObject(1);
+            if ( !COSName.DEVICERGB.equals(base) && !COSName.DEVICEGRAY.equals(base) ) {
+                return null;
+            }
+            // The lookup table has to be a string: an inline image can't refer to a stream.
+            COSBase lookup = indexed.getObject(3);
+            if (lookup instanceof COSStream) {
+                try (InputStream is = ((COSStream) lookup).createInputStream()) {
+                    lookup = new COSString(is.readAllBytes());
+                }
+            } else if ( !(lookup instanceof COSString) ) {
+                return null;
+            }
+            COSArray ret = new COSArray();
+            ret.add(COSName.I);
+            ret.add(base);
+            ret.add(COSInteger.get(indexed.getInt(2)));
+            ret.add(lookup);
+            return ret;
+        }
+        return null;
+    }
+
+    /** Returns the abbreviated filter name, COSName.NONE for no filter, or null if not supported. */
+    private static COSBase abbreviateFilter(COSBase filter) {
+        if (filter == null) { return COSName.NONE; }
+        if (COSName.FLATE_DECODE.equals(filter)) { return COSName.FLATE_DECODE_ABBREVIATION; }
+        if (COSName.DCT_DECODE.equals(filter)) { return COSName.DCT_DECODE_ABBREVIATION; }
+        if (COSName.CCITTFAX_DECODE.equals(filter)) { return COSName.CCITTFAX_DECODE_ABBREVIATION; }
+        return null;
+    }
+}
@@ -0,0 +1,157 @@
+// Copyright 2026-10-19 PlanBase Inc. & Glen Peterson
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.planbase.pdf.layoutmanager;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImage;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+
+/**
+ <p>Java Flight Recorder events for the phases of laying out and saving a document.  They are all
+ disabled unless a recording turns them on, for example with the pdflayoutmanager.jfc settings
+ file from the root of this jar (extract it first):</p>
+
+ <pre><code>java -XX:StartFlightRecording:settings=default,settings=pdflayoutmanager.jfc,filename=rec.jfr ...</code></pre>
+
+ <p>(Java 17 and later can combine settings files like that.  On Java 11, copy the events from
+ pdflayoutmanager.jfc into your own settings file.)  When an event is disabled, creating it and
+ checking shouldCommit() is all it costs.</p>
+ */
+final class LayoutEvents {
+    private LayoutEvents() { throw new UnsupportedOperationException("No instances!"); }
+
+    private static final String CATEGORY = "PdfLayoutManager";
+
+    /** Text at least this long gets a TextWrap event. */
+    static final int LARGE_TEXT_CHARS = 1024;
+
+    @Name("com.planbase.pdf.layoutmanager.LogicalPage")
+    @Label("Logical Page")
+    @Description("From logicalPageStart() to commit()")
+    @Category(CATEGORY)
+    @Enabled(false)
+    @StackTrace(false)
+    static final class LogicalPageEvent extends Event {
+        @Label("Orientation")
+        String orientation;
+
+        @Label("Physical Pages")
+        int physicalPages;
+    }
+
+    @Name("com.planbase.pdf.layoutmanager.PageCommit")
+    @Label("Page Commit")
+    @Description("Drawing, compressing and (if streaming) writing one physical page")
+    @Category(CATEGORY)
+    @Enabled(false)
+    @StackTrace(false)
+    static final class PageCommitEvent extends Event {
+        @Label("Page Number")
+        int pageNum;
+
+        @Label("Items")
+        int items;
+
+        @Label("Content Bytes")
+        @DataAmount
+        long contentBytes;
+    }
+
+    @Name("com.planbase.pdf.layoutmanager.ImageEncode")
+    @Label("Image Encode")
+    @Description("Resampling, analyzing and encoding an image the first time it's used at a size")
+    @Category(CATEGORY)
+    @Enabled(false)
+    @StackTrace(false)
+    static final class ImageEncodeEvent extends Event {
+        @Label("Format")
+        String format;
+
+        @Label("Width")
+        int width;
+
+        @Label("Height")
+        int height;
+
+        @Label("Inline")
+        boolean inline;
+
+        @Label("Encoded Bytes")
+        @DataAmount
+        long encodedBytes;
+    }
+
+    @Name("com.planbase.pdf.layoutmanager.TextWrap")
+    @Label("Text Wrap")
+    @Description("Wrapping a large block of text to a width")
+    @Category(CATEGORY)
+    @Enabled(false)
+    @StackTrace(false)
+    static final class TextWrapEvent extends Event {
+        @Label("Characters")
+        int chars;
+
+        @Label("Width")
+        double maxWidth;
+
+        @Label("Lines")
+        int lines;
+    }
+
+    @Name("com.planbase.pdf.layoutmanager.Save")
+    @Label("Save")
+    @Description("Writing the document after the last commit")
+    @Category(CATEGORY)
+    @Enabled(false)
+    @StackTrace(false)
+    static final class SaveEvent extends Event {
+        @Label("Kind")
+        @Description("plain, compressed objects, linearized, streaming, append, published, or" +
+                     " concatenated")
+        String kind;
+
+        @Label("Pages")
+        int pages;
+
+        /** Ends the event and, if it's being recorded, fills it in and commits it. */
+        void finish(String k, int p) {
+            end();
+            if (shouldCommit()) {
+                kind = k;
+                pages = p;
+                commit();
+            }
+        }
+    }
+
+    /**
+     Returns the size of the encoded data in an image XObject, or for an inline image, the size of
+     the whole operator that's written each time it's drawn.
+     */
+    static long encodedBytes(PDImage image) {
+        if (image instanceof InlineImages.Inline) {
+            return ((InlineImages.Inline) image).length();
+        }
+        return ((PDImageXObject) image).getCOSObject().getLength();
+    }
+}
@@ -0,0 +1,90 @@
+// Copyright 2026-10-19 PlanBase Inc. & Glen Peterson
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.planbase.pdf.layoutmanager;
+
+import org.apache.pdfbox.pdmodel.graphics.image.PDImage;
+
+/**
+ <p>Receives timings (in nanoseconds, from System.nanoTime()) and counts from each phase of laying
+ out and writing a document, so that they can be sent to your own monitoring.  Register one with
+ {@link PdfLayoutMgr#layoutListener(LayoutListener)}.  Every method does nothing by default, so
+ implement only the ones you need.  When no listener is registered, the layout code doesn't even
+ read the clock.</p>
+
+ <p>Callbacks happen on the thread doing the work, which is the thread laying out the document,
+ except that {@link #saved(int, long)} is called on the executor's thread for
+ {@link PdfLayoutMgr#saveAsync(java.io.OutputStream, java.util.concurrent.Executor)}, and on the
+ thread that requested the last chunk for {@link PdfLayoutMgr#publisher()}.  Callbacks should be
+ quick, and must not throw exceptions.</p>
+ */
+public interface LayoutListener {
+    /** The default listener, which ignores everything. */
+    LayoutListener NONE = new LayoutListener() {};
+
+    /**
+     Called each time a Cell on a page or in a table row is measured.  Most of these are cache hits
+     except the first at each width.  The time includes measuring everything inside the cell.
+     @param cell the measured cell.
+     @param maxWidth the width it was measured at.
+     @param nanos how long it took.
+     */
+    default void measured(Cell cell, double maxWidth, long nanos) {}
+
+    /**
+     Called after a Cell on a page or in a table row is rendered into page buffers.  The time
+     includes rendering everything inside the cell, and adding the resulting items (see
+     {@link #itemAdded(int, PdfItem, long)}).
+     @param cell the rendered cell.
+     @param nanos how long it took.
+     */
+    default void rendered(Cell cell, long nanos) {}
+
+    /**
+     Called for every text, line, rectangle and image added to a physical page.
+     @param pageNum the physical page number, counting from 1.
+     @param item the new item.
+     @param nanos how long it took to add it to the page buffer.
+     */
+    default void itemAdded(int pageNum, PdfItem item, long nanos) {}
+
+    /**
+     Called when a logical page is committed, once for each physical page written.
+     @param pageNum the physical page number, counting from 1.
+     @param items the number of items drawn on it (not counting headers and footers).
+     @param contentBytes the size of its (compressed) content stream.
+     @param nanos how long it took to draw, compress and (if streaming) write the page.
+     */
+    default void pageCommitted(int pageNum, int items, long contentBytes, long nanos) {}
+
+    /**
+     Called when an image is encoded for the first time at a given size.  Later uses of the same
+     image at the same size don't encode it again.
+     @param format "jpeg" or "png".
+     @param image the encoded image (inline or not).
+     @param nanos how long it took to resample, analyze and encode the image.
+     */
+    default void imageEncoded(String format, PDImage image, long nanos) {}
+
+    /**
+     Called when the document has been written: by any of the save methods, when its
+     {@link PdfLayoutMgr#publisher()} completes, or when it's added to a {@link PdfConcatenator}.
+     Not called if writing fails or the publisher is cancelled.
+     @param pages the number of pages written.
+     @param nanos how long it took to write the document (after the last commit).  For a
+     publisher, only the time spent serializing, not the time waiting for the subscriber.
+     */
+    default void saved(int pages, long nanos) {}
+}
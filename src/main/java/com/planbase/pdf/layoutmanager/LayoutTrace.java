@@ -0,0 +1,317 @@
+// Copyright 2026-10-19 PlanBase Inc. & Glen Peterson
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.planbase.pdf.layoutmanager;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ <p>Records, for every Cell, Text, image, table, table part and table row laid out on this thread,
+ how many times it was measured and at which widths, how many times a Cell or Text had to lay
+ itself out again, how long measuring and rendering took, and how many items (text, lines,
+ rectangles, images) it drew.  The results form a tree, from the
+ things put directly on a page down to the text inside the innermost cell, which can be exported
+ as JSON.  A subtree that is measured at many widths, laid out many times, or measured many more
+ times than it is rendered, is usually the one to fix.</p>
+
+ <pre><code>try (LayoutTrace trace = LayoutTrace.start()) {
+    lp.putCell(40, y, slowCell);
+    ...
+    Files.writeString(Paths.get("trace.json"), trace.toJson());
+}</code></pre>
+
+ <p>Only one trace can be running on a thread at a time.  Times include everything inside a node,
+ so a parent's time includes its children's.  A node shown in several places (like the same image
+ in many cells) appears once, under the first place it was used, with the totals from all of
+ them.  When no trace is running on any thread, the layout code only checks a counter
+ before running each measure or render, and allocates nothing extra.</p>
+ */
+public class LayoutTrace implements AutoCloseable {
+    // The number of traces running on all threads, so that the layout code can skip the
+    // ThreadLocal lookup when there are none.
+    private static final AtomicInteger RUNNING = new AtomicInteger();
+    private static final ThreadLocal<LayoutTrace> CURRENT = new ThreadLocal<>();
+
+    private static final int MAX_TEXT_CHARS = 40;
+
+    /** What happened to one Renderable (or table part or table row). */
+    public static class Node {
+        private final Object thing;
+        private final List<Node> children = new ArrayList<>();
+        private final Set<Double> widths = new LinkedHashSet<>();
+        private int measureCalls = 0;
+        private int layouts = 0;
+        private long measureNanos = 0;
+        private int renderCalls = 0;
+        private long renderNanos = 0;
+        private int items = 0;
+
+        private Node(Object t) { thing = t; }
+
+        /** The simple class name: Cell, Text, ScaledPng, TableBuilder, etc. */
+        public String type() { return thing.getClass().getSimpleName(); }
+
+        /** The Renderable (or TablePart or TableRowBuilder) this node is for. */
+        public Object thing() { return thing; }
+
+        /** The nodes measured or rendered inside this one, in the order they were first seen. */
+        public List<Node> children() { return Collections.unmodifiableList(children); }
+
+        /** The number of times calcDimensions() was called. */
+        public int measureCalls() { return measureCalls; }
+
+        /** The widths calcDimensions() was asked for, in the order they were first asked for. */
+        public Set<Double> widths() { return Collections.unmodifiableSet(widths); }
+
+        /**
+         The number of times a Cell or Text had to lay itself out.  They cache a layout for each
+         width, so each of these was a cache miss, whether it happened in calcDimensions() or in
+         render() (which can ask for a width that was never measured).
+         */
+        public int layouts() { return layouts; }
+
+        /** Total time in calcDimensions(), including children. */
+        public long measureNanos() { return measureNanos; }
+
+        /** The number of times render() was called. */
+        public int renderCalls() { return renderCalls; }
+
+        /** Total time in render(), including children. */
+        public long renderNanos() { return renderNanos; }
+
+        /** Items drawn by this node itself, not counting its children. */
+        public int items() { return items; }
+
+        /** Items drawn by this node and all its children. */
+        public int totalItems() {
+            int ret = items;
+            for (Node child : children) { ret += child.totalItems(); }
+            return ret;
+        }
+    }
+
+    private static final class Frame {
+        final Node node;
+        final boolean render;
+        final long start;
+        Frame(Node n, boolean r, long s) { node = n; render = r; start = s; }
+    }
+
+    private final Thread thread;
+    private final Map<Object,Node> nodes = new IdentityHashMap<>();
+    private final List<Node> roots = new ArrayList<>();
+    private final Deque<Frame> stack = new ArrayDeque<>();
+    private boolean running = true;
+
+    private LayoutTrace(Thread t) { thread = t; }
+
+    /**
+     Starts tracing layout on the current thread.
+     @return the new trace, which keeps recording until it's closed.
+     @throws IllegalStateException if a trace is already running on this thread.
+     */
+    public static LayoutTrace start() {
+        if (CURRENT.get() != null) {
+            throw new IllegalStateException("A LayoutTrace is already running on this thread.");
+        }
+        LayoutTrace trace = new LayoutTrace(Thread.currentThread());
+        CURRENT.set(trace);
+        RUNNING.incrementAndGet();
+        return trace;
+    }
+
+    /**
+     Stops recording.  The results are still available afterward.  Must be called on the thread
+     that started it.
+     */
+    @Override public void close() {
+        if (!running) { return; }
+        if (Thread.currentThread() != thread) {
+            throw new IllegalStateException("A LayoutTrace must be closed on the thread that" +
+                                            " started it.");
+        }
+        running = false;
+        CURRENT.remove();
+        RUNNING.decrementAndGet();
+    }
+
+    /** Returns the trace running on this thread, or null. */
+    static LayoutTrace current() {
+        return (RUNNING.get() == 0) ? null : CURRENT.get();
+    }
+
+    private Node node(Object thing) {
+        Node node = nodes.get(thing);
+        if (node == null) {
+            node = new Node(thing);
+            nodes.put(thing, node);
+            if (stack.isEmpty()) {
+                roots.add(node);
+            } else {
+                stack.peek().node.children.add(node);
+            }
+        }
+        return node;
+    }
+
+    private void enter(Node node, boolean render) {
+        stack.push(new Frame(node, render, System.nanoTime()));
+    }
+
+    private void exit() {
+        Frame frame = stack.pop();
+        long nanos = System.nanoTime() - frame.start;
+        if (frame.render) {
+            frame.node.renderNanos += nanos;
+        } else {
+            frame.node.measureNanos += nanos;
+        }
+    }
+
+    /**
+     Runs a calcDimensions() body and records it (and the width it was asked for) under the given
+     thing.  Callers get this trace from current() and call the body themselves when there isn't
+     one, so that untraced layout doesn't allocate a lambda for every measure.
+     */
+    <T> T measure(Object thing, double maxWidth, Supplier<T> body) {
+        Node node = node(thing);
+        node.measureCalls++;
+        node.widths.add(maxWidth);
+        enter(node, false);
+        try {
+            return body.get();
+        } finally {
+            exit();
+        }
+    }
+
+    /** Runs a render() body and records it under the given thing.  See measure(). */
+    <T> T render(Object thing, Supplier<T> body) {
+        Node node = node(thing);
+        node.renderCalls++;
+        enter(node, true);
+        try {
+            return body.get();
+        } finally {
+            exit();
+        }
+    }
+
+    /** Records a cache miss: a Cell or Text laying itself out at a new width. */
+    static void laidOut(Object thing) {
+        LayoutTrace trace = current();
+        if (trace != null) {
+            trace.node(thing).layouts++;
+        }
+    }
+
+    /** Counts an item drawn by whatever is being rendered on this thread, if it's being traced. */
+    static void itemAdded() {
+        LayoutTrace trace = current();
+        if ( (trace != null) && !trace.stack.isEmpty() ) {
+            trace.stack.peek().node.items++;
+        }
+    }
+
+    /** The nodes that were measured or rendered outside of any other node. */
+    public List<Node> roots() { return Collections.unmodifiableList(roots); }
+
+    /** Every node in the trace. */
+    public int nodeCount() { return nodes.size(); }
+
+    /**
+     Returns the trace as a JSON array of root nodes.  Each node has its type, measureCalls,
+     widths, layouts, measureNanos, renderCalls, renderNanos, items, totalItems, and children (if
+     any).
+     Text nodes also have the start of their text, and Cells their width.
+     */
+    public String toJson() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("[");
+        for (int i = 0; i < roots.size(); i++) {
+            if (i > 0) { sb.append(","); }
+            appendJson(sb, roots.get(i), "\n  ");
+        }
+        return sb.append("\n]\n").toString();
+    }
+
+    private static void appendJson(StringBuilder sb, Node node, String indent) {
+        sb.append(indent).append("{\"type\": ");
+        appendString(sb, node.type());
+        if (node.thing instanceof Text) {
+            String text = ((Text) node.thing).text();
+            sb.append(", \"text\": ");
+            appendString(sb, (text.length() > MAX_TEXT_CHARS)
+                             ? text.substring(0, MAX_TEXT_CHARS - 3) + "..."
+                             : text);
+        } else if (node.thing instanceof Cell) {
+            sb.append(", \"width\": ").append(((Cell) node.thing).width());
+        }
+        sb.append(", \"measureCalls\": ").append(node.measureCalls)
+          .append(", \"widths\": [");
+        boolean first = true;
+        for (Double w : node.widths) {
+            if (!first) { sb.append(", "); }
+            first = false;
+            sb.append(Double.isFinite(w) ? w.toString() : "null");
+        }
+        sb.append("], \"layouts\": ").append(node.layouts)
+          .append(", \"measureNanos\": ").append(node.measureNanos)
+          .append(", \"renderCalls\": ").append(node.renderCalls)
+          .append(", \"renderNanos\": ").append(node.renderNanos)
+          .append(", \"items\": ").append(node.items)
+          .append(", \"totalItems\": ").append(node.totalItems());
+        if (!node.children.isEmpty()) {
+            sb.append(", \"children\": [");
+            String childIndent = indent + "  ";
+            for (int i = 0; i < node.children.size(); i++) {
+                if (i > 0) { sb.append(","); }
+                appendJson(sb, node.children.get(i), childIndent);
+            }
+            sb.append(indent).append("]");
+        }
+        sb.append("}");
+    }
+
+    private static void appendString(StringBuilder sb, String s) {
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        sb.append('"');
+    }
+}
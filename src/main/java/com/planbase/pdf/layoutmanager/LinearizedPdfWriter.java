@@ -0,0 +1,516 @@
+// Copyright 2026-10-19 PlanBase Inc. & Glen Peterson
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.planbase.pdf.layoutmanager;
+
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdfwriter.COSWriter;
+import org.apache.pdfbox.pdmodel.PDPage;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ <p>Writes a linearized ("fast web view") PDF as described in Annex F of the PDF spec.  The file
+ starts with a linearization dictionary, a cross-reference table for the first page, the catalog,
+ a hint stream and then everything needed to show the first page, so a viewer can show page one
+ after downloading just that much, no matter how long the document is.  The rest of the pages
+ follow in order, each with the objects that only it uses, then the objects shared by several
+ pages, then the page tree and the main cross-reference table.</p>
+
+ <p>The first-page objects get the highest object numbers (the first-page cross-reference section
+ lists them) and everything else is numbered from 1 in file order.  All the objects are measured
+ before anything is written, so that the offsets in the linearization dictionary, cross-reference
+ tables and hint tables are known up front.  Offsets in the hint tables are, as the spec
+ requires, what they would be if the hint stream weren't there.</p>
+ */
+final class LinearizedPdfWriter {
+    private LinearizedPdfWriter() { throw new UnsupportedOperationException("No instances!"); }
+
+    private static final String HEADER = "%PDF-1.4\n%âãÏÓ\n";
+
+    // Numbers in the linearization dictionary and first-page trailer are padded to this width
+    // so that they can be measured before their values are known.
+    private static final int NUM_WIDTH = 10;
+
+    private static final int NO_PAGE = -1;
+
+    /** One indirect object in the order it's written. */
+    private static final class Item {
+        final int num;
+        // The object, or null for the catalog, hint stream and page tree which are made here.
+        final COSBase obj;
+        // For page dictionaries, the index of the page.
+        final int page;
+        long size;
+        // Where the object would start if there were no hint stream.
+        long offset;
+        Item(int n, COSBase o, int p) { num = n; obj = o; page = p; }
+    }
+
+    /** The objects each page uses, directly or indirectly, in the order they are found. */
+    private static List<COSBase> objectsUsedBy(PDPage page) {
+        Set<COSBase> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<COSBase> ret = new ArrayList<>();
+        Deque<COSBase> todo = new ArrayDeque<>();
+        List<COSBase> children = new ArrayList<>();
+        CosSerializer.indirectChildren(page.getCOSObject(), COSName.PARENT, children);
+        todo.addAll(children);
+        while (!todo.isEmpty()) {
+            COSBase obj = todo.remove();
+            if (seen.add(obj)) {
+                ret.add(obj);
+                children.clear();
+                CosSerializer.indirectChildren(obj, null, children);
+                todo.addAll(children);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     Writes the given pages as a linearized PDF.  Does not close the stream.
+     */
+    static void write(List<PDPage> pages, OutputStream os) throws IOException {
+        final int numPages = pages.size();
+        if (numPages == 0) {
+            // Nothing to show first, so just write an ordinary empty document.
+            new StreamingPdfWriter(os, true, false).close();
+            return;
+        }
+
+        // Work out which page(s) use each object.
+        List<List<COSBase>> used = new ArrayList<>(numPages);
+        // The first page that uses an object, or -1 if more than one page (except the first) does.
+        Map<COSBase,Integer> owner = new IdentityHashMap<>();
+        for (int p = 0; p < numPages; p++) {
+            List<COSBase> objs = objectsUsedBy(pages.get(p));
+            used.add(objs);
+            for (COSBase obj : objs) {
+                Integer prev = owner.get(obj);
+                if (prev == null) {
+                    owner.put(obj, p);
+                } else if ( (prev != 0) && (prev != p) ) {
+                    owner.put(obj, NO_PAGE);
+                }
+            }
+        }
+
+        // Number everything except the first page section from 1, in file order.
+        Map<COSBase,Item> items = new IdentityHashMap<>();
+        List<List<Item>> pageItems = new ArrayList<>(numPages);
+        List<Item> mainItems = new ArrayList<>();
+        int nextNum = 1;
+        pageItems.add(null); // the first page is numbered below.
+        for (int p = 1; p < numPages; p++) {
+            List<Item> thisPage = new ArrayList<>();
+            Item pageItem = new Item(nextNum++, pages.get(p).getCOSObject(), p);
+            items.put(pageItem.obj, pageItem);
+            thisPage.add(pageItem);
+            for (COSBase obj : used.get(p)) {
+                if (owner.get(obj) == p) {
+                    Item item = new Item(nextNum++, obj, NO_PAGE);
+                    items.put(obj, item);
+                    thisPage.add(item);
+                }
+            }
+            pageItems.add(thisPage);
+            mainItems.addAll(thisPage);
+        }
+        List<Item> sharedItems = new ArrayList<>();
+        for (int p = 1; p < numPages; p++) {
+            for (COSBase obj : used.get(p)) {
+                if ( (owner.get(obj) == NO_PAGE) && !items.containsKey(obj) ) {
+                    Item item = new Item(nextNum++, obj, NO_PAGE);
+                    items.put(obj, item);
+                    sharedItems.add(item);
+                }
+            }
+        }
+        mainItems.addAll(sharedItems);
+        final Item pageTree = new Item(nextNum++, null, NO_PAGE);
+        mainItems.add(pageTree);
+        final int firstPageFirstNum = nextNum;
+
+        // Then the first-page section.
+        final int linDictNum = nextNum++;
+        final Item catalog = new Item(nextNum++, null, NO_PAGE);
+        final Item hint = new Item(nextNum++, null, NO_PAGE);
+        List<Item> firstPage = new ArrayList<>();
+        Item firstPageItem = new Item(nextNum++, pages.get(0).getCOSObject(), 0);
+        items.put(firstPageItem.obj, firstPageItem);
+        firstPage.add(firstPageItem);
+        for (COSBase obj : used.get(0)) {
+            Item item = new Item(nextNum++, obj, NO_PAGE);
+            items.put(obj, item);
+            firstPage.add(item);
+        }
+        pageItems.set(0, firstPage);
+        final int size = nextNum;
+
+        Writer writer = new Writer(pages, items, pageTree.num, catalog.num);
+
+        // Measure everything.  The linearization dictionary and first-page cross-reference
+        // table have fixed sizes thanks to the padded numbers.
+        final long linDictSize = linDict(linDictNum, 0, 0, 0, 0, 0, 0, numPages).length();
+        final long firstXrefSize = firstPageXref(firstPageFirstNum, size, new long[0], 0).length();
+        long offset = HEADER.length() + linDictSize + firstXrefSize;
+        catalog.offset = offset;
+        catalog.size = writer.measure(catalog);
+        offset += catalog.size;
+        // The hint stream goes here, but hint table offsets pretend it doesn't.
+        hint.offset = offset;
+        for (Item item : firstPage) {
+            item.offset = offset;
+            item.size = writer.measure(item);
+            offset += item.size;
+        }
+        final long endOfFirstPageAdjusted = offset;
+        for (Item item : mainItems) {
+            item.offset = offset;
+            item.size = writer.measure(item);
+            offset += item.size;
+        }
+        final long mainXrefAdjusted = offset;
+
+        BitWriter hintTables = new BitWriter();
+        int sharedTableOffset = writeHintTables(hintTables, pageItems, firstPage, sharedItems,
+                                                pages, items, endOfFirstPageAdjusted);
+        writer.hintBytes = hintStream(hint.num, sharedTableOffset, hintTables.toByteArray());
+        hint.size = writer.hintBytes.length;
+
+        // Now the real offsets: everything after the hint stream moves down by its length.
+        final long hintLen = hint.size;
+        final long endOfFirstPage = endOfFirstPageAdjusted + hintLen;
+        final long mainXref = mainXrefAdjusted + hintLen;
+        String mainXrefStr = mainXref(firstPageFirstNum, mainItems, hintLen,
+                                      HEADER.length() + linDictSize);
+        final long fileLength = mainXref + mainXrefStr.length();
+        final long mainXrefFirstEntry = mainXref + ("xref\n0 " + firstPageFirstNum).length();
+
+        long[] firstOffsets = new long[size - firstPageFirstNum];
+        firstOffsets[0] = HEADER.length();
+        firstOffsets[catalog.num - firstPageFirstNum] = catalog.offset;
+        firstOffsets[hint.num - firstPageFirstNum] = hint.offset;
+        for (Item item : firstPage) {
+            firstOffsets[item.num - firstPageFirstNum] = item.offset + hintLen;
+        }
+
+        CountingOutputStream out = new CountingOutputStream(new BufferedOutputStream(os, 64 * 1024));
+        CosSerializer.ascii(HEADER, out);
+        CosSerializer.ascii(linDict(linDictNum, fileLength, hint.offset, hintLen,
+                                    firstPage.get(0).num, endOfFirstPage, mainXrefFirstEntry,
+                                    numPages), out);
+        CosSerializer.ascii(firstPageXref(firstPageFirstNum, size, firstOffsets, mainXref), out);
+        writer.write(catalog, out);
+        writer.write(hint, out);
+        for (Item item : firstPage) {
+            writer.write(item, out);
+        }
+        for (Item item : mainItems) {
+            writer.write(item, out);
+        }
+        if (out.count() != mainXref) {
+            throw new IllegalStateException("Linearized object sizes changed between measuring" +
+                                            " and writing: expected " + mainXref + " but was " +
+                                            out.count());
+        }
+        CosSerializer.ascii(mainXrefStr, out);
+        out.flush();
+    }
+
+    private static String pad(long num) {
+        StringBuilder sB = new StringBuilder(NUM_WIDTH).append(num);
+        while (sB.length() < NUM_WIDTH) { sB.append(' '); }
+        return sB.toString();
+    }
+
+    private static String linDict(int num, long fileLength, long hintOffset, long hintLength,
+                                  int firstPageObj, long endOfFirstPage, long mainXrefFirstEntry,
+                                  int numPages) {
+        return num + " 0 obj\n<</Linearized 1 /L " + pad(fileLength) +
+               " /H [" + pad(hintOffset) + " " + pad(hintLength) + "]" +
+               " /O " + pad(firstPageObj) + " /E " + pad(endOfFirstPage) +
+               " /N " + pad(numPages) + " /T " + pad(mainXrefFirstEntry) + ">>\nendobj\n";
+    }
+
+    private static void xrefEntry(StringBuilder sB, long offset) {
+        String num = Long.toString(offset);
+        for (int i = num.length(); i < 10; i++) { sB.append('0'); }
+        sB.append(num).append(" 00000 n\r\n");
+    }
+
+    private static String firstPageXref(int firstNum, int size, long[] offsets, long mainXref) {
+        StringBuilder sB = new StringBuilder();
+        sB.append("xref\n").append(firstNum).append(' ').append(size - firstNum).append('\n');
+        for (int i = 0; i < (size - firstNum); i++) {
+            xrefEntry(sB, (i < offsets.length) ? offsets[i] : 0);
+        }
+        sB.append("trailer\n<</Size ").append(size).append(" /Root ").append(firstNum + 1)
+          .append(" 0 R /Prev ").append(pad(mainXref)).append(">>\nstartxref\n0\n%%EOF\n");
+        return sB.toString();
+    }
+
+    private static String mainXref(int size, List<Item> mainItems, long hintLen,
+                                   long firstXrefOffset) {
+        StringBuilder sB = new StringBuilder(20 * (size + 1) + 60);
+        sB.append("xref\n0 ").append(size).append('\n');
+        sB.append("0000000000 65535 f\r\n");
+        for (Item item : mainItems) {
+            xrefEntry(sB, item.offset + hintLen);
+        }
+        sB.append("trailer\n<</Size ").append(size).append(">>\nstartxref\n")
+          .append(firstXrefOffset).append("\n%%EOF\n");
+        return sB.toString();
+    }
+
+    private static byte[] hintStream(int num, int sharedTableOffset, byte[] data) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(data.length + 80);
+        CosSerializer.ascii(num + " 0 obj\n<</S " + sharedTableOffset + " /Length " + data.length +
+                            ">>\nstream\n", bos);
+        bos.write(data);
+        CosSerializer.ascii("\nendstream\nendobj\n", bos);
+        return bos.toByteArray();
+    }
+
+    /** The number of bits it takes to write the given non-negative number. */
+    private static int bitsFor(long n) { return 64 - Long.numberOfLeadingZeros(n); }
+
+    /** Writes numbers of any number of bits, most significant bit first. */
+    private static final class BitWriter {
+        private final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        private int buffer = 0;
+        private int bitCount = 0;
+        void write(long value, int bits) {
+            for (int i = bits - 1; i >= 0; i--) {
+                buffer = (buffer << 1) | (int) ((value >>> i) & 1);
+                if (++bitCount == 8) {
+                    bos.write(buffer);
+                    buffer = 0;
+                    bitCount = 0;
+                }
+            }
+        }
+        /** Pads to a byte boundary with zero bits. */
+        void align() {
+            if (bitCount > 0) { write(0, 8 - bitCount); }
+        }
+        int size() { return bos.size(); }
+        byte[] toByteArray() { align(); return bos.toByteArray(); }
+    }
+
+    /**
+     Writes the page offset hint table followed by the shared object hint table.
+     @return the offset of the shared object hint table.
+     */
+    private static int writeHintTables(BitWriter bw, List<List<Item>> pageItems,
+                                       List<Item> firstPage, List<Item> sharedItems,
+                                       List<PDPage> pages, Map<COSBase,Item> items,
+                                       long endOfFirstPage) {
+        final int numPages = pageItems.size();
+
+        // Shared object identifiers: the objects in the first page section (other than the page
+        // itself), then the objects in the shared objects section.
+        Map<COSBase,Integer> sharedIds = new IdentityHashMap<>();
+        for (int i = 1; i < firstPage.size(); i++) {
+            sharedIds.put(firstPage.get(i).obj, sharedIds.size());
+        }
+        for (Item item : sharedItems) {
+            sharedIds.put(item.obj, sharedIds.size());
+        }
+
+        long[] numObjs = new long[numPages];
+        long[] lengths = new long[numPages];
+        long[] contentOffsets = new long[numPages];
+        long[] contentLengths = new long[numPages];
+        List<List<Integer>> sharedRefs = new ArrayList<>(numPages);
+        for (int p = 0; p < numPages; p++) {
+            List<Item> its = pageItems.get(p);
+            Item first = its.get(0);
+            Item last = its.get(its.size() - 1);
+            numObjs[p] = its.size();
+            lengths[p] = (p == 0) ? endOfFirstPage - first.offset
+                                  : (last.offset + last.size) - first.offset;
+            Item contents = items.get(pages.get(p).getCOSObject()
+                                           .getDictionaryObject(COSName.CONTENTS));
+            if (contents != null) {
+                contentOffsets[p] = contents.offset - first.offset;
+                contentLengths[p] = contents.size;
+            }
+            List<Integer> refs = new ArrayList<>();
+            if (p > 0) {
+                for (COSBase obj : objectsUsedBy(pages.get(p))) {
+                    Integer id = sharedIds.get(obj);
+                    if (id != null) { refs.add(id); }
+                }
+            }
+            sharedRefs.add(refs);
+        }
+
+        long minObjs = Long.MAX_VALUE, maxObjs = 0, minLen = Long.MAX_VALUE, maxLen = 0;
+        long minContentOff = Long.MAX_VALUE, maxContentOff = 0;
+        long minContentLen = Long.MAX_VALUE, maxContentLen = 0;
+        int maxRefs = 0;
+        for (int p = 0; p < numPages; p++) {
+            minObjs = Math.min(minObjs, numObjs[p]); maxObjs = Math.max(maxObjs, numObjs[p]);
+            minLen = Math.min(minLen, lengths[p]); maxLen = Math.max(maxLen, lengths[p]);
+            minContentOff = Math.min(minContentOff, contentOffsets[p]);
+            maxContentOff = Math.max(maxContentOff, contentOffsets[p]);
+            minContentLen = Math.min(minContentLen, contentLengths[p]);
+            maxContentLen = Math.max(maxContentLen, contentLengths[p]);
+            maxRefs = Math.max(maxRefs, sharedRefs.get(p).size());
+        }
+        final int objBits = bitsFor(maxObjs - minObjs);
+        final int lenBits = bitsFor(maxLen - minLen);
+        final int contentOffBits = bitsFor(maxContentOff - minContentOff);
+        final int contentLenBits = bitsFor(maxContentLen - minContentLen);
+        final int refCountBits = bitsFor(maxRefs);
+        final int idBits = bitsFor(Math.max(0, sharedIds.size() - 1));
+
+        // Page offset hint table header (Table F.3)
+        bw.write(minObjs, 32);
+        bw.write(pageItems.get(0).get(0).offset, 32);
+        bw.write(objBits, 16);
+        bw.write(minLen, 32);
+        bw.write(lenBits, 16);
+        bw.write(minContentOff, 32);
+        bw.write(contentOffBits, 16);
+        bw.write(minContentLen, 32);
+        bw.write(contentLenBits, 16);
+        bw.write(refCountBits, 16);
+        bw.write(idBits, 16);
+        bw.write(0, 16); // no fractional positions
+        bw.write(1, 16); // denominator of the (unused) fractional positions
+
+        // Per-page entries (Table F.4), item by item, each item starting on a byte boundary.
+        for (int p = 0; p < numPages; p++) { bw.write(numObjs[p] - minObjs, objBits); }
+        bw.align();
+        for (int p = 0; p < numPages; p++) { bw.write(lengths[p] - minLen, lenBits); }
+        bw.align();
+        for (int p = 0; p < numPages; p++) { bw.write(sharedRefs.get(p).size(), refCountBits); }
+        bw.align();
+        for (int p = 0; p < numPages; p++) {
+            for (int id : sharedRefs.get(p)) { bw.write(id, idBits); }
+        }
+        bw.align();
+        // Item 5, the fractional positions, takes zero bits.
+        for (int p = 0; p < numPages; p++) {
+            bw.write(contentOffsets[p] - minContentOff, contentOffBits);
+        }
+        bw.align();
+        for (int p = 0; p < numPages; p++) {
+            bw.write(contentLengths[p] - minContentLen, contentLenBits);
+        }
+        bw.align();
+        final int sharedTableOffset = bw.size();
+
+        // Shared object hint table header (Table F.5).  Each object is its own group.
+        List<Item> groups = new ArrayList<>(firstPage.subList(1, firstPage.size()));
+        groups.addAll(sharedItems);
+        long minGroup = Long.MAX_VALUE, maxGroup = 0;
+        for (Item item : groups) {
+            minGroup = Math.min(minGroup, item.size);
+            maxGroup = Math.max(maxGroup, item.size);
+        }
+        if (groups.isEmpty()) { minGroup = 0; }
+        final int groupBits = bitsFor(maxGroup - minGroup);
+        bw.write(sharedItems.isEmpty() ? 0 : sharedItems.get(0).num, 32);
+        bw.write(sharedItems.isEmpty() ? 0 : sharedItems.get(0).offset, 32);
+        bw.write(firstPage.size() - 1, 32);
+        bw.write(groups.size(), 32);
+        bw.write(0, 16); // every group has exactly one object
+        bw.write(minGroup, 32);
+        bw.write(groupBits, 16);
+
+        // Per-group entries (Table F.6)
+        for (Item item : groups) { bw.write(item.size - minGroup, groupBits); }
+        bw.align();
+        for (int i = 0; i < groups.size(); i++) { bw.write(0, 1); } // no MD5 signatures
+        bw.align();
+        // Item 4, the number of objects in each group minus one, takes zero bits.
+        return sharedTableOffset;
+    }
+
+    /** Serializes the items, using the object numbers already assigned. */
+    private static final class Writer {
+        private final List<PDPage> pages;
+        private final Map<COSBase,Item> items;
+        private final int pageTreeNum;
+        private final int catalogNum;
+        byte[] hintBytes;
+
+        Writer(List<PDPage> ps, Map<COSBase,Item> its, int ptn, int cn) {
+            pages = ps; items = its; pageTreeNum = ptn; catalogNum = cn;
+        }
+
+        private int objNum(COSBase obj) {
+            Item item = items.get(obj);
+            if (item == null) {
+                throw new IllegalStateException("No object number for " + obj);
+            }
+            return item.num;
+        }
+
+        long measure(Item item) throws IOException {
+            CountingOutputStream cos = new CountingOutputStream(OutputStream.nullOutputStream());
+            write(item, cos);
+            return cos.count();
+        }
+
+        void write(Item item, OutputStream out) throws IOException {
+            if (item.num == catalogNum) {
+                CosSerializer.ascii(catalogNum + " 0 obj\n<</Type /Catalog /Pages " + pageTreeNum +
+                                    " 0 R>>\nendobj\n", out);
+            } else if (item.num == pageTreeNum) {
+                StringBuilder sB = new StringBuilder();
+                sB.append(pageTreeNum).append(" 0 obj\n<</Type /Pages /Count ")
+                  .append(pages.size()).append(" /Kids [");
+                for (int i = 0; i < pages.size(); i++) {
+                    if ( (i > 0) && ((i % 10) == 0) ) { sB.append('\n'); }
+                    sB.append(pageNum(i)).append(" 0 R ");
+                }
+                sB.append("]>>\nendobj\n");
+                CosSerializer.ascii(sB.toString(), out);
+            } else if (item.obj == null) {
+                out.write(hintBytes);
+            } else {
+                CosSerializer.ascii(item.num + " 0 obj\n", out);
+                if (item.page != NO_PAGE) {
+                    out.write(COSWriter.DICT_OPEN);
+                    CosSerializer.writeEntries(pages.get(item.page).getCOSObject(), COSName.PARENT,
+                                               out, this::objNum);
+                    COSName.PARENT.writePDF(out);
+                    CosSerializer.writeRef(pageTreeNum, out);
+                    out.write(COSWriter.DICT_CLOSE);
+                } else {
+                    CosSerializer.writeBody(item.obj, out, this::objNum);
+                }
+                CosSerializer.ascii("\nendobj\n", out);
+            }
+        }
+
+        private int pageNum(int page) { return objNum(pages.get(page).getCOSObject()); }
+    }
+}
@@ -21,6 +21,8 @@ public class LogicalPage { // AKA Document Section
     private Set<PdfItem> borderItems = new TreeSet<PdfItem>();
     private int borderOrd = 0;
     boolean valid = true;
+    // Null unless the flight recorder is recording LogicalPage events.
+    private final LayoutEvents.LogicalPageEvent event;
 
     // TODO: This has an assumed margin.  Probably want to return mgr.pageHeight() but that's a breaking change.
     /** The Y-value for the top margin of the page (in document units) */
@@ -41,7 +43,16 @@ public class LogicalPage { // AKA Document Section
                         : mgr.pageHeight();
     }
 
-    private LogicalPage(PdfLayoutMgr m, boolean p) { mgr = m; portrait = p; }
+    private LogicalPage(PdfLayoutMgr m, boolean p) {
+        mgr = m; portrait = p;
+        LayoutEvents.LogicalPageEvent e = new LayoutEvents.LogicalPageEvent();
+        if (e.isEnabled()) {
+            e.begin();
+            event = e;
+        } else {
+            event = null;
+        }
+    }
 
     public static LogicalPage of(PdfLayoutMgr m) { return new LogicalPage(m, false); }
     public static LogicalPage of(PdfLayoutMgr m, Orientation orientation) {
@@ -58,8 +69,16 @@ public class LogicalPage { // AKA Document Section
 
     /** Ends this logical page grouping and invalidates it for further operations. */
     public PdfLayoutMgr commit() throws IOException {
-        mgr.logicalPageEnd(this);
+        int physicalPages = mgr.logicalPageEnd(this);
         valid = false;
+        if (event != null) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.orientation = orientation().name();
+                event.physicalPages = physicalPages;
+                event.commit();
+            }
+        }
         return mgr;
     }
 
@@ -218,17 +237,44 @@ public class LogicalPage { // AKA Document Section
         return this;
     }
 
+    /**
+     Measures a cell that's placed directly on this page or in a table row, telling the
+     manager's LayoutListener (if any) how long it took.
+     */
+    Dim measure(Cell cell, double maxWidth) {
+        LayoutListener listener = mgr.layoutListener();
+        if (listener == LayoutListener.NONE) {
+            return cell.calcDimensions(maxWidth);
+        }
+        long start = System.nanoTime();
+        Dim dim = cell.calcDimensions(maxWidth);
+        listener.measured(cell, maxWidth, System.nanoTime() - start);
+        return dim;
+    }
+
+    /** Renders a cell like measure() measures it. */
+    Coord render(Cell cell, Coord outerTopLeft, Dim outerDimensions, boolean allPages) {
+        LayoutListener listener = mgr.layoutListener();
+        if (listener == LayoutListener.NONE) {
+            return cell.render(this, outerTopLeft, outerDimensions, allPages);
+        }
+        long start = System.nanoTime();
+        Coord end = cell.render(this, outerTopLeft, outerDimensions, allPages);
+        listener.rendered(cell, System.nanoTime() - start);
+        return end;
+    }
+
     /** You can draw a cell without a table (for a heading, or paragraph of same-format text, or whatever). */
     public Coord putCell(final double topLeftX, final double topLeftY, Cell cell) {
         if (!valid) { throw new IllegalStateException("Logical page accessed after commit"); }
         // Similar to TableBuilder and TableRowBuilder.calcDimensions().  Should be combined?
         Dim maxDim = Dim.ZERO;
-        Dim wh = cell.calcDimensions(cell.width());
+        Dim wh = measure(cell, cell.width());
         maxDim = Dim.of(wh.getWidth() + maxDim.getWidth(), Math.max(maxDim.getHeight(), wh.getHeight()));
         double maxHeight = maxDim.getHeight();
 
         // render the row with that maxHeight.
-        cell.render(this, Coord.of(topLeftX, topLeftY), Dim.of(cell.width(), maxHeight), false);
+        render(cell, Coord.of(topLeftX, topLeftY), Dim.of(cell.width(), maxHeight), false);
 
         return Coord.of(topLeftX + wh.getWidth(), topLeftY - wh.getHeight());
     }
@@ -255,7 +301,7 @@ public class LogicalPage { // AKA Document Section
         // Similar to TableBuilder and TableRowBuilder.calcDimensions().  Should be combined?
         Dim maxDim = Dim.ZERO;
         for (Cell cell : cells) {
-            Dim wh = cell.calcDimensions(cell.width());
+            Dim wh = measure(cell, cell.width());
             maxDim = Dim.of(wh.getWidth() + maxDim.getWidth(),
                             Math.max(maxDim.getHeight(), wh.getHeight()));
         }
@@ -266,7 +312,7 @@ public class LogicalPage { // AKA Document Section
         // render the row with that maxHeight.
         double x = initialX;
         for (Cell cell : cells) {
-            cell.render(this, Coord.of(x, origY), Dim.of(cell.width(), maxHeight), false);
+            render(cell, Coord.of(x, origY), Dim.of(cell.width(), maxHeight), false);
             x += cell.width();
         }
 
@@ -284,8 +330,8 @@ public class LogicalPage { // AKA Document Section
     public double putCellAsHeaderFooter(final double x, double origY, final Cell cell) {
         if (!valid) { throw new IllegalStateException("Logical page accessed after commit"); }
         double outerWidth = cell.width();
-        Dim innerDim = cell.calcDimensions(outerWidth);
-        return cell.render(this, Coord.of(x, origY), innerDim.withWidth(outerWidth), true).getY();
+        Dim innerDim = measure(cell, outerWidth);
+        return render(cell, Coord.of(x, origY), innerDim.withWidth(outerWidth), true).getY();
     }
 
     void commitBorderItems(PDPageContentStream stream) throws IOException {
@@ -298,6 +344,7 @@ public class LogicalPage { // AKA Document Section
     private void borderStyledText(final double xCoord, final double yCoord, final String text,
                                TextStyle s, final double z) {
         if (!valid) { throw new IllegalStateException("Logical page accessed after commit"); }
+        LayoutTrace.itemAdded();
         borderItems.add(PdfLayoutMgr.PageBuffer.Text.of(xCoord, yCoord, text, s, borderOrd++, z));
     }
 
@@ -0,0 +1,92 @@
+// Copyright 2026-10-19 PlanBase Inc. & Glen Peterson
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.planbase.pdf.layoutmanager;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ <p>Writes to a file through memory-mapped windows, so the bytes go straight into the page cache
+ without a write() system call per buffer.  The file is mapped {@link #WINDOW_SIZE} bytes (by
+ default) at a time as the output grows.  close() forces every window to disk once, then cuts the
+ file back to the number of bytes actually written and forces that too.  Does not close the
+ channel.</p>
+
+ <p>The mappings are only released when they are garbage collected.  On Windows, that means the
+ file can't be deleted or truncated until then, so this is best kept to Linux and similar
+ systems.</p>
+ */
+final class MappedFileOutputStream extends OutputStream {
+    static final int WINDOW_SIZE = 64 * 1024 * 1024;
+
+    private final FileChannel channel;
+    private final int windowSize;
+    private final List<MappedByteBuffer> windows = new ArrayList<>();
+    private MappedByteBuffer window = null;
+    private long position = 0;
+
+    MappedFileOutputStream(FileChannel ch, int size) { channel = ch; windowSize = size; }
+
+    MappedFileOutputStream(FileChannel ch) { this(ch, WINDOW_SIZE); }
+
+    private void nextWindow() throws IOException {
+        window = channel.map(FileChannel.MapMode.READ_WRITE, position, windowSize);
+        windows.add(window);
+    }
+
+    @Override public void write(int b) throws IOException {
+        if ( (window == null) || !window.hasRemaining() ) {
+            nextWindow();
+        }
+        window.put((byte) b);
+        position++;
+    }
+
+    @Override public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if ( (window == null) || !window.hasRemaining() ) {
+                nextWindow();
+            }
+            int n = Math.min(len, window.remaining());
+            window.put(b, off, n);
+            off += n;
+            len -= n;
+            position += n;
+        }
+    }
+
+    /**
+     Forces the written bytes to disk and trims the file to the bytes actually written.  Once this
+     returns, the file on disk is exactly what was written, not padded with zeros out to the end
+     of the last window.
+     */
+    @Override public void close() throws IOException {
+        // The windows go first, because after the truncate, the end of the last one is past the
+        // end of the file.
+        for (MappedByteBuffer w : windows) {
+            w.force();
+        }
+        windows.clear();
+        window = null;
+        channel.truncate(position);
+        // FileChannel.force() doesn't cover what was written through the mappings, but it does
+        // cover the new length.
+        channel.force(true);
+    }
+}
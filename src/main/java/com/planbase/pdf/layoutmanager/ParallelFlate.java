@@ -0,0 +1,331 @@
+// Copyright 2026-10-19 PlanBase Inc. & Glen Peterson
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.planbase.pdf.layoutmanager;
+
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceGray;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceRGB;
+import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.IndexColorModel;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.SequenceInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Adler32;
+import java.util.zip.Deflater;
+
+/**
+ <p>Encodes big opaque images as FlateDecode streams on all available processors (the way pigz
+ does).  The image is split into bands of rows.  Each band is PNG-predicted and deflated on its
+ own, ending with a sync flush (the last one with a finish) so that the bands can simply be
+ concatenated behind a zlib header.  The Adler-32 checksums of the bands are combined for the zlib
+ trailer.  The result is one ordinary FlateDecode stream that any PDF reader can decode.</p>
+
+ <p>Like PDFBox's LosslessFactory, each row uses whichever PNG predictor makes the smallest sum
+ of absolute differences, so the output is about the same size; it's just written sooner.  The
+ bands do not share a dictionary, which costs a fraction of a percent in size.</p>
+
+ <p>The bands are encoded on this class's own daemon threads, not the common ForkJoinPool, so
+ that a big image doesn't hold up the caller's parallel streams (or the other way around).</p>
+ */
+final class ParallelFlate {
+    private ParallelFlate() { throw new UnsupportedOperationException("No instances!"); }
+
+    /** Images with fewer pixels than this are passed to LosslessFactory as usual. */
+    static final long THRESHOLD_PIXELS = 4L * 1024 * 1024;
+
+    /** Aim for about this many uncompressed bytes per band. */
+    private static final int BAND_BYTES = 1024 * 1024;
+
+    private static final int PNG_OPTIMUM_PREDICTOR = 15;
+
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+    // Threads are only started when there's a big image to encode, and they don't keep the JVM
+    // from exiting.
+    private static final ExecutorService POOL =
+            Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), r -> {
+                Thread t = new Thread(r, "PdfLayoutMgr-flate-" + THREAD_COUNT.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+
+    /**
+     Embeds a lossless image, using all processors for big opaque images, or PDFBox's
+     LosslessFactory for everything else.  LosslessFactory always uses PDFBox's compression level,
+     so when a different level is asked for, small opaque images are encoded here too (with just
+     one band).  Palette images (including 1-bit black-and-white) are never widened to RGB: they
+     go to the ColorReducer, which keeps them at 8 bits per pixel or fewer.  Gray images stay
+     gray.
+     @param level a Deflater compression level.
+     */
+    static PDImageXObject createLossless(PDDocument doc, BufferedImage bi, int level)
+            throws IOException {
+        ColorModel cm = bi.getColorModel();
+        if (cm.hasAlpha()) {
+            return LosslessFactory.createFromImage(doc, bi);
+        }
+        if ( (cm instanceof IndexColorModel) &&
+             (((IndexColorModel) cm).getMapSize() <= ColorReducer.MAX_PALETTE) ) {
+            return ColorReducer.createLossless(doc, bi, level);
+        }
+        if ( ((long) bi.getWidth() * bi.getHeight() >= THRESHOLD_PIXELS) ||
+             (level != Deflater.DEFAULT_COMPRESSION) ) {
+            return createFlate(doc, bi, isGray(cm), level);
+        }
+        return LosslessFactory.createFromImage(doc, bi);
+    }
+
+    /** True for single-component gray images like TYPE_BYTE_GRAY. */
+    private static boolean isGray(ColorModel cm) {
+        return (cm.getNumComponents() == 1) &&
+               (cm.getColorSpace().getType() == ColorSpace.TYPE_GRAY);
+    }
+
+    /**
+     Embeds an opaque image as an 8-bit-per-component FlateDecode stream, regardless of size.
+     @param doc the document the image belongs to
+     @param bi the image.  Any alpha channel is ignored.
+     @param gray true to write DeviceGray: the samples of a TYPE_BYTE_GRAY image, or else just the
+     red channel (the caller has already checked that the image is gray).  False to write
+     DeviceRGB.
+     @param level a Deflater compression level.
+     */
+    static PDImageXObject createFlate(PDDocument doc, BufferedImage bi, boolean gray, int level)
+            throws IOException {
+        final int w = bi.getWidth();
+        final int h = bi.getHeight();
+        final int components = gray ? 1 : 3;
+        final int rowBytes = w * components;
+        final int rowsPerBand = Math.max(1, BAND_BYTES / rowBytes);
+        final int numBands = (h + rowsPerBand - 1) / rowsPerBand;
+
+        // Reading a BufferedImage doesn't change it, so the bands can be read in parallel.
+        Band[] bands = new Band[numBands];
+        if (numBands == 1) {
+            bands[0] = encodeBand(bi, components, 0, h, true, level);
+        } else {
+            List<Future<Band>> futures = new ArrayList<>(numBands);
+            for (int i = 0; i < numBands; i++) {
+                final int firstRow = i * rowsPerBand;
+                final int endRow = Math.min(h, (i + 1) * rowsPerBand);
+                final boolean last = (i == numBands - 1);
+                futures.add(POOL.submit(() -> encodeBand(bi, components, firstRow, endRow, last,
+                                                         level)));
+            }
+            try {
+                for (int i = 0; i < numBands; i++) {
+                    bands[i] = futures.get(i).get();
+                }
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while encoding an image");
+            } catch (ExecutionException ee) {
+                Throwable cause = ee.getCause();
+                if (cause instanceof RuntimeException) { throw (RuntimeException) cause; }
+                if (cause instanceof Error) { throw (Error) cause; }
+                throw new IOException("Couldn't encode an image", cause);
+            } finally {
+                for (Future<Band> f : futures) { f.cancel(true); }
+            }
+        }
+
+        long adler = bands[0].adler;
+        for (int i = 1; i < bands.length; i++) {
+            adler = adler32Combine(adler, bands[i].adler, bands[i].length);
+        }
+
+        List<InputStream> parts = new ArrayList<>(bands.length + 2);
+        // zlib header: deflate with a 32K window, no preset dictionary.
+        parts.add(new ByteArrayInputStream(DeflaterPool.zlibHeader(level)));
+        for (Band band : bands) {
+            parts.add(new ByteArrayInputStream(band.data));
+        }
+        parts.add(new ByteArrayInputStream(new byte[] { (byte) (adler >>> 24), (byte) (adler >>> 16),
+                                                        (byte) (adler >>> 8), (byte) adler }));
+
+        PDImageXObject image =
+                new PDImageXObject(doc, new SequenceInputStream(Collections.enumeration(parts)),
+                                   COSName.FLATE_DECODE, w, h, 8,
+                                   gray ? PDDeviceGray.INSTANCE : PDDeviceRGB.INSTANCE);
+        COSDictionary decodeParms = new COSDictionary();
+        decodeParms.setInt(COSName.PREDICTOR, PNG_OPTIMUM_PREDICTOR);
+        decodeParms.setInt(COSName.COLORS, components);
+        decodeParms.setInt(COSName.BITS_PER_COMPONENT, 8);
+        decodeParms.setInt(COSName.COLUMNS, w);
+        image.getCOSObject().setItem(COSName.DECODE_PARMS, decodeParms);
+        return image;
+    }
+
+    private static final class Band {
+        final byte[] data;
+        final long adler;
+        final long length;
+        private Band(byte[] d, long a, long l) { data = d; adler = a; length = l; }
+    }
+
+    private static void readRow(BufferedImage bi, int y, int[] argb, byte[] dest, int components) {
+        if ( (components == 1) && (bi.getType() == BufferedImage.TYPE_BYTE_GRAY) ) {
+            // The samples as they are, like LosslessFactory does.  getRGB() would convert them from
+            // Java's linear gray to sRGB, which lightens them.
+            bi.getRaster().getDataElements(0, y, dest.length, 1, dest);
+            return;
+        }
+        bi.getRGB(0, y, argb.length, 1, argb, 0, argb.length);
+        if (components == 1) {
+            for (int x = 0; x < argb.length; x++) {
+                dest[x] = (byte) (argb[x] >> 16);
+            }
+        } else {
+            for (int x = 0, i = 0; x < argb.length; x++) {
+                dest[i++] = (byte) (argb[x] >> 16);
+                dest[i++] = (byte) (argb[x] >> 8);
+                dest[i++] = (byte) argb[x];
+            }
+        }
+    }
+
+    private static Band encodeBand(BufferedImage bi, int components, int firstRow, int endRow,
+                                   boolean last, int level) {
+        final int w = bi.getWidth();
+        final int rowBytes = w * components;
+        int[] argb = new int[w];
+        byte[] prev = new byte[rowBytes];
+        byte[] curr = new byte[rowBytes];
+        // The first row of a band is predicted from the last row of the previous band.
+        if (firstRow > 0) {
+            readRow(bi, firstRow - 1, argb, prev, components);
+        }
+        // One output row per PNG filter type, each starting with the filter type byte.
+        byte[][] filtered = new byte[5][rowBytes + 1];
+        for (int f = 0; f < filtered.length; f++) {
+            filtered[f][0] = (byte) f;
+        }
+
+        Adler32 adler = new Adler32();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(((endRow - firstRow) * rowBytes) / 4);
+        try (DeflaterPool.Lease lease = DeflaterPool.lease(level, true)) {
+            Deflater deflater = lease.deflater;
+            byte[] buf = lease.buf;
+            for (int y = firstRow; y < endRow; y++) {
+                readRow(bi, y, argb, curr, components);
+                byte[] row = filter(curr, prev, components, filtered);
+                adler.update(row);
+                deflater.setInput(row);
+                while (!deflater.needsInput()) {
+                    out.write(buf, 0, deflater.deflate(buf));
+                }
+                byte[] temp = prev; prev = curr; curr = temp;
+            }
+            if (last) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    out.write(buf, 0, deflater.deflate(buf));
+                }
+            } else {
+                // Sync flush ends on a byte boundary with an empty stored block so the next band's
+                // deflate data can follow right after it.
+                int n;
+                do {
+                    n = deflater.deflate(buf, 0, buf.length, Deflater.SYNC_FLUSH);
+                    out.write(buf, 0, n);
+                } while (n == buf.length);
+            }
+        }
+        return new Band(out.toByteArray(), adler.getValue(),
+                        (long) (endRow - firstRow) * (rowBytes + 1));
+    }
+
+    /**
+     Applies each PNG filter to the current row and returns the one with the smallest sum of
+     absolute (signed) values - the heuristic recommended by the PNG spec.
+     */
+    private static byte[] filter(byte[] curr, byte[] prev, int bpp, byte[][] filtered) {
+        final byte[] none = filtered[0], sub = filtered[1], up = filtered[2], avg = filtered[3],
+                paeth = filtered[4];
+        long sumNone = 0, sumSub = 0, sumUp = 0, sumAvg = 0, sumPaeth = 0;
+        for (int i = 0; i < curr.length; i++) {
+            int x = curr[i] & 0xff;
+            int a = (i >= bpp) ? curr[i - bpp] & 0xff : 0;
+            int b = prev[i] & 0xff;
+            int c = (i >= bpp) ? prev[i - bpp] & 0xff : 0;
+
+            byte vNone = (byte) x;
+            byte vSub = (byte) (x - a);
+            byte vUp = (byte) (x - b);
+            byte vAvg = (byte) (x - ((a + b) >>> 1));
+            byte vPaeth = (byte) (x - paethPredictor(a, b, c));
+
+            none[i + 1] = vNone; sumNone += Math.abs(vNone);
+            sub[i + 1] = vSub; sumSub += Math.abs(vSub);
+            up[i + 1] = vUp; sumUp += Math.abs(vUp);
+            avg[i + 1] = vAvg; sumAvg += Math.abs(vAvg);
+            paeth[i + 1] = vPaeth; sumPaeth += Math.abs(vPaeth);
+        }
+        byte[] best = none;
+        long min = sumNone;
+        if (sumSub < min) { best = sub; min = sumSub; }
+        if (sumUp < min) { best = up; min = sumUp; }
+        if (sumAvg < min) { best = avg; min = sumAvg; }
+        if (sumPaeth < min) { best = paeth; }
+        return best;
+    }
+
+    private static int paethPredictor(int a, int b, int c) {
+        int p = a + b - c;
+        int pa = Math.abs(p - a);
+        int pb = Math.abs(p - b);
+        int pc = Math.abs(p - c);
+        if ( (pa <= pb) && (pa <= pc) ) { return a; }
+        if (pb <= pc) { return b; }
+        return c;
+    }
+
+    private static final long ADLER_BASE = 65521;
+
+    /**
+     Returns the Adler-32 checksum of two blocks of data given the checksum of each and the length
+     of the second.  A port of zlib's adler32_combine().
+     */
+    static long adler32Combine(long adler1, long adler2, long len2) {
+        long rem = len2 % ADLER_BASE;
+        long sum1 = adler1 & 0xffff;
+        long sum2 = (rem * sum1) % ADLER_BASE;
+        sum1 += (adler2 & 0xffff) + ADLER_BASE - 1;
+        sum2 += ((adler1 >>> 16) & 0xffff) + ((adler2 >>> 16) & 0xffff) + ADLER_BASE - rem;
+        if (sum1 >= ADLER_BASE) { sum1 -= ADLER_BASE; }
+        if (sum1 >= ADLER_BASE) { sum1 -= ADLER_BASE; }
+        if (sum2 >= (ADLER_BASE << 1)) { sum2 -= (ADLER_BASE << 1); }
+        if (sum2 >= ADLER_BASE) { sum2 -= ADLER_BASE; }
+        return (sum2 << 16) | sum1;
+    }
+}
@@ -0,0 +1,180 @@
+// Copyright 2026-10-19 PlanBase Inc. & Glen Peterson
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.planbase.pdf.layoutmanager;
+
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ <p>Writes the pages of many documents, one after another, into a single PDF.  This is for when
+ you make thousands of small documents (one per customer, say) and also need one big print
+ file.  Add each PdfLayoutMgr (or a PDF it saved earlier) in order, then close().</p>
+
+ <pre><code>try (OutputStream os = Files.newOutputStream(printFile);
+     PdfConcatenator all = PdfConcatenator.of(os)) {
+    for (Customer c : customers) {
+        all.add(statementFor(c)); // returns a PdfLayoutMgr with committed pages.
+    }
+}</code></pre>
+
+ <p>Each source's pages are written as soon as it's added, and then the source is closed, so
+ only one is in memory at a time.  Fonts, images and form XObjects are shared by content: a logo
+ that appears in every statement is written once, no matter how many documents it came
+ from.</p>
+
+ <p>Only the pages themselves are copied (content, resources, page boxes and rotation).  The
+ document-level parts of a saved PDF (outlines, forms, metadata...) and any annotations or links
+ on its pages are left out.</p>
+ */
+public class PdfConcatenator implements AutoCloseable {
+    private final OutputStream os;
+    private boolean compressObjects = false;
+    private StreamingPdfWriter writer = null;
+
+    private PdfConcatenator(OutputStream o) { os = o; }
+
+    /**
+     Returns a new PdfConcatenator that writes to the given stream.  The stream is not closed.
+     @param os the stream to write the combined PDF to.
+     @return a new PdfConcatenator.
+     */
+    public static PdfConcatenator of(OutputStream os) {
+        if (os == null) { throw new IllegalArgumentException("OutputStream must not be null"); }
+        return new PdfConcatenator(os);
+    }
+
+    /**
+     Write the combined PDF with compressed object streams (see
+     PdfLayoutMgr.compressObjects(boolean)).  Must be set before the first document is added.
+     */
+    public PdfConcatenator compressObjects(boolean b) {
+        if (writer != null) {
+            throw new IllegalStateException("Must be set before the first document is added.");
+        }
+        compressObjects = b;
+        return this;
+    }
+
+    /** Returns true if the combined PDF will have compressed object streams. */
+    public boolean compressObjects() { return compressObjects; }
+
+    private StreamingPdfWriter writer() {
+        if (writer == null) {
+            writer = new StreamingPdfWriter(os, true, compressObjects, true);
+        }
+        return writer;
+    }
+
+    /** Returns the number of pages written so far. */
+    public int pageCount() { return (writer == null) ? 0 : writer.pageCount(); }
+
+    /**
+     Appends the committed pages of the given manager, which is used up in the process (just as
+     if it were saved).  Its LayoutListener hears that it was saved once its pages are written.
+     @param pageMgr a PdfLayoutMgr that has not been saved.
+     @return this PdfConcatenator
+     */
+    public PdfConcatenator add(PdfLayoutMgr pageMgr) throws IOException {
+        final LayoutListener listener = pageMgr.layoutListener();
+        final long start = (listener == LayoutListener.NONE) ? 0 : System.nanoTime();
+        LayoutEvents.SaveEvent saveEvent = new LayoutEvents.SaveEvent();
+        saveEvent.begin();
+        PDDocument doc = pageMgr.handOff();
+        final int pageCount = doc.getNumberOfPages();
+        try {
+            for (PDPage page : doc.getPages()) {
+                writer().writePage(page);
+            }
+            writer().forgetObjects();
+        } finally {
+            doc.close();
+        }
+        if (listener != LayoutListener.NONE) {
+            listener.saved(pageCount, System.nanoTime() - start);
+        }
+        saveEvent.finish("concatenated", pageCount);
+        return this;
+    }
+
+    /**
+     Appends the pages of a saved PDF.
+     @param pdf the PDF.  It is read completely, but not closed.
+     @return this PdfConcatenator
+     */
+    public PdfConcatenator add(InputStream pdf) throws IOException {
+        try (PDDocument doc = PDDocument.load(pdf)) {
+            for (PDPage page : doc.getPages()) {
+                // Pages of a loaded PDF can share a content stream.
+                writer().writePage(pageOnly(page), false);
+            }
+            writer().forgetObjects();
+        }
+        return this;
+    }
+
+    /**
+     Appends the pages of a saved PDF file.
+     @param pdf the PDF file.
+     @return this PdfConcatenator
+     */
+    public PdfConcatenator add(Path pdf) throws IOException {
+        try (InputStream is = Files.newInputStream(pdf)) {
+            return add(is);
+        }
+    }
+
+    private static final COSName[] PAGE_KEYS = new COSName[] {
+            COSName.CONTENTS, COSName.MEDIA_BOX, COSName.CROP_BOX, COSName.BLEED_BOX,
+            COSName.TRIM_BOX, COSName.ART_BOX, COSName.USER_UNIT };
+
+    /**
+     Makes a copy of a page from a loaded PDF with only the things we know how to write, and with
+     inherited resources and rotation brought down from the page tree.
+     */
+    private static PDPage pageOnly(PDPage page) {
+        COSDictionary src = page.getCOSObject();
+        COSDictionary dict = new COSDictionary();
+        dict.setItem(COSName.TYPE, COSName.PAGE);
+        for (COSName key : PAGE_KEYS) {
+            COSBase value = src.getDictionaryObject(key);
+            if (value != null) {
+                dict.setItem(key, value);
+            }
+        }
+        PDPage ret = new PDPage(dict);
+        ret.setMediaBox(page.getMediaBox());
+        if (page.getResources() != null) {
+            ret.setResources(page.getResources());
+        }
+        if (page.getRotation() != 0) {
+            ret.setRotation(page.getRotation());
+        }
+        return ret;
+    }
+
+    /**
+     Writes the page tree, cross-reference table and trailer.  Does not close the OutputStream.
+     */
+    @Override public void close() throws IOException { writer().close(); }
+}
@@ -14,6 +14,8 @@
 
 package com.planbase.pdf.layoutmanager;
 
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.pdmodel.PDPageContentStream;
@@ -21,15 +23,21 @@ import org.apache.pdfbox.pdmodel.common.PDRectangle;
 import org.apache.pdfbox.pdmodel.graphics.color.PDColorSpace;
 import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceRGB;
 import org.apache.pdfbox.pdmodel.graphics.image.JPEGFactory;
-import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImage;
 import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
 import org.apache.pdfbox.util.Matrix;
 
 import java.awt.Color;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -37,8 +45,13 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.zip.Deflater;
 
 /**
  <p>The main class in this package; it handles page and line breaks.</p>
@@ -115,48 +128,271 @@ public class PdfLayoutMgr {
 //    public Padding pageMargins() { return pageMargins; }
 //    public PDRectangle printableArea() { return printableArea; }
 
-    // You can have many DrawJpegs backed by only a few images - it is a flyweight, and this
-    // hash map keeps track of the few underlying images, even as intances of DrawJpeg
-    // represent all the places where these images are used.
-    // CRITICAL: This means that the the set of jpgs must be thrown out and created anew for each
-    // document!  Thus, a private final field on the PdfLayoutMgr instead of DrawJpeg, and DrawJpeg
-    // must be an inner class (or this would have to be package scoped).
-    private final Map<BufferedImage,PDImageXObject> jpegMap = new HashMap<>();
+    // Zero means "embed images at whatever resolution they come in at."
+    private double targetImageDpi = 0;
+
+    /**
+     Images placed on the page with more than this many pixels per inch are resampled down to this
+     resolution before they are embedded.  This can make a big difference in the size of a PDF
+     (and the time it takes to write it) when large photos are shown in small cells.  300 is a
+     good value for printing, 150 for on-screen viewing.  The default of zero (or any negative
+     number) turns off resampling.  Only affects images drawn after it is set.
+     @param dpi the maximum effective dots-per-inch to embed images at.
+     @return this PdfLayoutMgr (for method chaining).
+     */
+    public PdfLayoutMgr targetImageDpi(double dpi) { targetImageDpi = dpi; return this; }
+
+    /** Returns the maximum effective dots-per-inch for embedded images (zero means no limit). */
+    public double targetImageDpi() { return targetImageDpi; }
+
+    private boolean reduceImageColors = false;
+
+    /**
+     When true, every image is scanned before it is embedded to see if it can use fewer bits per
+     pixel.  Lossless (PNG) images that are pure black-and-white are embedded as 1-bit CCITT G4,
+     grayscale images as 8-bit DeviceGray, and images with 256 or fewer colors as Indexed.  Gray
+     JPEG images are encoded as 8-bit gray instead of 24-bit color.  This costs one pass over the
+     pixels of each image, but scanned documents and charts are often 5-20 times smaller as a
+     result.  Images with any transparency are left alone.  Defaults to false.
+     @param b true to scan and reduce images.
+     @return this PdfLayoutMgr (for method chaining).
+     */
+    public PdfLayoutMgr reduceImageColors(boolean b) { reduceImageColors = b; return this; }
+
+    /** Returns true if images are scanned and reduced to fewer colors where possible. */
+    public boolean reduceImageColors() { return reduceImageColors; }
+
+    private int inlineImageMaxBytes = 0;
+
+    /**
+     Images that take this many bytes or fewer to write as inline images (the encoded data plus a
+     short dictionary) are written into the page content that way instead of being shared XObject
+     resources.  Viewers then don't have to look up
+     a resource and an indirect object every time the image is drawn, which helps with small icons
+     (check marks, flags, etc.) drawn thousands of times.  The image data is repeated each time it
+     is drawn, so keep this small: the PDF spec recommends 4K or less.  Images with transparency
+     are never inlined.  The default of zero turns this off.  Only affects images drawn after it
+     is set.
+     @param maxBytes the largest encoded image to draw inline.
+     @return this PdfLayoutMgr (for method chaining).
+     */
+    public PdfLayoutMgr inlineImageMaxBytes(int maxBytes) { inlineImageMaxBytes = maxBytes; return this; }
+
+    /** Returns the largest encoded image (in bytes) that will be drawn inline (zero means none). */
+    public int inlineImageMaxBytes() { return inlineImageMaxBytes; }
+
+    private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+
+    /**
+     Sets the Flate (zlib) compression level for page content streams and lossless images, from
+     Deflater.NO_COMPRESSION (0: fastest, biggest files) through Deflater.BEST_SPEED (1) to
+     Deflater.BEST_COMPRESSION (9: smallest files, for archiving).  Defaults to
+     Deflater.DEFAULT_COMPRESSION (-1, which zlib treats as 6).  At NO_COMPRESSION, content
+     streams are written without any filter at all.  Images with transparency are still encoded
+     by PDFBox at its own level.  Only affects pages and images created after it's set.
+     @param level the compression level, -1 through 9.
+     @return this PdfLayoutMgr (for method chaining).
+     */
+    public PdfLayoutMgr compressionLevel(int level) {
+        DeflaterPool.checkLevel(level);
+        compressionLevel = level;
+        return this;
+    }
+
+    /** Returns the Flate compression level for content streams and lossless images. */
+    public int compressionLevel() { return compressionLevel; }
+
+    private boolean compressObjects = false;
+
+    /**
+     When true, the PDF is written as version 1.5 with the page dictionaries, fonts and other
+     small objects packed into compressed object streams, and with a compressed cross-reference
+     stream instead of the classic plain-text table.  For documents with thousands of pages this
+     typically saves hundreds of bytes per page.  Readers older than Acrobat 6 can't open these
+     files.  Defaults to false.  A manager that writes pages as they are committed (see
+     {@link #of(PDColorSpace, PDRectangle, OutputStream)}) must have this set before the first
+     page is committed.
+     @param b true to compress objects and the cross-reference table.
+     @return this PdfLayoutMgr (for method chaining).
+     */
+    public PdfLayoutMgr compressObjects(boolean b) {
+        if ( (streamingWriter != null) || (partNum > 0) ) {
+            throw new IllegalStateException("Can't change compressObjects after the first page" +
+                                            " has been written.");
+        }
+        compressObjects = b;
+        return this;
+    }
+
+    /** Returns true if small objects and the cross-reference table will be compressed. */
+    public boolean compressObjects() { return compressObjects; }
+
+    private boolean linearize = false;
+
+    /**
+     When true, save(OutputStream) writes a linearized ("fast web view") PDF: everything needed
+     to show the first page comes first, along with hint tables that tell the viewer where each
+     of the other pages is.  A browser-based viewer can then show page one after downloading just
+     that part of the file, no matter how long the document is.  It costs a little more time and
+     memory while saving, because the whole document has to be measured before any of it is
+     written.  Can't be used with compressObjects(), or with a manager that writes pages as they
+     are committed (which by definition can't know where the pages will end up).  Defaults to
+     false.
+     @param b true to write linearized PDF files.
+     @return this PdfLayoutMgr (for method chaining).
+     */
+    public PdfLayoutMgr linearize(boolean b) {
+        if (streaming()) {
+            throw new IllegalStateException("Can't linearize a PdfLayoutMgr that writes pages as" +
+                                            " they are committed.");
+        }
+        if (appendTo != null) {
+            throw new IllegalStateException("Can't linearize pages appended to an existing file.");
+        }
+        linearize = b;
+        return this;
+    }
+
+    /** Returns true if save(OutputStream) will write a linearized PDF. */
+    public boolean linearize() { return linearize; }
+
+    private LayoutListener layoutListener = LayoutListener.NONE;
+
+    /**
+     Sends timings and counts for measuring, rendering, committing pages, encoding images and
+     saving to the given listener (see {@link LayoutListener}).  Only sees what happens after it's
+     set.  Defaults to {@link LayoutListener#NONE}.
+     @param listener the listener to call.
+     @return this PdfLayoutMgr (for method chaining).
+     */
+    public PdfLayoutMgr layoutListener(LayoutListener listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("LayoutListener must not be null.  Use LayoutListener.NONE");
+        }
+        layoutListener = listener;
+        return this;
+    }
+
+    /** Returns the listener that gets timings and counts (LayoutListener.NONE by default). */
+    public LayoutListener layoutListener() { return layoutListener; }
+
+    /** Returns an inline version of the given image if it's small enough, or the image itself. */
+    private PDImage maybeInline(PDImageXObject xObj) throws IOException {
+        if (inlineImageMaxBytes > 0) {
+            InlineImages.Inline inline = InlineImages.toInline(xObj, inlineImageMaxBytes);
+            if (inline != null) {
+                return inline;
+            }
+        }
+        return xObj;
+    }
+
+    /**
+     Returns the pixel dimensions to embed the given image at when it is shown at the given size
+     in document units, taking the targetImageDpi into account.  Packed into a long (width in the
+     high 32 bits) to make a compact cache key.
+     */
+    private long embeddedSize(BufferedImage bi, Dim dim) {
+        int w = bi.getWidth();
+        int h = bi.getHeight();
+        if (targetImageDpi > 0) {
+            w = Math.min(w, ImageScaler.pixelsFor(dim.getWidth(), targetImageDpi));
+            h = Math.min(h, ImageScaler.pixelsFor(dim.getHeight(), targetImageDpi));
+        }
+        return (((long) w) << 32) | h;
+    }
 
-    private PDImageXObject ensureCached(final ScaledJpeg sj) {
+    private static int embeddedWidth(long size) { return (int) (size >>> 32); }
+    private static int embeddedHeight(long size) { return (int) size; }
+
+    // You can have many DrawImages backed by only a few images - it is a flyweight, and these
+    // hash maps keep track of the few underlying images, even as intances of DrawImage
+    // represent all the places where these images are used.
+    // CRITICAL: This means that the the set of images must be thrown out and created anew for each
+    // document!  Thus, a private final field on the PdfLayoutMgr instead of DrawImage.
+    //
+    // BufferedImage does not override equals() or hashCode(), so these are really identity maps.
+    // The keys are weak so that once an image has been encoded and the caller lets go of it
+    // (and its ScaledJpeg or ScaledPng), the raster can be garbage collected while the rest of the
+    // document is laid out.  The values are keyed by the embedded pixel size (see embeddedSize()).
+    //
+    // The values are either PDImageXObjects or, for tiny images, InlineImages.Inline (see
+    // inlineImageMaxBytes()).
+    private final Map<BufferedImage,Map<Long,PDImage>> jpegMap = new WeakHashMap<>();
+    private final Map<BufferedImage,Map<Long,PDImage>> pngMap = new WeakHashMap<>();
+
+    private PDImage ensureCached(final ScaledJpeg sj) {
         BufferedImage bufferedImage = sj.bufferedImage();
-        PDImageXObject temp = jpegMap.get(bufferedImage);
+        long size = embeddedSize(bufferedImage, sj.dimensions());
+        Map<Long,PDImage> sizes = jpegMap.computeIfAbsent(bufferedImage, bi -> new HashMap<>(2));
+        PDImage temp = sizes.get(size);
         if (temp == null) {
+            final long start = (layoutListener == LayoutListener.NONE) ? 0 : System.nanoTime();
+            LayoutEvents.ImageEncodeEvent imageEvent = new LayoutEvents.ImageEncodeEvent();
+            imageEvent.begin();
             try {
-                temp = JPEGFactory.createFromImage(doc, bufferedImage);
+                BufferedImage bi = ImageScaler.downsample(bufferedImage, embeddedWidth(size),
+                                                          embeddedHeight(size));
+                if (reduceImageColors) {
+                    ColorReducer.Kind kind = ColorReducer.analyze(bi).kind;
+                    if ( (kind == ColorReducer.Kind.GRAY) || (kind == ColorReducer.Kind.BILEVEL) ) {
+                        bi = ColorReducer.toGray(bi);
+                    }
+                }
+                temp = maybeInline(JPEGFactory.createFromImage(doc, bi));
             } catch (IOException ioe) {
                  // can there ever be an exception here?  Doesn't it get written later?
                 throw new IllegalStateException("Caught exception creating a PDImageXObject from a bufferedImage", ioe);
             }
-            jpegMap.put(bufferedImage, temp);
+            if (layoutListener != LayoutListener.NONE) {
+                layoutListener.imageEncoded("jpeg", temp, System.nanoTime() - start);
+            }
+            imageEvent.end();
+            if (imageEvent.shouldCommit()) {
+                imageEvent.format = "jpeg";
+                imageEvent.width = temp.getWidth();
+                imageEvent.height = temp.getHeight();
+                imageEvent.inline = temp instanceof InlineImages.Inline;
+                imageEvent.encodedBytes = LayoutEvents.encodedBytes(temp);
+                imageEvent.commit();
+            }
+            sizes.put(size, temp);
         }
         return temp;
     }
 
-        // You can have many DrawPngs backed by only a few images - it is a flyweight, and this
-    // hash map keeps track of the few underlying images, even as intances of DrawPng
-    // represent all the places where these images are used.
-    // CRITICAL: This means that the the set of jpgs must be thrown out and created anew for each
-    // document!  Thus, a private final field on the PdfLayoutMgr instead of DrawPng, and DrawPng
-    // must be an inner class (or this would have to be package scoped).
-    private final Map<BufferedImage,PDImageXObject> pngMap = new HashMap<>();
-
-    private PDImageXObject ensureCached(final ScaledPng sj) {
+    private PDImage ensureCached(final ScaledPng sj) {
         BufferedImage bufferedImage = sj.bufferedImage();
-        PDImageXObject temp = pngMap.get(bufferedImage);
+        long size = embeddedSize(bufferedImage, sj.dimensions());
+        Map<Long,PDImage> sizes = pngMap.computeIfAbsent(bufferedImage, bi -> new HashMap<>(2));
+        PDImage temp = sizes.get(size);
         if (temp == null) {
+            final long start = (layoutListener == LayoutListener.NONE) ? 0 : System.nanoTime();
+            LayoutEvents.ImageEncodeEvent imageEvent = new LayoutEvents.ImageEncodeEvent();
+            imageEvent.begin();
             try {
-                temp = LosslessFactory.createFromImage(doc, bufferedImage);
+                BufferedImage bi = ImageScaler.downsample(bufferedImage, embeddedWidth(size),
+                                                          embeddedHeight(size));
+                temp = maybeInline(reduceImageColors
+                                   ? ColorReducer.createLossless(doc, bi, compressionLevel)
+                                   : ParallelFlate.createLossless(doc, bi, compressionLevel));
             } catch (IOException ioe) {
                  // can there ever be an exception here?  Doesn't it get written later?
                 throw new IllegalStateException("Caught exception creating a PDImageXObject from a bufferedImage", ioe);
             }
-            pngMap.put(bufferedImage, temp);
+            if (layoutListener != LayoutListener.NONE) {
+                layoutListener.imageEncoded("png", temp, System.nanoTime() - start);
+            }
+            imageEvent.end();
+            if (imageEvent.shouldCommit()) {
+                imageEvent.format = "png";
+                imageEvent.width = temp.getWidth();
+                imageEvent.height = temp.getHeight();
+                imageEvent.inline = temp instanceof InlineImages.Inline;
+                imageEvent.encodedBytes = LayoutEvents.encodedBytes(temp);
+                imageEvent.commit();
+            }
+            sizes.put(size, temp);
         }
         return temp;
     }
@@ -168,16 +404,29 @@ public class PdfLayoutMgr {
      */
     static class PageBuffer {
         public final int pageNum;
+        private final PdfLayoutMgr mgr;
         private long lastOrd = 0;
         private final Set<PdfItem> items = new TreeSet<>();
 
-        private PageBuffer(int pn) {
-            pageNum = pn;
+        private PageBuffer(PdfLayoutMgr m, int pn) {
+            mgr = m; pageNum = pn;
+        }
+
+        private void add(PdfItem item) {
+            LayoutTrace.itemAdded();
+            LayoutListener listener = mgr.layoutListener;
+            if (listener == LayoutListener.NONE) {
+                items.add(item);
+                return;
+            }
+            long start = System.nanoTime();
+            items.add(item);
+            listener.itemAdded(pageNum, item, System.nanoTime() - start);
         }
 
         void fillRect(final double xVal, final double yVal, final double w, final double h,
                              final Color c, final double z) {
-            items.add(FillRect.of(xVal, yVal, w, h, c, lastOrd++, z));
+            add(FillRect.of(xVal, yVal, w, h, c, lastOrd++, z));
         }
 
 //        public void fillRect(final double xVal, final double yVal, final double w, final Color c,
@@ -192,17 +441,19 @@ public class PdfLayoutMgr {
 
         void drawJpeg(final double xVal, final double yVal, final ScaledJpeg sj,
                       final PdfLayoutMgr mgr) {
-            items.add(DrawJpeg.of(xVal, yVal, sj, mgr, lastOrd++, PdfItem.DEFAULT_Z_INDEX));
+            add(DrawImage.of(xVal, yVal, mgr.ensureCached(sj), sj.dimensions(), lastOrd++,
+                                   PdfItem.DEFAULT_Z_INDEX));
         }
 
         void drawPng(final double xVal, final double yVal, final ScaledPng sj,
                       final PdfLayoutMgr mgr) {
-            items.add(DrawPng.of(xVal, yVal, sj, mgr, lastOrd++, PdfItem.DEFAULT_Z_INDEX));
+            add(DrawImage.of(xVal, yVal, mgr.ensureCached(sj), sj.dimensions(), lastOrd++,
+                                   PdfItem.DEFAULT_Z_INDEX));
         }
 
         private void drawLine(final double xa, final double ya, final double xb,
                               final double yb, final LineStyle ls, final double z) {
-            items.add(DrawLine.of(xa, ya, xb, yb, ls, lastOrd++, z));
+            add(DrawLine.of(xa, ya, xb, yb, ls, lastOrd++, z));
         }
         void drawLine(final double xa, final double ya, final double xb, final double yb,
                               final LineStyle ls) {
@@ -211,7 +462,7 @@ public class PdfLayoutMgr {
 
         private void drawStyledText(final double xCoord, final double yCoord, final String text,
                                    TextStyle s, final double z) {
-            items.add(Text.of(xCoord, yCoord, text, s, lastOrd++, z));
+            add(Text.of(xCoord, yCoord, text, s, lastOrd++, z));
         }
         void drawStyledText(final double xCoord, final double yCoord, final String text,
                                    TextStyle s) {
@@ -292,59 +543,37 @@ public class PdfLayoutMgr {
             }
         }
 
-        private static class DrawPng extends PdfItem {
-            private final double x, y;
-            private final PDImageXObject png;
-            private final ScaledPng scaledPng;
-
-            // private Log logger = LogFactory.getLog(DrawPng.class);
-
-            private DrawPng(final double xVal, final double yVal, final ScaledPng sj,
-                             final PdfLayoutMgr mgr,
-                             final long ord, final double z) {
-                super(ord, z);
-                x = xVal; y = yVal;
-                png = mgr.ensureCached(sj);
-                scaledPng = sj;
-            }
-            public static DrawPng of(final double xVal, final double yVal, final ScaledPng sj,
-                                      final PdfLayoutMgr mgr,
-                                      final long ord, final double z) {
-                return new DrawPng(xVal, yVal, sj, mgr, ord, z);
-            }
-            @Override
-            public void commit(PDPageContentStream stream) throws IOException {
-                // stream.drawImage(png, x, y);
-                Dim dim = scaledPng.dimensions();
-                stream.drawImage(png, toFloat(x), toFloat(y), toFloat(dim.getWidth()), toFloat(dim.getHeight()));
-            }
-        }
-
-        private static class DrawJpeg extends PdfItem {
+        /**
+         Draws an already-embedded image.  Holds only the encoded image (a PDImageXObject or an
+         InlineImages.Inline) and the size to show it at, never the source BufferedImage.
+         */
+        private static class DrawImage extends PdfItem {
             private final double x, y;
-            private final PDImageXObject jpeg;
-            private final ScaledJpeg scaledJpeg;
+            private final PDImage image;
+            private final Dim dim;
 
-            // private Log logger = LogFactory.getLog(DrawJpeg.class);
+            // private Log logger = LogFactory.getLog(DrawImage.class);
 
-            private DrawJpeg(final double xVal, final double yVal, final ScaledJpeg sj,
-                             final PdfLayoutMgr mgr,
-                             final long ord, final double z) {
+            private DrawImage(final double xVal, final double yVal, final PDImage img,
+                              final Dim d, final long ord, final double z) {
                 super(ord, z);
-                x = xVal; y = yVal;
-                jpeg = mgr.ensureCached(sj);
-                scaledJpeg = sj;
+                x = xVal; y = yVal; image = img; dim = d;
             }
-            public static DrawJpeg of(final double xVal, final double yVal, final ScaledJpeg sj,
-                                      final PdfLayoutMgr mgr,
-                                      final long ord, final double z) {
-                return new DrawJpeg(xVal, yVal, sj, mgr, ord, z);
+            public static DrawImage of(final double xVal, final double yVal, final PDImage img,
+                                       final Dim d, final long ord, final double z) {
+                return new DrawImage(xVal, yVal, img, d, ord, z);
             }
             @Override
             public void commit(PDPageContentStream stream) throws IOException {
-                // stream.drawImage(jpeg, x, y);
-                Dim dim = scaledJpeg.dimensions();
-                stream.drawImage(jpeg, toFloat(x), toFloat(y), toFloat(dim.getWidth()), toFloat(dim.getHeight()));
+                // stream.drawImage(image, x, y);
+                if (image instanceof InlineImages.Inline) {
+                    ((InlineImages.Inline) image).draw(stream, toFloat(x), toFloat(y),
+                                                       toFloat(dim.getWidth()),
+                                                       toFloat(dim.getHeight()));
+                } else {
+                    stream.drawImage((PDImageXObject) image, toFloat(x), toFloat(y),
+                                     toFloat(dim.getWidth()), toFloat(dim.getHeight()));
+                }
             }
         }
     }
@@ -358,13 +587,39 @@ public class PdfLayoutMgr {
     private final PDColorSpace colorSpace;
     private final PDRectangle pageSize;
 
+    // Null unless this manager writes each page as soon as it's committed.
+    private final OutputStream streamingOs;
+    // Created when the first page is committed (so that compressObjects() can still be set).
+    private StreamingPdfWriter streamingWriter = null;
+
+    // Null unless this manager writes each page as soon as it's committed, to a series of files.
+    private final OutputParts parts;
+    private int maxPagesPerPart = 0;
+    private long maxBytesPerPart = 0;
+    // The number of the current (or last) part, counting from 1.  Zero before the first.
+    private int partNum = 0;
+    private OutputStream partOs = null;
+    // Set when the document is handed over to be saved.  After that, this manager is done.
+    private boolean frozen = false;
+
     List<PageBuffer> pages() { return Collections.unmodifiableList(pages); }
 
-    private PdfLayoutMgr(PDColorSpace cs, PDRectangle mb) {
+    // Null unless this manager adds pages to the end of an existing PDF file.
+    private final Path appendTo;
+
+    private PdfLayoutMgr(PDColorSpace cs, PDRectangle mb, OutputStream os, OutputParts ps,
+                         Path append) {
         doc = new PDDocument();
         colorSpace = cs;
         pageSize = (mb == null) ? PDRectangle.LETTER
                                 : mb;
+        streamingOs = os;
+        parts = ps;
+        appendTo = append;
+    }
+
+    private PdfLayoutMgr(PDColorSpace cs, PDRectangle mb, OutputStream os) {
+        this(cs, mb, os, null, null);
     }
 
     /**
@@ -373,7 +628,7 @@ public class PdfLayoutMgr {
      @return a new PdfLayoutMgr
      */
     public static PdfLayoutMgr of(PDColorSpace cs) {
-        return new PdfLayoutMgr(cs, null);
+        return new PdfLayoutMgr(cs, null, null);
     }
 
     /**
@@ -384,16 +639,136 @@ public class PdfLayoutMgr {
      @return a new PdfLayoutMgr
      */
     public static PdfLayoutMgr of(PDColorSpace cs, PDRectangle pageSize) {
-        return new PdfLayoutMgr(cs, pageSize);
+        return new PdfLayoutMgr(cs, pageSize, null);
+    }
+
+    /**
+     <p>Returns a new PdfLayoutMgr that writes each page to the given stream as soon as it is
+     committed, instead of holding the whole document until save().  The first bytes reach the
+     client (e.g. an HTTP response) right after the first logical page is committed, and finished
+     pages (and images) are not kept in memory.  Call {@link #save()} (no arguments) when you're
+     done to write the page tree, cross-reference table and trailer.  The stream is not closed.</p>
+
+     <p>Only the features this class uses are supported (standard fonts, images, lines,
+     rectangles and text), which is everything you can do through its public methods.</p>
+     @param cs the color-space.
+     @param pageSize the page size, or null for letter.
+     @param os the stream to write the PDF to.
+     @return a new PdfLayoutMgr
+     */
+    public static PdfLayoutMgr of(PDColorSpace cs, PDRectangle pageSize, OutputStream os) {
+        if (os == null) { throw new IllegalArgumentException("OutputStream must not be null"); }
+        return new PdfLayoutMgr(cs, pageSize, os);
+    }
+
+    /**
+     Opens the files (or other streams) that a split document is written to.
+     */
+    @FunctionalInterface
+    public interface OutputParts {
+        /**
+         Returns a new stream for the given part, which PdfLayoutMgr will close when the part is
+         finished.
+         @param partNum the part number, counting from 1.
+         @return the stream to write that part to.
+         */
+        OutputStream open(int partNum) throws IOException;
     }
 
+    /**
+     <p>Returns a new PdfLayoutMgr that writes each page as soon as it is committed (like
+     {@link #of(PDColorSpace, PDRectangle, OutputStream)}), but splits the document into a series
+     of separate, complete PDF files according to {@link #maxPagesPerPart(int)} and
+     {@link #maxBytesPerPart(long)}.  A part is finished (and its stream closed) as soon as its
+     last page is committed.  Each part contains only the fonts and images its own pages use.
+     Call {@link #save()} when you're done to finish the last part.</p>
+
+     <pre><code>PdfLayoutMgr pageMgr =
+        PdfLayoutMgr.of(PDDeviceRGB.INSTANCE, null,
+                        n -&gt; Files.newOutputStream(dir.resolve("print-" + n + ".pdf")))
+                    .maxPagesPerPart(500);</code></pre>
+
+     @param cs the color-space.
+     @param pageSize the page size, or null for letter.
+     @param parts opens the stream for each part.
+     @return a new PdfLayoutMgr
+     */
+    public static PdfLayoutMgr of(PDColorSpace cs, PDRectangle pageSize, OutputParts parts) {
+        if (parts == null) { throw new IllegalArgumentException("OutputParts must not be null"); }
+        return new PdfLayoutMgr(cs, pageSize, null, parts, null);
+    }
+
+    /**
+     <p>Returns a new PdfLayoutMgr whose pages go after the last page of an existing PDF file.
+     Lay out and commit the new logical pages as usual, then call {@link #save()} (no arguments)
+     to append them to the file as an incremental update: only the new pages and resources, a
+     new page tree node and a new cross-reference section are written, so the time it takes
+     depends on the new pages, not the size of the file.  Earlier versions of the file remain
+     readable inside it, which is also why a file that has had many updates is bigger than one
+     written all at once.  Run it through save(OutputStream) occasionally to squeeze them out.</p>
+
+     <p>The file can't be encrypted.  compressObjects() doesn't apply (the update uses whichever
+     kind of cross-reference section the file already has), and linearize() can't be used.</p>
+     @param pdf an existing PDF file.
+     @param cs the color-space.
+     @param pageSize the page size of the new pages, or null for letter.
+     @return a new PdfLayoutMgr
+     */
+    public static PdfLayoutMgr appendTo(Path pdf, PDColorSpace cs, PDRectangle pageSize) {
+        if (pdf == null) { throw new IllegalArgumentException("Path must not be null"); }
+        return new PdfLayoutMgr(cs, pageSize, null, null, pdf);
+    }
+
+    /**
+     For a manager that writes a series of files, the most physical pages to put in each one.
+     Zero (the default) means no limit.
+     @param n the maximum pages per part.
+     @return this PdfLayoutMgr (for method chaining).
+     */
+    public PdfLayoutMgr maxPagesPerPart(int n) {
+        if (parts == null) {
+            throw new IllegalStateException("Only a PdfLayoutMgr created with OutputParts can" +
+                                            " be split into parts.");
+        }
+        if (n < 0) { throw new IllegalArgumentException("maxPagesPerPart can't be negative"); }
+        maxPagesPerPart = n;
+        return this;
+    }
+
+    /** Returns the most physical pages per part (zero means no limit). */
+    public int maxPagesPerPart() { return maxPagesPerPart; }
+
+    /**
+     For a manager that writes a series of files, finish each file once it reaches this many
+     bytes.  The pages are written as they come, so a part can go over this by (at most) its
+     last page and the trailer.  Set it a page or two's worth under a hard limit.  Zero (the
+     default) means no limit.
+     @param n the size at which to start a new part.
+     @return this PdfLayoutMgr (for method chaining).
+     */
+    public PdfLayoutMgr maxBytesPerPart(long n) {
+        if (parts == null) {
+            throw new IllegalStateException("Only a PdfLayoutMgr created with OutputParts can" +
+                                            " be split into parts.");
+        }
+        if (n < 0) { throw new IllegalArgumentException("maxBytesPerPart can't be negative"); }
+        maxBytesPerPart = n;
+        return this;
+    }
+
+    /** Returns the part size in bytes that starts a new part (zero means no limit). */
+    public long maxBytesPerPart() { return maxBytesPerPart; }
+
+    /** Returns the number of parts started so far. */
+    public int partCount() { return partNum; }
+
     /**
      Creates a new PdfLayoutMgr with the PDDeviceRGB color space.
      @return a new Page Manager with an RGB color space
      */
     @SuppressWarnings("UnusedDeclaration") // Part of end-user public interface
     public static PdfLayoutMgr newRgbPageMgr() {
-        return new PdfLayoutMgr(PDDeviceRGB.INSTANCE, null);
+        return new PdfLayoutMgr(PDDeviceRGB.INSTANCE, null, null);
     }
 
     /** Returns the page width given the defined PDRectangle pageSize */
@@ -412,16 +787,32 @@ public class PdfLayoutMgr {
         if (pages.size() < 1) {
             throw new IllegalStateException("Cannot work with the any pages until one has been created by calling newPage().");
         }
+        if (Double.isNaN(y) || Double.isInfinite(y)) {
+            throw new IllegalArgumentException("Can't find a page for y=" + y);
+        }
         int idx = unCommittedPageIdx;
         // Get the first possible page
 
-        while (y < lp.yPageBottom()) {
-            // logger.info("Adjusting y.  Was: " + y + " about to add " + printAreaHeight);
-            y += lp.printAreaHeight(); // y could even be negative.  Just keep moving to the top of the next
-            // page until it's in the printable area.
-            idx++;
-            if (pages.size() <= idx) {
-                pages.add(new PageBuffer(pages.size() + 1));
+        if (y < lp.yPageBottom()) {
+            // y could even be negative.  Move it down the right number of pages all at once
+            // instead of one page at a time, which made every item at the end of a long table
+            // step through every page before it.
+            double printAreaHeight = lp.printAreaHeight();
+            int pageCount = (int) Math.ceil((lp.yPageBottom() - y) / printAreaHeight);
+            double adjustedY = y + (pageCount * printAreaHeight);
+            // Fix any rounding so that y lands in the printable area of the page.
+            while (adjustedY < lp.yPageBottom()) {
+                adjustedY += printAreaHeight;
+                pageCount++;
+            }
+            while ( (pageCount > 1) && ((adjustedY - printAreaHeight) >= lp.yPageBottom()) ) {
+                adjustedY -= printAreaHeight;
+                pageCount--;
+            }
+            y = adjustedY;
+            idx += pageCount;
+            while (pages.size() <= idx) {
+                pages.add(new PageBuffer(this, pages.size() + 1));
             }
         }
         PageBuffer ps = pages.get(idx);
@@ -432,8 +823,267 @@ public class PdfLayoutMgr {
     Call this to commit the PDF information to the underlying stream after it is completely built.
     */
     public void save(OutputStream os) throws IOException {
-        doc.save(os);
-        doc.close();
+        freeze();
+        write(os, compressObjects, linearize);
+    }
+
+    /**
+     <p>Like save(OutputStream) but serializes the document on a thread from the given executor,
+     so the calling thread can get on with laying out the next document.  The layout state is
+     frozen (and the page buffers and image caches released) before this returns, so the caller
+     can drop this manager right away.  Any further use of it throws an IllegalStateException.</p>
+
+     <p>The returned future completes when the PDF has been written and the document closed, or
+     completes exceptionally with the IOException (or other exception) that stopped it.  The
+     OutputStream is not closed (unless PDFBox closes it, as it does in save(OutputStream)), and
+     must not be touched by the caller until the future completes.</p>
+     @param os the stream to write to.
+     @param executor runs the serialization.
+     @return a future that completes when the PDF is written.
+     */
+    public CompletableFuture<Void> saveAsync(OutputStream os, Executor executor) {
+        if (os == null) { throw new IllegalArgumentException("OutputStream must not be null"); }
+        if (executor == null) { throw new IllegalArgumentException("Executor must not be null"); }
+        freeze();
+        // Take the options now, in case someone sets them while we're writing.
+        final boolean compress = compressObjects;
+        final boolean lin = linearize;
+        CompletableFuture<Void> ret = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    write(os, compress, lin);
+                    ret.complete(null);
+                } catch (Throwable t) {
+                    ret.completeExceptionally(t);
+                }
+            });
+        } catch (RuntimeException re) {
+            // Rejected, so nobody else will ever close the document.
+            try {
+                doc.close();
+            } catch (IOException ioe) {
+                re.addSuppressed(ioe);
+            }
+            throw re;
+        }
+        return ret;
+    }
+
+    /**
+     <p>Returns the finished document as a Flow.Publisher of ByteBuffers, for non-blocking
+     servers.  Nothing is serialized until the subscriber requests it, and then only about as much
+     as was requested (a page at a time, in chunks of up to 64K), so a slow client holds back
+     serialization rather than making us buffer the whole document.  The work is done on whatever
+     thread calls Subscription.request().</p>
+
+     <p>Like saveAsync(), this freezes the manager: any further use of it throws an
+     IllegalStateException.  Only one subscriber is allowed.  The document is released when the
+     publisher completes, fails, or is cancelled.  When it completes, the LayoutListener hears
+     that it was saved, with the time spent serializing (not waiting for the subscriber).
+     Linearized output needs the whole document before the first byte, so it isn't available this
+     way.</p>
+     @return a single-use publisher of the PDF's bytes.
+     */
+    public Flow.Publisher<ByteBuffer> publisher() {
+        if (linearize) {
+            throw new IllegalStateException("Linearized PDFs can't be published a page at a time.");
+        }
+        freeze();
+        return new PdfPublisher(doc, compressObjects, layoutListener);
+    }
+
+    /**
+     Marks this manager as saved and lets go of everything except the PDDocument, which belongs
+     to whoever writes it out now.
+     */
+    private void freeze() {
+        if (streaming()) {
+            throw new IllegalStateException("This PdfLayoutMgr writes to the OutputStream it was" +
+                                            " created with.  Call save() with no arguments.");
+        }
+        if (appendTo != null) {
+            throw new IllegalStateException("This PdfLayoutMgr appends to " + appendTo +
+                                            ".  Call save() with no arguments.");
+        }
+        if (compressObjects && linearize) {
+            throw new IllegalStateException("Can't both linearize and compress objects.");
+        }
+        ensureNotFrozen();
+        frozen = true;
+        pages.clear();
+        jpegMap.clear();
+        pngMap.clear();
+    }
+
+    /** Freezes this manager and gives its document to the caller, who must close it. */
+    PDDocument handOff() {
+        freeze();
+        return doc;
+    }
+
+    private void ensureNotFrozen() {
+        if (frozen) {
+            throw new IllegalStateException("This PdfLayoutMgr has already been saved.");
+        }
+    }
+
+    private void write(OutputStream os, boolean compress, boolean lin) throws IOException {
+        final LayoutListener listener = layoutListener;
+        final long start = (listener == LayoutListener.NONE) ? 0 : System.nanoTime();
+        final int pageCount = doc.getNumberOfPages();
+        LayoutEvents.SaveEvent saveEvent = new LayoutEvents.SaveEvent();
+        saveEvent.begin();
+        try {
+            if (lin) {
+                List<PDPage> pdPages = new ArrayList<>(doc.getNumberOfPages());
+                for (PDPage page : doc.getPages()) {
+                    pdPages.add(page);
+                }
+                LinearizedPdfWriter.write(pdPages, os);
+            } else if (compress) {
+                // PDFBox 2 can't write object streams, so write the pages ourselves.
+                StreamingPdfWriter writer = new StreamingPdfWriter(os, true, true);
+                for (PDPage page : doc.getPages()) {
+                    writer.writePage(page);
+                }
+                writer.close();
+            } else {
+                doc.save(os);
+            }
+        } finally {
+            doc.close();
+        }
+        if (listener != LayoutListener.NONE) {
+            listener.saved(pageCount, System.nanoTime() - start);
+        }
+        saveEvent.finish(lin ? "linearized" : compress ? "compressed objects" : "plain", pageCount);
+    }
+
+    /**
+     Like save(OutputStream) but writes to a channel a megabyte at a time from a direct buffer,
+     so that there are few, large writes to the operating system.  Does not close the channel.
+     */
+    public void save(WritableByteChannel ch) throws IOException {
+        try (ChannelOutputStream os = new ChannelOutputStream(ch)) {
+            save(os);
+        }
+    }
+
+    /**
+     Saves to the given file (replacing it if it exists) through a FileChannel, forcing it to
+     disk once at the end.
+     */
+    public void save(Path path) throws IOException { save(path, false); }
+
+    /**
+     Saves to the given file (replacing it if it exists), forcing it to disk once at the end.
+     @param path the file to write.
+     @param memoryMapped true to write through memory-mapped windows of the file (see
+     MappedFileOutputStream for the trade-offs), false to write through a FileChannel with a
+     large direct buffer.
+     */
+    public void save(Path path, boolean memoryMapped) throws IOException {
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.CREATE,
+                                               StandardOpenOption.TRUNCATE_EXISTING,
+                                               StandardOpenOption.READ,
+                                               StandardOpenOption.WRITE)) {
+            if (memoryMapped) {
+                // FileChannel.force() isn't guaranteed to write changes made through a mapping,
+                // so MappedFileOutputStream.close() forces each of its windows, then the channel
+                // for the truncated length.
+                try (MappedFileOutputStream os = new MappedFileOutputStream(ch)) {
+                    save(os);
+                }
+            } else {
+                save(ch);
+                ch.force(true);
+            }
+        }
+    }
+
+    private boolean streaming() { return (streamingOs != null) || (parts != null); }
+
+    private StreamingPdfWriter streamingWriter() throws IOException {
+        if (streamingWriter == null) {
+            if (parts == null) {
+                streamingWriter = new StreamingPdfWriter(streamingOs, true, compressObjects);
+            } else {
+                partNum++;
+                partOs = parts.open(partNum);
+                if (partOs == null) {
+                    throw new IllegalStateException("OutputParts returned null for part " + partNum);
+                }
+                // Later parts may need the same images again, so don't release them.
+                streamingWriter = new StreamingPdfWriter(partOs, false, compressObjects);
+            }
+        }
+        return streamingWriter;
+    }
+
+    /** Finishes the current part, if there is one, and closes its stream. */
+    private void endPart() throws IOException {
+        if (streamingWriter == null) { return; }
+        try {
+            streamingWriter.close();
+        } finally {
+            streamingWriter = null;
+            OutputStream os = partOs;
+            partOs = null;
+            os.close();
+        }
+    }
+
+    /** Writes a committed page, and finishes the part if it's full. */
+    private void streamPage(PDPage pdPage) throws IOException {
+        StreamingPdfWriter writer = streamingWriter();
+        writer.writePage(pdPage);
+        if ( (parts != null) &&
+             ( ((maxPagesPerPart > 0) && (writer.pageCount() >= maxPagesPerPart)) ||
+               ((maxBytesPerPart > 0) && (writer.sizeEstimate() >= maxBytesPerPart)) ) ) {
+            endPart();
+        }
+    }
+
+    /**
+     Finishes a document created with {@link #of(PDColorSpace, PDRectangle, OutputStream)} by
+     writing the page tree, cross-reference table and trailer after the pages that have already
+     been written.  Does not close the OutputStream.  For a document created with
+     {@link #of(PDColorSpace, PDRectangle, OutputParts)}, finishes and closes the last part.  For
+     one created with {@link #appendTo(Path, PDColorSpace, PDRectangle)}, appends the new pages to
+     the file.
+     */
+    public void save() throws IOException {
+        if (!streaming() && (appendTo == null)) {
+            throw new IllegalStateException("This PdfLayoutMgr was not created with an" +
+                                            " OutputStream.  Call save(OutputStream) instead.");
+        }
+        ensureNotFrozen();
+        frozen = true;
+        final long start = (layoutListener == LayoutListener.NONE) ? 0 : System.nanoTime();
+        LayoutEvents.SaveEvent saveEvent = new LayoutEvents.SaveEvent();
+        saveEvent.begin();
+        try {
+            if (appendTo != null) {
+                List<PDPage> pdPages = new ArrayList<>(doc.getNumberOfPages());
+                for (PDPage page : doc.getPages()) {
+                    pdPages.add(page);
+                }
+                IncrementalPdfWriter.append(appendTo, pdPages);
+            } else if (parts == null) {
+                streamingWriter().close();
+            } else if ( (streamingWriter != null) || (partNum == 0) ) {
+                // Finish the last part (or write an empty one if there were no pages at all).
+                streamingWriter();
+                endPart();
+            }
+        } finally {
+            doc.close();
+        }
+        if (layoutListener != LayoutListener.NONE) {
+            layoutListener.saved(unCommittedPageIdx, System.nanoTime() - start);
+        }
+        saveEvent.finish((appendTo != null) ? "append" : "streaming", unCommittedPageIdx);
     }
 
     // TODO: Add logicalPage() method and call pages.add() lazily for the first item actually shown on a page, and logicalPageEnd called before a save.
@@ -444,7 +1094,8 @@ public class PdfLayoutMgr {
      */
     @SuppressWarnings("UnusedDeclaration") // Part of end-user public interface
     public LogicalPage logicalPageStart(LogicalPage.Orientation o) {
-        PageBuffer pb = new PageBuffer(pages.size() + 1);
+        ensureNotFrozen();
+        PageBuffer pb = new PageBuffer(this, pages.size() + 1);
         pages.add(pb);
         return LogicalPage.of(this, o);
     }
@@ -468,18 +1119,27 @@ public class PdfLayoutMgr {
      @throws IOException - if there is a failure writing to the underlying stream.
      */
     @SuppressWarnings("UnusedDeclaration") // Part of end-user public interface
-    void logicalPageEnd(LogicalPage lp) throws IOException {
+    int logicalPageEnd(LogicalPage lp) throws IOException {
+        ensureNotFrozen();
+        int firstPageIdx = unCommittedPageIdx;
 
         // Write out all uncommitted pages.
         while (unCommittedPageIdx < pages.size()) {
+            final long start = (layoutListener == LayoutListener.NONE) ? 0 : System.nanoTime();
+            LayoutEvents.PageCommitEvent pageEvent = new LayoutEvents.PageCommitEvent();
+            pageEvent.begin();
             PDPage pdPage = new PDPage(pageSize);
             if (lp.orientation() == LogicalPage.Orientation.LANDSCAPE) {
                 pdPage.setRotation(90);
             }
             PDPageContentStream stream = null;
             try {
-                stream = new PDPageContentStream(doc, pdPage);
-                doc.addPage(pdPage);
+                // Compressed below, with a pooled Deflater at our own level.
+                stream = new PDPageContentStream(doc, pdPage,
+                                                 PDPageContentStream.AppendMode.OVERWRITE, false);
+                if (!streaming()) {
+                    doc.addPage(pdPage);
+                }
 
                 if (lp.orientation() == LogicalPage.Orientation.LANDSCAPE) {
                     stream.transform(new Matrix(0f, 1f, -1f, 0f, toFloat(lp.pageWidth()), 0f));
@@ -494,6 +1154,25 @@ public class PdfLayoutMgr {
                 stream.close();
                 // Set to null to show that no exception was thrown and no need to close again.
                 stream = null;
+                compressContents(pdPage);
+
+                // The page is in PDFBox's hands now (or already written), so let go of the items.
+                int itemCount = pb.items.size();
+                pb.items.clear();
+                if (streaming()) {
+                    streamPage(pdPage);
+                }
+                if (layoutListener != LayoutListener.NONE) {
+                    layoutListener.pageCommitted(pb.pageNum, itemCount, contentLength(pdPage),
+                                                 System.nanoTime() - start);
+                }
+                pageEvent.end();
+                if (pageEvent.shouldCommit()) {
+                    pageEvent.pageNum = pb.pageNum;
+                    pageEvent.items = itemCount;
+                    pageEvent.contentBytes = contentLength(pdPage);
+                    pageEvent.commit();
+                }
             } finally {
                 // Let it throw an exception if the closing doesn't work.
                 if (stream != null) {
@@ -502,6 +1181,30 @@ public class PdfLayoutMgr {
             }
             unCommittedPageIdx++;
         }
+        return unCommittedPageIdx - firstPageIdx;
+    }
+
+    /** Returns the size of a finished page's content stream, as it will be written. */
+    private static long contentLength(PDPage pdPage) {
+        return ((COSStream) pdPage.getCOSObject().getDictionaryObject(COSName.CONTENTS)).getLength();
+    }
+
+    /**
+     Flate-encodes a finished page's content stream at this manager's compression level.  The
+     stream can't be re-encoded in place (opening it for writing throws away what's there), so
+     this streams it through a pooled Deflater into a new one and puts that on the page.
+     */
+    private void compressContents(PDPage pdPage) throws IOException {
+        if (compressionLevel == Deflater.NO_COMPRESSION) { return; }
+        COSStream contents = (COSStream) pdPage.getCOSObject().getDictionaryObject(COSName.CONTENTS);
+        COSStream compressed = doc.getDocument().createCOSStream();
+        try (InputStream is = contents.createRawInputStream();
+             OutputStream os = compressed.createRawOutputStream()) {
+            DeflaterPool.deflate(is, os, compressionLevel);
+        }
+        compressed.setItem(COSName.FILTER, COSName.FLATE_DECODE);
+        pdPage.getCOSObject().setItem(COSName.CONTENTS, compressed);
+        contents.close();
     }
 
     @Override
@@ -0,0 +1,215 @@
+// Copyright 2026-10-19 PlanBase Inc. & Glen Peterson
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.planbase.pdf.layoutmanager;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ Publishes a finished document as ByteBuffers, serializing one page at a time and only when the
+ subscriber has asked for more.  A slow client therefore holds back serialization instead of
+ making us buffer the whole document.  Only one subscriber is allowed, because the pages are
+ released as they are written.  All the work happens on whatever thread calls request().
+ */
+final class PdfPublisher implements Flow.Publisher<ByteBuffer> {
+    static final int CHUNK_SIZE = 64 * 1024;
+
+    private final PDDocument doc;
+    private final boolean compress;
+    private final LayoutListener listener;
+    private final int pageCount;
+    private final AtomicBoolean subscribed = new AtomicBoolean(false);
+
+    PdfPublisher(PDDocument d, boolean c, LayoutListener l) {
+        doc = d; compress = c; listener = l;
+        pageCount = doc.getNumberOfPages();
+    }
+
+    @Override public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+        if (subscriber == null) { throw new NullPointerException("subscriber"); }
+        if (!subscribed.compareAndSet(false, true)) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override public void request(long n) {}
+                @Override public void cancel() {}
+            });
+            subscriber.onError(new IllegalStateException("This PDF has already been published."));
+            return;
+        }
+        Chunks subscription = new Chunks(subscriber);
+        subscriber.onSubscribe(subscription);
+    }
+
+    /** Collects written bytes into full-size ByteBuffers, ready to publish. */
+    private static final class ChunkOutputStream extends OutputStream {
+        private final Queue<ByteBuffer> ready = new ArrayDeque<>();
+        private ByteBuffer current = null;
+
+        @Override public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (current == null) { current = ByteBuffer.allocate(CHUNK_SIZE); }
+                int n = Math.min(len, current.remaining());
+                current.put(b, off, n);
+                off += n;
+                len -= n;
+                if (!current.hasRemaining()) {
+                    ready.add(current.flip());
+                    current = null;
+                }
+            }
+        }
+
+        /** Makes whatever is left into the last (short) chunk. */
+        void finish() {
+            if ( (current != null) && (current.position() > 0) ) {
+                ready.add(current.flip());
+            }
+            current = null;
+        }
+    }
+
+    private final class Chunks implements Flow.Subscription {
+        private final Flow.Subscriber<? super ByteBuffer> subscriber;
+        private final AtomicLong demand = new AtomicLong(0);
+        // Whoever increments this from zero does the work until it's back to zero, so only one
+        // thread at a time serializes, and onNext() calling request() doesn't recurse.
+        private final AtomicInteger wip = new AtomicInteger(0);
+        private final ChunkOutputStream chunks = new ChunkOutputStream();
+        private StreamingPdfWriter writer = null;
+        private Iterator<PDPage> pageIter = null;
+        private boolean written = false;
+        // Time spent serializing, not counting the time between requests.
+        private long nanos = 0;
+        private LayoutEvents.SaveEvent saveEvent = null;
+        private volatile boolean done = false;
+        // Set by request() on whatever thread calls it, read by drain() on another.
+        private volatile Throwable error = null;
+
+        Chunks(Flow.Subscriber<? super ByteBuffer> s) { subscriber = s; }
+
+        @Override public void request(long n) {
+            if (done) { return; }
+            if (n <= 0) {
+                error = new IllegalArgumentException("Requested " + n + " chunks (must be > 0)");
+            } else {
+                // Add, but cap at Long.MAX_VALUE which means "unbounded".
+                demand.getAndUpdate(d -> ((d + n) < 0) ? Long.MAX_VALUE : d + n);
+            }
+            drain();
+        }
+
+        @Override public void cancel() {
+            if (done) { return; }
+            done = true;
+            drain();
+        }
+
+        /** Writes the next page (or the end of the document) into the chunk queue. */
+        private void produce() throws IOException {
+            final long start = (listener == LayoutListener.NONE) ? 0 : System.nanoTime();
+            if (writer == null) {
+                saveEvent = new LayoutEvents.SaveEvent();
+                saveEvent.begin();
+                writer = new StreamingPdfWriter(chunks, true, compress);
+                pageIter = doc.getPages().iterator();
+            }
+            if (pageIter.hasNext()) {
+                writer.writePage(pageIter.next());
+            } else {
+                writer.close();
+                chunks.finish();
+                written = true;
+            }
+            if (listener != LayoutListener.NONE) {
+                nanos += System.nanoTime() - start;
+            }
+        }
+
+        /** Tells the listener the document was saved, then tells the subscriber it's complete. */
+        private void complete() {
+            done = true;
+            release();
+            if (listener != LayoutListener.NONE) {
+                listener.saved(pageCount, nanos);
+            }
+            saveEvent.finish("published", pageCount);
+            subscriber.onComplete();
+        }
+
+        private void drain() {
+            if (wip.getAndIncrement() != 0) { return; }
+            int missed = 1;
+            while (true) {
+                if (done) {
+                    release();
+                } else if (error != null) {
+                    done = true;
+                    release();
+                    subscriber.onError(error);
+                } else {
+                    try {
+                        while (!done && (demand.get() > 0)) {
+                            ByteBuffer chunk = chunks.ready.poll();
+                            if (chunk != null) {
+                                if (demand.get() != Long.MAX_VALUE) { demand.decrementAndGet(); }
+                                subscriber.onNext(chunk);
+                            } else if (written) {
+                                complete();
+                            } else {
+                                produce();
+                            }
+                        }
+                        // Completion doesn't wait for demand, so a subscriber that asked for
+                        // exactly as many chunks as there were still hears about it.
+                        if (!done && written && chunks.ready.isEmpty()) {
+                            complete();
+                        }
+                    } catch (Throwable t) {
+                        if (!done) {
+                            done = true;
+                            release();
+                            subscriber.onError(t);
+                        }
+                    }
+                }
+                missed = wip.addAndGet(-missed);
+                if (missed == 0) { return; }
+            }
+        }
+
+        private void release() {
+            chunks.ready.clear();
+            try {
+                doc.close();
+            } catch (IOException ignore) {
+                // Nobody left to tell.
+            }
+        }
+    }
+}
@@ -64,9 +64,19 @@ public class ScaledJpeg implements Renderable {
 
     public Dim dimensions() { return Dim.of(width, height); }
 
-    public Dim calcDimensions(double maxWidth) { return dimensions(); }
+    public Dim calcDimensions(double maxWidth) {
+        LayoutTrace trace = LayoutTrace.current();
+        if (trace == null) { return dimensions(); }
+        return trace.measure(this, maxWidth, this::dimensions);
+    }
 
     public Coord render(LogicalPage lp, Coord outerTopLeft, Dim outerDimensions, boolean allPages) {
+        LayoutTrace trace = LayoutTrace.current();
+        if (trace == null) { return renderUntraced(lp, outerTopLeft); }
+        return trace.render(this, () -> renderUntraced(lp, outerTopLeft));
+    }
+
+    private Coord renderUntraced(LogicalPage lp, Coord outerTopLeft) {
         // use bottom of image for page-breaking calculation.
         double y = outerTopLeft.getY() - height;
         lp.drawJpeg(outerTopLeft.getX(), y, this);
@@ -0,0 +1,489 @@
+// Copyright 2026-10-19 PlanBase Inc. & Glen Peterson
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.planbase.pdf.layoutmanager;
+
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdfwriter.COSWriter;
+import org.apache.pdfbox.pdmodel.PDPage;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.Deflater;
+
+/**
+ <p>Writes a PDF one page at a time.  PDFBox's COSWriter needs the whole document before it can
+ write anything, but the documents this package makes are simple enough to serialize as we go:
+ each page, its content stream, and any images or fonts it uses for the first time are written
+ as soon as the page is finished.  Only the page tree, catalog, cross-reference table and trailer
+ wait until the end.</p>
+
+ <p>Object 1 is always the page tree and object 2 the catalog, so pages can point to their parent
+ before it exists.  Streams, fonts and the other dictionaries that CosSerializer keeps indirect
+ are written as indirect objects (once each, no matter how many pages use them).  Everything else
+ is written directly inside the object that uses it.</p>
+
+ <p>Optionally, the objects that aren't streams (pages, fonts, the page tree and catalog) are
+ packed {@value #OBJS_PER_STREAM} at a time into compressed object streams, and the
+ cross-reference table is written as a compressed stream too (PDF 1.5).  A page dictionary is
+ mostly the same names over and over, so this shrinks the per-page overhead a lot.</p>
+
+ <p>Once a page's content stream has been written, it is closed to give back the memory (or
+ scratch file space) PDFBox was holding it in.  Pages copied from a loaded PDF are the exception,
+ because several of them can share one content stream.  Images are only closed if releaseImages
+ is true, because a document that will be written to more than one file still needs them.</p>
+
+ <p>When pages come from several documents (see PdfConcatenator), identical fonts, images and
+ other shared objects can be written once and shared by content: each new indirect object is
+ hashed (along with the hashes of whatever it refers to) and reuses the object number of any
+ earlier object with the same hash.</p>
+ */
+final class StreamingPdfWriter {
+    private static final int PAGES_OBJ = 1;
+    private static final int CATALOG_OBJ = 2;
+
+    /** The most objects to put in one object stream. */
+    static final int OBJS_PER_STREAM = 100;
+
+    private final CountingOutputStream out;
+    private final boolean releaseImages;
+    private final boolean compressObjects;
+
+    // Where objects are being written: out, or objStmBody while writing into an object stream.
+    private OutputStream sink;
+
+    // The object stream being filled, if any.
+    private ByteArrayOutputStream objStmBody = null;
+    private final StringBuilder objStmOffsets = new StringBuilder();
+    private int objStmNum;
+    private int objStmCount;
+
+    // offsets.get(n - 1) is the byte offset of object n, or (for an object inside an object
+    // stream) an encoded reference to the stream and the index within it (see inObjStm()).
+    private final List<Long> offsets = new ArrayList<>();
+    private final List<Integer> pageObjs = new ArrayList<>();
+    // Shared objects (fonts, images, content streams of the current page) that already have an object number.
+    private final Map<COSBase,Integer> objNums = new IdentityHashMap<>();
+    // Objects that have a number but have not been written yet.
+    private final Deque<COSBase> pending = new ArrayDeque<>();
+    private final Deque<Integer> pendingNums = new ArrayDeque<>();
+    private boolean started = false;
+    private boolean finished = false;
+
+    // Object numbers by content hash, or null to share objects only by identity.
+    private final Map<ContentKey,Integer> byContent;
+    // Content hashes already computed (or being computed, if IN_PROGRESS).
+    private final Map<COSBase,ContentKey> contentKeys = new IdentityHashMap<>();
+    private static final ContentKey IN_PROGRESS = new ContentKey(new byte[0]);
+    // The content streams of the page being written, which are never worth hashing.
+    private final Set<COSBase> pageContents = Collections.newSetFromMap(new IdentityHashMap<>());
+    private int unhashable = 0;
+
+    /** A SHA-256 hash of an object's content. */
+    private static final class ContentKey {
+        private final byte[] hash;
+        ContentKey(byte[] h) { hash = h; }
+        @Override public boolean equals(Object other) {
+            return (other instanceof ContentKey) && Arrays.equals(hash, ((ContentKey) other).hash);
+        }
+        @Override public int hashCode() { return Arrays.hashCode(hash); }
+    }
+
+    /**
+     @param os where to write the PDF.
+     @param releaseImgs true to close each image once it's written.
+     @param compress true to write a PDF 1.5 file with the page dictionaries, fonts, etc. packed
+     into compressed object streams, and a compressed cross-reference stream.
+     */
+    StreamingPdfWriter(OutputStream os, boolean releaseImgs, boolean compress) {
+        this(os, releaseImgs, compress, false);
+    }
+
+    /**
+     @param os where to write the PDF.
+     @param releaseImgs true to close each image once it's written.
+     @param compress true to write compressed object streams and cross-reference stream.
+     @param shareByContent true to write identical fonts, images, etc. only once, even when they
+     are different Java objects (e.g. from different documents).
+     */
+    StreamingPdfWriter(OutputStream os, boolean releaseImgs, boolean compress,
+                       boolean shareByContent) {
+        byContent = shareByContent ? new HashMap<>() : null;
+        out = new CountingOutputStream(new BufferedOutputStream(os, 64 * 1024));
+        sink = out;
+        releaseImages = releaseImgs;
+        compressObjects = compress;
+        // Reserve the numbers of the page tree and catalog.
+        offsets.add(0L);
+        offsets.add(0L);
+    }
+
+    /** Returns the number of bytes written so far. */
+    long bytesWritten() { return out.count(); }
+
+    /**
+     Returns the number of bytes written so far plus the (uncompressed) size of the object stream
+     being filled, which is a little more than the file would be if it were finished now.
+     */
+    long sizeEstimate() { return out.count() + ((objStmBody == null) ? 0 : objStmBody.size()); }
+
+    /** Returns the number of pages written so far. */
+    int pageCount() { return pageObjs.size(); }
+
+    /**
+     Writes the given finished page, its content stream and any new resources, then flushes so
+     the client gets them right away.  The page's content streams are closed and forgotten
+     afterward, so this is only for pages made by PdfLayoutMgr.
+     */
+    void writePage(PDPage page) throws IOException { writePage(page, true); }
+
+    /**
+     Writes the given page, its content streams and any new resources, then flushes so the client
+     gets them right away.
+     @param page the page to write.
+     @param ownContents true if no other page uses this page's content streams (as with pages
+     made by PdfLayoutMgr), so they can be closed and forgotten now.  False for the pages of a
+     loaded PDF, which may share them: they are kept until forgetObjects().
+     */
+    void writePage(PDPage page, boolean ownContents) throws IOException {
+        if (finished) { throw new IllegalStateException("Can't write a page after close()"); }
+        writeHeader();
+        int pageNum = newObjNum();
+        pageObjs.add(pageNum);
+
+        pageContents.clear();
+        COSBase contents = page.getCOSObject().getDictionaryObject(COSName.CONTENTS);
+        if (contents instanceof COSArray) {
+            for (COSBase item : (COSArray) contents) {
+                pageContents.add(resolve(item));
+            }
+        } else if (contents != null) {
+            pageContents.add(contents);
+        }
+
+        startCompressible(pageNum);
+        sink.write(COSWriter.DICT_OPEN);
+        CosSerializer.writeEntries(page.getCOSObject(), COSName.PARENT, sink, this::reference);
+        COSName.PARENT.writePDF(sink);
+        writeRef(PAGES_OBJ);
+        sink.write(COSWriter.DICT_CLOSE);
+        endCompressible();
+
+        writePending();
+        out.flush();
+
+        if (ownContents) {
+            // No other page uses these content streams, so forget them completely.
+            for (COSBase stream : pageContents) {
+                if (stream instanceof COSStream) {
+                    objNums.remove(stream);
+                    ((COSStream) stream).close();
+                }
+            }
+        }
+        pageContents.clear();
+    }
+
+    /**
+     Forgets which Java objects have been written, so a finished source document can be garbage
+     collected.  Objects that are shared by content can still be shared with later pages.
+     */
+    void forgetObjects() {
+        if (!pending.isEmpty()) { throw new IllegalStateException("Objects still to be written"); }
+        objNums.clear();
+        contentKeys.clear();
+    }
+
+    /**
+     Writes the page tree, catalog, cross-reference table and trailer, then flushes.  Does not
+     close the underlying stream (just like PDDocument.save()).
+     */
+    void close() throws IOException {
+        if (finished) { return; }
+        writeHeader();
+        finished = true;
+
+        startCompressible(PAGES_OBJ);
+        ascii("<</Type /Pages /Count " + pageObjs.size() + " /Kids [");
+        for (int i = 0; i < pageObjs.size(); i++) {
+            if ( (i > 0) && ((i % 10) == 0) ) {
+                sink.write('\n');
+            }
+            ascii(pageObjs.get(i) + " 0 R ");
+        }
+        ascii("]>>");
+        endCompressible();
+
+        startCompressible(CATALOG_OBJ);
+        ascii("<</Type /Catalog /Pages " + PAGES_OBJ + " 0 R>>");
+        endCompressible();
+
+        if (compressObjects) {
+            writeObjStm();
+            writeXrefStream();
+        } else {
+            writeXrefTable();
+        }
+        out.flush();
+    }
+
+    private void writeHeader() throws IOException {
+        if (!started) {
+            // The second line is binary so that file transfer programs treat the file as binary.
+            ascii((compressObjects ? "%PDF-1.5" : "%PDF-1.4") + "\n%\u00e2\u00e3\u00cf\u00d3\n");
+            started = true;
+        }
+    }
+
+    private void writeXrefTable() throws IOException {
+        long startXref = out.count();
+        StringBuilder sB = new StringBuilder(20 * (offsets.size() + 1) + 100);
+        sB.append("xref\n0 ").append(offsets.size() + 1).append('\n');
+        sB.append("0000000000 65535 f\r\n");
+        for (long offset : offsets) {
+            String num = Long.toString(offset);
+            for (int i = num.length(); i < 10; i++) { sB.append('0'); }
+            sB.append(num).append(" 00000 n\r\n");
+        }
+        sB.append("trailer\n<</Size ").append(offsets.size() + 1)
+          .append(" /Root ").append(CATALOG_OBJ).append(" 0 R>>\n")
+          .append("startxref\n").append(startXref).append("\n%%EOF\n");
+        ascii(sB.toString());
+    }
+
+    /**
+     Writes a cross-reference stream (section 7.5.8 of the PDF spec).  Each entry is a type byte,
+     then the offset (type 1) or object stream number (type 2) in as few bytes as it takes, then
+     two bytes of generation number (type 1) or index within the object stream (type 2).
+     */
+    private void writeXrefStream() throws IOException {
+        int xrefNum = newObjNum();
+        long startXref = out.count();
+        offsets.set(xrefNum - 1, startXref);
+        int size = offsets.size() + 1;
+
+        int fieldBytes = 1;
+        while ((Math.max(startXref, size) >>> (8 * fieldBytes)) != 0) {
+            fieldBytes++;
+        }
+        ByteArrayOutputStream rows = new ByteArrayOutputStream(size * (fieldBytes + 3));
+        // Object 0 is the head of the (empty) list of free objects.
+        writeXrefRow(rows, 0, 0, fieldBytes, 0xffff);
+        for (long offset : offsets) {
+            if (offset >= 0) {
+                writeXrefRow(rows, 1, offset, fieldBytes, 0);
+            } else {
+                long ref = -1 - offset;
+                writeXrefRow(rows, 2, ref >>> 32, fieldBytes, (int) ref);
+            }
+        }
+        byte[] data = deflate(rows.toByteArray());
+        ascii(xrefNum + " 0 obj\n<</Type /XRef /Size " + size + " /W [1 " + fieldBytes + " 2]" +
+              " /Root " + CATALOG_OBJ + " 0 R /Filter /FlateDecode /Length " + data.length + ">>\n" +
+              "stream\n");
+        out.write(data);
+        ascii("\nendstream\nendobj\nstartxref\n" + startXref + "\n%%EOF\n");
+    }
+
+    static void writeXrefRow(ByteArrayOutputStream rows, int type, long field2,
+                                     int field2Bytes, int field3) {
+        rows.write(type);
+        for (int i = field2Bytes - 1; i >= 0; i--) {
+            rows.write((int) (field2 >>> (8 * i)));
+        }
+        rows.write(field3 >>> 8);
+        rows.write(field3);
+    }
+
+    static byte[] deflate(byte[] data) throws IOException {
+        return DeflaterPool.deflate(data, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /** Encodes the xref entry of an object in an object stream.  Always negative. */
+    private static long inObjStm(int objStm, int index) {
+        return -1 - ((((long) objStm) << 32) | index);
+    }
+
+    /**
+     Starts writing an object that is not a stream.  When compressing, it goes into the current
+     object stream (starting one if necessary).
+     */
+    private void startCompressible(int num) throws IOException {
+        if (!compressObjects) {
+            startObj(num);
+            return;
+        }
+        if (objStmBody == null) {
+            objStmNum = newObjNum();
+            objStmBody = new ByteArrayOutputStream();
+            objStmCount = 0;
+        }
+        offsets.set(num - 1, inObjStm(objStmNum, objStmCount));
+        objStmOffsets.append(num).append(' ').append(objStmBody.size()).append(' ');
+        sink = objStmBody;
+    }
+
+    private void endCompressible() throws IOException {
+        if (!compressObjects) {
+            endObj();
+            return;
+        }
+        objStmBody.write('\n');
+        sink = out;
+        objStmCount++;
+        if (objStmCount == OBJS_PER_STREAM) {
+            writeObjStm();
+        }
+    }
+
+    /** Writes out the current object stream, if there is one. */
+    private void writeObjStm() throws IOException {
+        if (objStmBody == null) { return; }
+        byte[] header = objStmOffsets.toString().getBytes(StandardCharsets.ISO_8859_1);
+        ByteArrayOutputStream raw = new ByteArrayOutputStream(header.length + objStmBody.size());
+        raw.write(header);
+        objStmBody.writeTo(raw);
+        byte[] data = deflate(raw.toByteArray());
+
+        startObj(objStmNum);
+        ascii("<</Type /ObjStm /N " + objStmCount + " /First " + header.length +
+              " /Filter /FlateDecode /Length " + data.length + ">>\nstream\n");
+        out.write(data);
+        ascii("\nendstream");
+        endObj();
+
+        objStmBody = null;
+        objStmOffsets.setLength(0);
+    }
+
+    private int newObjNum() {
+        offsets.add(0L);
+        return offsets.size();
+    }
+
+    private void startObj(int num) throws IOException {
+        offsets.set(num - 1, out.count());
+        ascii(num + " 0 obj\n");
+    }
+
+    private void endObj() throws IOException { ascii("\nendobj\n"); }
+
+    private void writeRef(int num) throws IOException { CosSerializer.writeRef(num, sink); }
+
+    private void ascii(String s) throws IOException { CosSerializer.ascii(s, sink); }
+
+    /** Returns the object number for an indirect object, queueing it to be written if it's new. */
+    private int reference(COSBase obj) {
+        Integer num = objNums.get(obj);
+        if (num == null) {
+            ContentKey key = null;
+            if ( (byContent != null) && !pageContents.contains(obj) ) {
+                key = contentKey(obj);
+                num = byContent.get(key);
+            }
+            if (num == null) {
+                num = newObjNum();
+                pending.add(obj);
+                pendingNums.add(num);
+                if (key != null) {
+                    byContent.put(key, num);
+                }
+            }
+            objNums.put(obj, num);
+        }
+        return num;
+    }
+
+    private static COSBase resolve(COSBase value) {
+        return (value instanceof COSObject) ? ((COSObject) value).getObject() : value;
+    }
+
+    /**
+     Hashes an indirect object as it would be written, except that references to other indirect
+     objects are replaced by their own hashes.
+     */
+    private ContentKey contentKey(COSBase obj) {
+        ContentKey key = contentKeys.get(obj);
+        if (key == IN_PROGRESS) {
+            // A cycle: give up on sharing this one (and everything that leads to it).
+            return new ContentKey(ByteBuffer.allocate(4).putInt(++unhashable).array());
+        }
+        if (key != null) { return key; }
+        contentKeys.put(obj, IN_PROGRESS);
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException nsae) {
+            // Every Java platform is required to have SHA-256.
+            throw new IllegalStateException(nsae);
+        }
+        try (OutputStream hashing = new DigestOutputStream(OutputStream.nullOutputStream(), digest)) {
+            CosSerializer.writeBody(obj, hashing, child -> {
+                // Hash the child's hash in place of its (not yet known) object number.
+                digest.update(contentKey(child).hash);
+                return 0;
+            });
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+        key = new ContentKey(digest.digest());
+        contentKeys.put(obj, key);
+        return key;
+    }
+
+    /** Writes every queued object, including any they refer to in turn. */
+    private void writePending() throws IOException {
+        while (!pending.isEmpty()) {
+            COSBase obj = pending.remove();
+            int num = pendingNums.remove();
+            if (obj instanceof COSStream) {
+                COSStream stream = (COSStream) obj;
+                startObj(num);
+                CosSerializer.writeStream(stream, out, this::reference);
+                endObj();
+                if (releaseImages && COSName.XOBJECT.equals(stream.getCOSName(COSName.TYPE))) {
+                    // Keep the object number so later pages can still refer to the image.
+                    stream.close();
+                }
+            } else {
+                // A font or other shared dictionary
+                startCompressible(num);
+                CosSerializer.writeBody(obj, sink, this::reference);
+                endCompressible();
+            }
+        }
+    }
+}
@@ -60,6 +60,12 @@ public class TableBuilder implements Renderable {
     public Coord buildTable() { return logicalPage.addTable(this); }
 
     public Dim calcDimensions(double maxWidth) {
+        LayoutTrace trace = LayoutTrace.current();
+        if (trace == null) { return calcDimensionsUntraced(); }
+        return trace.measure(this, maxWidth, this::calcDimensionsUntraced);
+    }
+
+    private Dim calcDimensionsUntraced() {
         Dim maxDim = Dim.ZERO;
         for (TablePart part : parts) {
             Dim wh = part.calcDimensions();
@@ -75,6 +81,13 @@ public class TableBuilder implements Renderable {
     */
     public Coord render(LogicalPage lp, Coord outerTopLeft, Dim outerDimensions,
                         boolean allPages) {
+        LayoutTrace trace = LayoutTrace.current();
+        if (trace == null) { return renderUntraced(lp, outerTopLeft, outerDimensions, allPages); }
+        return trace.render(this, () -> renderUntraced(lp, outerTopLeft, outerDimensions, allPages));
+    }
+
+    private Coord renderUntraced(LogicalPage lp, Coord outerTopLeft, Dim outerDimensions,
+                                 boolean allPages) {
         Coord rightmostLowest = outerTopLeft;
         for (TablePart part : parts) {
 //            System.out.println("About to render part: " + part);
@@ -88,6 +88,12 @@ public class TablePart {
     }
 
     public Coord render(LogicalPage lp, Coord outerTopLeft, boolean allPages) {
+        LayoutTrace trace = LayoutTrace.current();
+        if (trace == null) { return renderUntraced(lp, outerTopLeft, allPages); }
+        return trace.render(this, () -> renderUntraced(lp, outerTopLeft, allPages));
+    }
+
+    private Coord renderUntraced(LogicalPage lp, Coord outerTopLeft, boolean allPages) {
         Coord rightmostLowest = outerTopLeft;
         for (TableRowBuilder row : rows) {
 //            System.out.println("\tAbout to render row: " + row);
@@ -140,9 +140,16 @@ public class TableRowBuilder {
 
     public Coord render(LogicalPage lp, Coord outerTopLeft,
                         boolean allPages) {
+        LayoutTrace trace = LayoutTrace.current();
+        if (trace == null) { return renderUntraced(lp, outerTopLeft, allPages); }
+        return trace.render(this, () -> renderUntraced(lp, outerTopLeft, allPages));
+    }
+
+    private Coord renderUntraced(LogicalPage lp, Coord outerTopLeft,
+                                 boolean allPages) {
         Dim maxDim = Dim.ZERO.withHeight(minRowHeight);
         for (Cell cell : cells) {
-            Dim wh = cell.calcDimensions(cell.width());
+            Dim wh = lp.measure(cell, cell.width());
             maxDim = Dim.of(maxDim.getWidth() + cell.width(),
                             Math.max(maxDim.getHeight(), wh.getHeight()));
         }
@@ -152,8 +159,8 @@ public class TableRowBuilder {
         for (Cell cell : cells) {
 //            System.out.println("\t\tAbout to render cell: " + cell);
             // TODO: Cache the duplicate cell.calcDimensions call!!!
-            cell.render(lp, Coord.of(x, outerTopLeft.getY()),
-                        Dim.of(cell.width(), maxHeight), allPages);
+            lp.render(cell, Coord.of(x, outerTopLeft.getY()),
+                      Dim.of(cell.width(), maxHeight), allPages);
             x += cell.width();
         }
         return Coord.of(x, outerTopLeft.getY() - maxHeight);
@@ -67,37 +67,43 @@ public class Text implements Renderable {
     public double maxWidth() { return textStyle.stringWidthInDocUnits(text.trim()); }
 
     private Dim calcDimensionsForReal(final double maxWidth) {
-        // TODO: Make this show text even if the width is zero or less, just show one word per line.
-        if (maxWidth < 0) {
-            throw new IllegalArgumentException("Can't meaningfully wrap text with a negative width: " + maxWidth);
+        LayoutTrace.laidOut(this);
+        // If the width is zero or less (or NaN), show one word per line.
+        LayoutEvents.TextWrapEvent event = null;
+        if (text.length() >= LayoutEvents.LARGE_TEXT_CHARS) {
+            event = new LayoutEvents.TextWrapEvent();
+            event.begin();
         }
         WrappedBlock wb = new WrappedBlock();
         double x = 0;
         double y = 0;
         double maxX = x;
-        Text txt = this;
-        String row = txt.text(); //PdfLayoutMgr.convertJavaStringToWinAnsi(txt.text());
+        final String text = this.text; //PdfLayoutMgr.convertJavaStringToWinAnsi(txt.text());
+        final int textLen = text.length();
 
-        String text = substrNoLeadingWhitespace(row, 0);
-        int charWidthGuess = txt.avgCharsForWidth(maxWidth);
+        // Each row starts here.  Keeping an index instead of chopping each row off the front of
+        // the text means we don't copy the rest of the text for every row.
+        int start = skipWhitespace(text, 0);
+        int charWidthGuess = avgCharsForWidth(maxWidth);
+        if (charWidthGuess < 0) { charWidthGuess = 0; }
 
-        while (text.length() > 0) {
-            int textLen = text.length();
-//            System.out.println("text=[" + text + "] len=" + textLen);
+        while (start < textLen) {
+//            System.out.println("text=[" + text.substring(start) + "] len=" + (textLen - start));
             // Knowing the average width of a character lets us guess and generally be near
             // the word where the line break will occur.  Since the font reports a narrow average,
             // (possibly due to the predominance of spaces in text) we widen it a little for a
             // better first guess.
-            int idx = charWidthGuess;
-            if (idx > textLen) { idx = textLen; }
-            String substr = text.substring(0, idx);
-            double strWidth = textStyle.stringWidthInDocUnits(substr);
+            int idx = start + charWidthGuess;
+            if ( (idx > textLen) || (idx < start) ) { idx = textLen; }
+            String substr = text.substring(start, idx);
+            double fontUnits = textStyle.stringWidthInFontUnits(substr);
+            double strWidth = textStyle.fontUnitsToDocUnits(fontUnits);
 
 //            System.out.println("(strWidth=" + strWidth + " < maxWidth=" + maxWidth + ") && (idx=" + idx + " < textLen=" + textLen + ")");
-            // If too short - find shortest string that is too long.
-            // int idx = idx;
-            // int maxTooShortIdx = -1;
-            while ( (strWidth < maxWidth) && (idx < textLen) ) {
+            // If too short - find shortest string that is too long.  Always take at least one
+            // word so that a row is never empty.
+            int measuredIdx = idx;
+            while ( ((strWidth < maxWidth) || (idx == start)) && (idx < textLen) ) {
 //                System.out.println("find shortest string that is too long");
                 // Consume any whitespace.
                 while ( (idx < textLen) &&
@@ -109,30 +115,34 @@ public class Text implements Renderable {
                         !Character.isWhitespace(text.charAt(idx)) ) {
                     idx++;
                 }
-                // Test new width
-                substr = text.substring(0, idx);
-                strWidth = textStyle.stringWidthInDocUnits(substr);
+                // Test new width by measuring only what was added, not the whole line again.
+                fontUnits += textStyle.stringWidthInFontUnits(text.substring(measuredIdx, idx));
+                strWidth = textStyle.fontUnitsToDocUnits(fontUnits);
+                measuredIdx = idx;
+            }
+            if (idx > start + substr.length()) {
+                substr = text.substring(start, idx);
             }
 
             idx--;
-//            System.out.println("(strWidth=" + strWidth + " > maxWidth=" + maxWidth + ") && (idx=" + idx + " > 0)");
+//            System.out.println("(strWidth=" + strWidth + " > maxWidth=" + maxWidth + ") && (idx=" + idx + " > start=" + start + ")");
             // Too long.  Find longest string that is short enough.
-            while ( (strWidth > maxWidth) && (idx > 0) ) {
+            while ( (strWidth > maxWidth) && (idx > start) ) {
 //                System.out.println("find longest string that is short enough");
                 //logger.info("strWidth: " + strWidth + " cell.width: " + cell.width + " idx: " + idx);
                 // Find previous whitespace run
-                while ( (idx > -1) && !Character.isWhitespace(text.charAt(idx)) ) {
+                while ( (idx >= start) && !Character.isWhitespace(text.charAt(idx)) ) {
                     idx--;
                 }
                 // Find last non-whatespace character before whitespace run.
-                while ( (idx > -1) && Character.isWhitespace(text.charAt(idx)) ) {
+                while ( (idx >= start) && Character.isWhitespace(text.charAt(idx)) ) {
                     idx--;
                 }
-                if (idx < 1) {
+                if (idx < start + 1) {
                     break; // no spaces - have to put whole thing in cell and let it run over.
                 }
                 // Test new width
-                substr = text.substring(0, idx + 1);
+                substr = text.substring(start, idx + 1);
                 strWidth = textStyle.stringWidthInDocUnits(substr);
             }
 
@@ -141,8 +151,8 @@ public class Text implements Renderable {
             y -= textStyle.lineHeight();
 //            System.out.println("y=" + y);
 
-            // Chop off section of substring that we just wrote out.
-            text = substrNoLeadingWhitespace(text, substr.length());
+            // Skip past the row we just wrote out.
+            start = skipWhitespace(text, start + substr.length());
             if (strWidth > maxX) { maxX = strWidth; }
 //            System.out.println("maxX=" + maxX);
         }
@@ -153,6 +163,15 @@ public class Text implements Renderable {
 //        }
         wb.blockDim = Dim.of(maxX, 0 - y);
         dims.put(maxWidth, wb);
+        if (event != null) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.chars = text.length();
+                event.maxWidth = maxWidth;
+                event.lines = wb.rows.size();
+                event.commit();
+            }
+        }
 //        System.out.println("\tcalcWidth(" + maxWidth + ") on " + this.toString());
 //        System.out.println("\t\ttext calcDim() blockDim=" + wb.blockDim);
         return wb.blockDim;
@@ -168,15 +187,20 @@ public class Text implements Renderable {
     }
 
     public Dim calcDimensions(final double maxWidth) {
-        // I'd like to try to make calcDimensionsForReal() handle this situation before throwing an exception here.
-//        if (maxWidth < 0) {
-//            throw new IllegalArgumentException("maxWidth must be positive, not " + maxWidth);
-//        }
-        return ensureWrappedBlock(maxWidth).blockDim;
+        LayoutTrace trace = LayoutTrace.current();
+        if (trace == null) { return ensureWrappedBlock(maxWidth).blockDim; }
+        return trace.measure(this, maxWidth, () -> ensureWrappedBlock(maxWidth).blockDim);
     }
 
     public Coord render(LogicalPage lp, Coord outerTopLeft, Dim outerDimensions,
                         boolean allPages) {
+        LayoutTrace trace = LayoutTrace.current();
+        if (trace == null) { return renderUntraced(lp, outerTopLeft, outerDimensions, allPages); }
+        return trace.render(this, () -> renderUntraced(lp, outerTopLeft, outerDimensions, allPages));
+    }
+
+    private Coord renderUntraced(LogicalPage lp, Coord outerTopLeft, Dim outerDimensions,
+                                 boolean allPages) {
 
 //        System.out.println("\tText.render(" + this.toString());
 //        System.out.println("\t\ttext.render(outerTopLeft=" + outerTopLeft +
@@ -211,16 +235,13 @@ public class Text implements Renderable {
                         outerTopLeft.getY() - wb.blockDim.getHeight());
     }
 
-    private static String substrNoLeadingWhitespace(final String text, int startIdx) {
-        // Drop any opening whitespace.
+    /** Returns the index of the first non-whitespace character at or after startIdx. */
+    private static int skipWhitespace(final String text, int startIdx) {
         while ( (startIdx < text.length()) &&
                 Character.isWhitespace(text.charAt(startIdx))) {
             startIdx++;
         }
-        if (startIdx > 0) {
-            return text.substring(startIdx);
-        }
-        return text;
+        return startIdx;
     }
 
     @Override
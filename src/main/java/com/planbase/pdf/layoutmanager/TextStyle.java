@@ -97,6 +97,22 @@ public class TextStyle {
         }
     }
 
+    /**
+     The same width as {@link #stringWidthInDocUnits(String)}, but in font units.  Widths of
+     adjacent pieces of a string add up exactly to the width of the whole string in font units, so
+     a line can be measured a word at a time.
+     */
+    double stringWidthInFontUnits(String text) {
+        try {
+            return font.getStringWidth(text);
+        } catch (IOException ioe) {
+            return text.length() * avgCharWidth / factor;
+        }
+    }
+
+    /** Converts a width from {@link #stringWidthInFontUnits(String)} to document units. */
+    double fontUnitsToDocUnits(double fontUnits) { return fontUnits * factor; }
+
     public PDType1Font font() { return font; }
     public double fontSize() { return fontSize; }
 
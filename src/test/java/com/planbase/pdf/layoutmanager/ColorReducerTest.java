@@ -0,0 +1,78 @@
+package com.planbase.pdf.layoutmanager;
+
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.util.zip.Deflater;
+
+import static org.junit.Assert.assertEquals;
+
+public class ColorReducerTest {
+
+    private static BufferedImage image(int w, int h, int... colors) {
+        BufferedImage bi = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                bi.setRGB(x, y, colors[((y * w) + x) % colors.length]);
+            }
+        }
+        return bi;
+    }
+
+    private static void assertSamePixels(BufferedImage expected, BufferedImage actual) {
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                assertEquals("pixel " + x + "," + y,
+                             expected.getRGB(x, y) & 0xffffff, actual.getRGB(x, y) & 0xffffff);
+            }
+        }
+    }
+
+    @Test public void analyze() {
+        assertEquals(ColorReducer.Kind.BILEVEL,
+                     ColorReducer.analyze(image(7, 5, 0x000000, 0xffffff)).kind);
+        assertEquals(ColorReducer.Kind.GRAY,
+                     ColorReducer.analyze(image(7, 5, 0x000000, 0x808080, 0xffffff)).kind);
+        ColorReducer.Analysis a = ColorReducer.analyze(image(7, 5, 0xff0000, 0x00ff00, 0x0000ff));
+        assertEquals(ColorReducer.Kind.INDEXED, a.kind);
+        assertEquals(3, a.palette.length);
+
+        int[] many = new int[ColorReducer.MAX_PALETTE + 1];
+        for (int i = 0; i < many.length; i++) { many[i] = i * 17; }
+        assertEquals(ColorReducer.Kind.RGB, ColorReducer.analyze(image(40, 40, many)).kind);
+
+        BufferedImage alpha = new BufferedImage(4, 4, BufferedImage.TYPE_INT_ARGB);
+        assertEquals(ColorReducer.Kind.RGB, ColorReducer.analyze(alpha).kind);
+    }
+
+    @Test public void roundTrip() throws Exception {
+        try (PDDocument doc = new PDDocument()) {
+            BufferedImage bw = image(13, 9, 0x000000, 0xffffff, 0xffffff);
+            PDImageXObject bwImg = ColorReducer.createLossless(doc, bw, Deflater.DEFAULT_COMPRESSION);
+            assertEquals(1, bwImg.getBitsPerComponent());
+            assertEquals(COSName.CCITTFAX_DECODE,
+                         bwImg.getCOSObject().getDictionaryObject(COSName.FILTER));
+            assertSamePixels(bw, bwImg.getImage());
+
+            BufferedImage gray = image(13, 9, 0x000000, 0x404040, 0xc0c0c0);
+            PDImageXObject grayImg = ColorReducer.createLossless(doc, gray, Deflater.DEFAULT_COMPRESSION);
+            assertEquals("DeviceGray", grayImg.getColorSpace().getName());
+            // The decoded samples should be exactly the gray levels we started with.
+            byte[] samples = grayImg.createInputStream().readAllBytes();
+            for (int i = 0; i < samples.length; i++) {
+                assertEquals(gray.getRGB(i % 13, i / 13) & 0xff, samples[i] & 0xff);
+            }
+
+            BufferedImage five = image(13, 9, 0xff0000, 0x00ff00, 0x0000ff, 0x123456, 0xfedcba);
+            PDImageXObject indexed = ColorReducer.createLossless(doc, five, Deflater.DEFAULT_COMPRESSION);
+            assertEquals("Indexed", indexed.getColorSpace().getName());
+            assertEquals(4, indexed.getBitsPerComponent());
+            assertSamePixels(five, indexed.getImage());
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.planbase.pdf.layoutmanager;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceRGB;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.junit.Test;
+
+import java.awt.Color;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.Inflater;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CompressObjectsTest {
+    private static final int PAGES = 500;
+
+    private static void layOut(PdfLayoutMgr pageMgr) throws IOException {
+        TextStyle textStyle = TextStyle.of(PDType1Font.HELVETICA, 12, Color.BLACK);
+        CellStyle cellStyle = CellStyle.of(CellStyle.Align.TOP_LEFT, Padding.of(2), null, null);
+        for (int p = 0; p < PAGES; p++) {
+            LogicalPage lp = pageMgr.logicalPageStart(LogicalPage.Orientation.PORTRAIT);
+            lp.putCell(40, lp.yPageTop(), Cell.of(cellStyle, 300, textStyle, "Statement " + p));
+            lp.commit();
+        }
+    }
+
+    private static byte[] save(boolean compress) throws IOException {
+        PdfLayoutMgr pageMgr = PdfLayoutMgr.newRgbPageMgr().compressObjects(compress);
+        layOut(pageMgr);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        pageMgr.save(bos);
+        return bos.toByteArray();
+    }
+
+    /** Checks that every uncompressed object in the cross-reference stream is where it says. */
+    private static void assertXrefStream(byte[] pdf) throws Exception {
+        String s = new String(pdf, StandardCharsets.ISO_8859_1);
+        assertTrue(s.startsWith("%PDF-1.5"));
+        assertFalse(s.contains("\nxref\n"));
+        int startXref = Integer.parseInt(s.substring(s.lastIndexOf("startxref") + 9,
+                                                     s.lastIndexOf("%%EOF")).trim());
+        int dictEnd = s.indexOf(">>", startXref);
+        String dict = s.substring(startXref, dictEnd);
+        assertTrue(dict.contains("/Type /XRef"));
+        int size = Integer.parseInt(dict.replaceAll("(?s).*/Size (\\d+).*", "$1"));
+        int w = Integer.parseInt(dict.replaceAll("(?s).*/W \\[1 (\\d+) 2\\].*", "$1"));
+        int length = Integer.parseInt(dict.replaceAll("(?s).*/Length (\\d+).*", "$1"));
+        int dataStart = s.indexOf("stream\n", dictEnd) + 7;
+
+        Inflater inflater = new Inflater();
+        inflater.setInput(Arrays.copyOfRange(pdf, dataStart, dataStart + length));
+        byte[] rows = new byte[size * (w + 3)];
+        assertEquals(rows.length, inflater.inflate(rows));
+        assertTrue(inflater.finished());
+
+        int compressed = 0;
+        for (int objNum = 1; objNum < size; objNum++) {
+            int row = objNum * (w + 3);
+            long field2 = 0;
+            for (int i = 0; i < w; i++) {
+                field2 = (field2 << 8) | (rows[row + 1 + i] & 0xff);
+            }
+            if (rows[row] == 1) {
+                assertTrue("object " + objNum, s.startsWith(objNum + " 0 obj", (int) field2));
+            } else {
+                assertEquals(2, rows[row]);
+                compressed++;
+            }
+        }
+        // Every page plus the page tree and catalog.
+        assertTrue(compressed >= PAGES + 2);
+    }
+
+    @Test public void smallerAndSame() throws Exception {
+        byte[] plain = save(false);
+        byte[] compressed = save(true);
+        assertXrefStream(compressed);
+
+        try (PDDocument expected = PDDocument.load(plain);
+             PDDocument actual = PDDocument.load(compressed)) {
+            assertEquals(PAGES, actual.getNumberOfPages());
+            assertEquals(new PDFTextStripper().getText(expected),
+                         new PDFTextStripper().getText(actual));
+        }
+        assertTrue(compressed.length + " bytes compressed, " + plain.length + " plain",
+                   compressed.length < plain.length);
+    }
+
+    @Test public void streamed() throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        PdfLayoutMgr pageMgr = PdfLayoutMgr.of(PDDeviceRGB.INSTANCE, null, bos)
+                                           .compressObjects(true);
+        layOut(pageMgr);
+        pageMgr.save();
+        assertXrefStream(bos.toByteArray());
+        try (PDDocument doc = PDDocument.load(bos.toByteArray())) {
+            assertEquals(PAGES, doc.getNumberOfPages());
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void tooLateToCompress() throws IOException {
+        PdfLayoutMgr pageMgr = PdfLayoutMgr.of(PDDeviceRGB.INSTANCE, null,
+                                               OutputStream.nullOutputStream());
+        LogicalPage lp = pageMgr.logicalPageStart();
+        lp.commit();
+        pageMgr.compressObjects(true);
+    }
+}
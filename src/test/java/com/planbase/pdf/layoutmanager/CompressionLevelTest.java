@@ -0,0 +1,94 @@
+package com.planbase.pdf.layoutmanager;
+
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class CompressionLevelTest {
+    private static final int PAGES = 100;
+
+    private static byte[] save(int level) throws IOException {
+        PdfLayoutMgr pageMgr = Fixtures.report(PdfLayoutMgr.newRgbPageMgr().compressionLevel(level),
+                                               PAGES);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        pageMgr.save(bos);
+        return bos.toByteArray();
+    }
+
+    @Test public void levels() throws Exception {
+        int[] levels = new int[] { Deflater.NO_COMPRESSION, Deflater.BEST_SPEED,
+                                   Deflater.DEFAULT_COMPRESSION, Deflater.BEST_COMPRESSION };
+        byte[][] pdfs = new byte[levels.length][];
+        String expectedText = null;
+        for (int i = 0; i < levels.length; i++) {
+            pdfs[i] = save(levels[i]);
+            try (PDDocument doc = PDDocument.load(pdfs[i])) {
+                assertEquals(PAGES, doc.getNumberOfPages());
+                String text = new PDFTextStripper().getText(doc);
+                if (expectedText == null) {
+                    expectedText = text;
+                } else {
+                    assertEquals(expectedText, text);
+                }
+                COSStream contents = (COSStream) doc.getPage(0).getCOSObject()
+                                                    .getDictionaryObject(COSName.CONTENTS);
+                if (levels[i] == Deflater.NO_COMPRESSION) {
+                    assertNull(contents.getDictionaryObject(COSName.FILTER));
+                } else {
+                    assertEquals(COSName.FLATE_DECODE, contents.getDictionaryObject(COSName.FILTER));
+                }
+            }
+        }
+        assertTrue(pdfs[0].length > pdfs[1].length);
+        assertTrue(pdfs[1].length > pdfs[3].length);
+        assertTrue(pdfs[2].length >= pdfs[3].length);
+    }
+
+    @Test public void zlibHeaders() throws Exception {
+        byte[] data = "Hello Hello Hello Hello".getBytes("ISO-8859-1");
+        for (int level = Deflater.DEFAULT_COMPRESSION; level <= Deflater.BEST_COMPRESSION; level++) {
+            byte[] header = DeflaterPool.zlibHeader(level);
+            assertEquals(0x78, header[0]);
+            assertEquals(0, (((header[0] & 0xff) << 8) | (header[1] & 0xff)) % 31);
+
+            // A header and raw deflate data from the pool make a valid zlib stream.
+            byte[] deflated = DeflaterPool.deflate(data, level);
+            Inflater inflater = new Inflater();
+            inflater.setInput(deflated);
+            byte[] out = new byte[data.length];
+            assertEquals(data.length, inflater.inflate(out));
+            assertArrayEquals(data, out);
+        }
+        assertArrayEquals(new byte[] { 0x78, (byte) 0x9c },
+                          DeflaterPool.zlibHeader(Deflater.DEFAULT_COMPRESSION));
+    }
+
+    @Test public void pooled() {
+        Deflater first;
+        try (DeflaterPool.Lease lease = DeflaterPool.lease(Deflater.BEST_SPEED, true)) {
+            first = lease.deflater;
+        }
+        try (DeflaterPool.Lease lease = DeflaterPool.lease(Deflater.BEST_SPEED, true)) {
+            assertSame(first, lease.deflater);
+            assertEquals(0, lease.deflater.getTotalIn());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void badLevel() {
+        PdfLayoutMgr.newRgbPageMgr().compressionLevel(10);
+    }
+}
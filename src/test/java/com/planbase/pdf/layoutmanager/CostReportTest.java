@@ -0,0 +1,78 @@
+package com.planbase.pdf.layoutmanager;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Map;
+
+import static com.planbase.pdf.layoutmanager.Fixtures.BOLD;
+import static com.planbase.pdf.layoutmanager.Fixtures.BORDERED;
+import static com.planbase.pdf.layoutmanager.Fixtures.TEXT;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ Makes a report with a photo on the first page and a long table after it, and checks that the
+ cost report adds up and points at the expensive page.
+ */
+public class CostReportTest {
+    @Test public void report() throws IOException {
+        CostReport report = new CostReport();
+        PdfLayoutMgr pageMgr = PdfLayoutMgr.newRgbPageMgr().layoutListener(report);
+        LogicalPage lp = pageMgr.logicalPageStart(LogicalPage.Orientation.PORTRAIT);
+        lp.putCell(40, lp.yPageTop(), Cell.of(BORDERED, 300, TEXT, "Cover"));
+        lp.putCell(40, lp.yPageTop() - 20, Cell.of(BORDERED, 210, ScaledPng.of(Fixtures.photo())));
+        lp.commit();
+
+        lp = pageMgr.logicalPageStart(LogicalPage.Orientation.PORTRAIT);
+        TableBuilder tb = lp.tableBuilder(Coord.of(40, lp.yPageTop()));
+        tb.addCellWidths(60, 300);
+        TablePart header = tb.partBuilder().cellStyle(BORDERED).textStyle(BOLD);
+        header.rowBuilder().addTextCells("Id", "Description").buildRow();
+        header.buildPart();
+        TablePart body = tb.partBuilder().cellStyle(BORDERED).textStyle(TEXT);
+        for (int r = 0; r < 300; r++) {
+            body.rowBuilder().addTextCells("#" + r, "Row number " + r).buildRow();
+        }
+        body.buildPart();
+        tb.buildTable();
+        lp.commit();
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        pageMgr.save(bos);
+
+        try (PDDocument doc = PDDocument.load(bos.toByteArray())) {
+            assertEquals(doc.getNumberOfPages(), report.pageCount());
+        }
+        assertEquals(report.pageCount(), report.pages().size());
+        assertEquals(1, report.imageCount());
+        assertTrue(report.imageBytes() > 1000);
+        assertTrue(report.fonts().contains("Helvetica"));
+        assertTrue(report.fonts().contains("Helvetica-Bold"));
+
+        Map<String,Integer> items = report.items();
+        assertEquals(1, (int) items.get("DrawImage"));
+        assertEquals(1 + 2 + (300 * 2), (int) items.get("Text"));
+        long contentBytes = 0;
+        int itemCount = 0;
+        for (CostReport.Page page : report.pages()) {
+            assertTrue(page.contentBytes() > 0);
+            assertTrue(page.itemCount() > 0);
+            contentBytes += page.contentBytes();
+            itemCount += page.itemCount();
+        }
+        assertEquals(report.contentBytes(), contentBytes);
+        int total = 0;
+        for (int n : items.values()) { total += n; }
+        assertEquals(total, itemCount);
+        // The first page has just the photo and a line of text, so the table pages are bigger.
+        assertTrue(report.biggestPage().pageNum() > 1);
+
+        for (CostReport.Phase phase : CostReport.Phase.values()) {
+            assertTrue(phase.name(), report.nanos(phase) > 0);
+        }
+        assertTrue(report.nanos(CostReport.Phase.RENDER) > report.nanos(CostReport.Phase.ADD_ITEM));
+    }
+}
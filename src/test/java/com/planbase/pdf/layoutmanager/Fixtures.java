@@ -0,0 +1,86 @@
+package com.planbase.pdf.layoutmanager;
+
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ Styles, images and documents shared by the tests, for when what's on the pages doesn't matter
+ much as long as there's enough of it.
+ */
+final class Fixtures {
+    private Fixtures() { throw new UnsupportedOperationException("No instances!"); }
+
+    static final TextStyle TEXT = TextStyle.of(PDType1Font.HELVETICA, 9, Color.BLACK);
+    static final TextStyle BOLD = TextStyle.of(PDType1Font.HELVETICA_BOLD, 9, Color.BLACK);
+    /** Top left, with a little padding and no border. */
+    static final CellStyle CELL = CellStyle.of(CellStyle.Align.TOP_LEFT, Padding.of(2), null, null);
+    /** Like CELL, with a thin gray border. */
+    static final CellStyle BORDERED = CellStyle.of(CellStyle.Align.TOP_LEFT, Padding.of(2), null,
+                                                   BorderStyle.of(Color.GRAY, 0.5));
+
+    private static final TextStyle COURIER = TextStyle.of(PDType1Font.COURIER, 8, Color.BLACK);
+    private static final TextStyle TIMES = TextStyle.of(PDType1Font.TIMES_ROMAN, 10, Color.BLACK);
+
+    /**
+     Adds and commits the given number of portrait pages, each with one cell holding a "Page n"
+     line and then lines of 80 random letters (so the content streams don't compress to nothing).
+     @return the same pageMgr.
+     */
+    static PdfLayoutMgr randomLines(PdfLayoutMgr pageMgr, int pages, int linesPerPage, long seed)
+            throws IOException {
+        Random rand = new Random(seed);
+        char[] line = new char[80];
+        for (int p = 0; p < pages; p++) {
+            LogicalPage lp = pageMgr.logicalPageStart(LogicalPage.Orientation.PORTRAIT);
+            List<Renderable> lines = new ArrayList<>(linesPerPage + 1);
+            lines.add(Text.of(COURIER, "Page " + p));
+            for (int i = 0; i < linesPerPage; i++) {
+                for (int c = 0; c < line.length; c++) {
+                    line[c] = (char) ('a' + rand.nextInt(26));
+                }
+                lines.add(Text.of(COURIER, new String(line)));
+            }
+            lp.putCell(30, lp.yPageTop(), Cell.of(CELL, 550, lines));
+            lp.commit();
+        }
+        return pageMgr;
+    }
+
+    /** A small opaque photo-like image: gradients with a little noise. */
+    static BufferedImage photo() {
+        Random rand = new Random(3);
+        BufferedImage bi = new BufferedImage(200, 150, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < bi.getHeight(); y++) {
+            for (int x = 0; x < bi.getWidth(); x++) {
+                bi.setRGB(x, y, (x << 16) | (y << 8) | rand.nextInt(32));
+            }
+        }
+        return bi;
+    }
+
+    /**
+     Adds and commits the given number of portrait pages, each with the same photo at the top
+     and 30 short lines of text below it.
+     @return the same pageMgr.
+     */
+    static PdfLayoutMgr report(PdfLayoutMgr pageMgr, int pages) throws IOException {
+        BufferedImage photo = photo();
+        for (int p = 0; p < pages; p++) {
+            LogicalPage lp = pageMgr.logicalPageStart(LogicalPage.Orientation.PORTRAIT);
+            lp.putCell(40, lp.yPageTop(), Cell.of(CELL, 200, ScaledPng.of(photo, 200, 150)));
+            for (int i = 0; i < 30; i++) {
+                lp.putCell(40, lp.yPageTop() - 160 - (i * 14),
+                           Cell.of(CELL, 500, TIMES, "Page " + p + " line " + i +
+                                                      " of the quarterly report"));
+            }
+            lp.commit();
+        }
+        return pageMgr;
+    }
+}
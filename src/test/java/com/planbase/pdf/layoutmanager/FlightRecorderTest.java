@@ -0,0 +1,122 @@
+package com.planbase.pdf.layoutmanager;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.planbase.pdf.layoutmanager.Fixtures.CELL;
+import static com.planbase.pdf.layoutmanager.Fixtures.TEXT;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ Records a small document with the pdflayoutmanager.jfc settings and checks that each kind of
+ event shows up with sensible values, then checks that none show up with the JDK's own settings.
+ */
+public class FlightRecorderTest {
+    private static final String PREFIX = "com.planbase.pdf.layoutmanager.";
+
+    private static Configuration settings() throws IOException, ParseException {
+        try (Reader r = new InputStreamReader(
+                FlightRecorderTest.class.getResourceAsStream("/pdflayoutmanager.jfc"),
+                StandardCharsets.UTF_8)) {
+            return Configuration.create(r);
+        }
+    }
+
+    private static void document() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < 4000) { sb.append("Lots and lots of words to wrap. "); }
+        BufferedImage bi = new BufferedImage(40, 20, BufferedImage.TYPE_INT_RGB);
+
+        PdfLayoutMgr pageMgr = PdfLayoutMgr.newRgbPageMgr();
+        LogicalPage lp = pageMgr.logicalPageStart(LogicalPage.Orientation.PORTRAIT);
+        double y = lp.putCell(40, lp.yPageTop(), Cell.of(CELL, 120, ScaledPng.of(bi))).getY();
+        y = lp.putCell(40, y, Cell.of(CELL, 200, TEXT, sb.toString())).getY();
+        lp.commit();
+        lp = pageMgr.logicalPageStart();
+        lp.putCell(40, lp.yPageTop(), Cell.of(CELL, 120, ScaledJpeg.of(bi)));
+        lp.commit();
+        pageMgr.save(new ByteArrayOutputStream());
+    }
+
+    private static List<RecordedEvent> record(Configuration c) throws IOException {
+        Path file = Files.createTempFile("layout", ".jfr");
+        try (Recording recording = new Recording(c)) {
+            recording.start();
+            document();
+            recording.stop();
+            recording.dump(file);
+            List<RecordedEvent> ours = new ArrayList<>();
+            for (RecordedEvent e : RecordingFile.readAllEvents(file)) {
+                if (e.getEventType().getName().startsWith(PREFIX)) { ours.add(e); }
+            }
+            return ours;
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static List<RecordedEvent> named(List<RecordedEvent> events, String name) {
+        List<RecordedEvent> ret = new ArrayList<>();
+        for (RecordedEvent e : events) {
+            if (e.getEventType().getName().equals(PREFIX + name)) { ret.add(e); }
+        }
+        return ret;
+    }
+
+    @Test public void recordsLayoutEvents() throws IOException, ParseException {
+        List<RecordedEvent> events = record(settings());
+
+        List<RecordedEvent> logicalPages = named(events, "LogicalPage");
+        assertEquals(2, logicalPages.size());
+        assertEquals("PORTRAIT", logicalPages.get(0).getString("orientation"));
+        int physicalPages = logicalPages.get(0).getInt("physicalPages") +
+                            logicalPages.get(1).getInt("physicalPages");
+
+        List<RecordedEvent> commits = named(events, "PageCommit");
+        assertEquals(physicalPages, commits.size());
+        assertTrue(physicalPages > 2);
+        for (RecordedEvent e : commits) {
+            assertTrue(e.getInt("items") > 0);
+            assertTrue(e.getLong("contentBytes") > 0);
+        }
+
+        List<RecordedEvent> images = named(events, "ImageEncode");
+        assertEquals(2, images.size());
+        for (RecordedEvent e : images) {
+            assertEquals(40, e.getInt("width"));
+            assertEquals(20, e.getInt("height"));
+            assertTrue(e.getLong("encodedBytes") > 0);
+        }
+
+        // Only the big paragraph, and only if it took over a millisecond.
+        for (RecordedEvent e : named(events, "TextWrap")) {
+            assertTrue(e.getInt("chars") >= LayoutEvents.LARGE_TEXT_CHARS);
+            assertTrue(e.getInt("lines") > 10);
+        }
+
+        List<RecordedEvent> saves = named(events, "Save");
+        assertEquals(1, saves.size());
+        assertEquals("plain", saves.get(0).getString("kind"));
+        assertEquals(physicalPages, saves.get(0).getInt("pages"));
+    }
+
+    @Test public void offByDefault() throws IOException, ParseException {
+        assertEquals(0, record(Configuration.getConfiguration("default")).size());
+    }
+}
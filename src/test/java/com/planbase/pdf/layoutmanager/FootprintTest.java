@@ -0,0 +1,224 @@
+package com.planbase.pdf.layoutmanager;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImage;
+import org.junit.Test;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static com.planbase.pdf.layoutmanager.Fixtures.BOLD;
+import static com.planbase.pdf.layoutmanager.Fixtures.CELL;
+import static com.planbase.pdf.layoutmanager.Fixtures.TEXT;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ Measures how much heap a laid-out (but uncommitted) document holds in its PageBuffers, a logical
+ page's border items, and the Cell and Text layout caches.  Measures bytes per item type and per
+ page for a table report and for paragraphs, and fails if a page gets more expensive than its
+ budget.  Run with the --add-opens from the surefire argLine.
+ */
+public class FootprintTest {
+    // Budgets are about 1.5 times what was measured when they were set.
+    private static final long TABLE_PAGE_BUDGET = 208 * 1024;
+    private static final long PARAGRAPH_PAGE_BUDGET = 24 * 1024;
+
+    private static final CellStyle GRID =
+            CellStyle.of(CellStyle.Align.TOP_LEFT, Padding.of(2), new Color(240, 240, 255),
+                         BorderStyle.of(Color.GRAY, 0.5));
+    private static final String[] WORDS = new String[] {
+            "the", "quarterly", "report", "shows", "revenue", "of", "$12.50", "per", "widget",
+            "shipped", "to", "customers", "in", "Zürich", "and", "Paris", "on", "time" };
+
+    private static String words(Random rand, int length) {
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < length) {
+            if (sb.length() > 0) { sb.append(' '); }
+            sb.append(WORDS[rand.nextInt(WORDS.length)]);
+        }
+        return sb.toString();
+    }
+
+    private static ObjectGraphSizer sizer() {
+        // Fonts, images and the PDDocument are shared by the whole document (or JVM), and colors
+        // are almost always constants.
+        return new ObjectGraphSizer().stopAt(PDDocument.class, PDFont.class, PDImage.class,
+                                             PdfLayoutMgr.class, Color.class);
+    }
+
+    private static final class Footprint {
+        final int pages;
+        final long total;
+        final Map<String,long[]> byItemType = new TreeMap<>();
+        final String histogram;
+        Footprint(int p, long t, String h) { pages = p; total = t; histogram = h; }
+        long perPage() { return total / pages; }
+        @Override public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(pages).append(" pages, ").append(total).append(" bytes, ")
+              .append(perPage()).append(" bytes/page");
+            for (Map.Entry<String,long[]> e : byItemType.entrySet()) {
+                long[] countBytes = e.getValue();
+                sb.append("\n    ").append(e.getKey()).append(": ").append(countBytes[0])
+                  .append(" items, ").append(countBytes[1] / countBytes[0]).append(" bytes/item");
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     Measures every item in every PageBuffer (each item's size includes anything it's the first to
+     reference, like its String), then the PageBuffers and their collections.
+     */
+    @SuppressWarnings("unchecked")
+    private static Footprint measurePages(PdfLayoutMgr pageMgr) {
+        ObjectGraphSizer sizer = sizer();
+        List<PdfLayoutMgr.PageBuffer> pages =
+                (List<PdfLayoutMgr.PageBuffer>) ObjectGraphSizer.field(pageMgr, "pages");
+        Map<String,long[]> byType = new TreeMap<>();
+        for (PdfLayoutMgr.PageBuffer pb : pages) {
+            for (PdfItem item : (Collection<PdfItem>) ObjectGraphSizer.field(pb, "items")) {
+                long[] countBytes = byType.computeIfAbsent(item.getClass().getSimpleName(),
+                                                           k -> new long[2]);
+                countBytes[0]++;
+                countBytes[1] += sizer.add(item);
+            }
+        }
+        sizer.add(pages);
+        Footprint fp = new Footprint(pages.size(), sizer.total(), sizer.histogram(6));
+        fp.byItemType.putAll(byType);
+        return fp;
+    }
+
+    private static BufferedImage logo() {
+        BufferedImage bi = new BufferedImage(60, 30, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < 30; y++) {
+            for (int x = 0; x < 60; x++) { bi.setRGB(x, y, (x * 4) << 8); }
+        }
+        return bi;
+    }
+
+    /** A typical report: a logo, then a 6-column gridded table with a header row. */
+    private static LogicalPage tableReport(PdfLayoutMgr pageMgr, int rows) throws IOException {
+        Random rand = new Random(1);
+        LogicalPage lp = pageMgr.logicalPageStart(LogicalPage.Orientation.PORTRAIT);
+        lp.putCell(40, lp.yPageTop(), Cell.of(CELL, 70, ScaledPng.of(logo())));
+        TableBuilder tb = lp.tableBuilder(Coord.of(40, lp.yPageTop() - 40));
+        tb.addCellWidths(60, 140, 70, 70, 90, 100);
+        TablePart header = tb.partBuilder().cellStyle(GRID).textStyle(BOLD);
+        header.rowBuilder().addTextCells("Id", "Description", "Quantity", "Price", "Shipped",
+                                         "Notes").buildRow();
+        header.buildPart();
+        TablePart body = tb.partBuilder().cellStyle(GRID).textStyle(TEXT);
+        for (int r = 0; r < rows; r++) {
+            body.rowBuilder().addTextCells("#" + r, words(rand, 20 + rand.nextInt(40)),
+                                           Integer.toString(rand.nextInt(1000)),
+                                           "$" + rand.nextInt(100) + ".99",
+                                           "2026-10-" + (10 + (r % 20)),
+                                           words(rand, rand.nextInt(30))).buildRow();
+        }
+        body.buildPart();
+        tb.buildTable();
+        return lp;
+    }
+
+    /** Paragraphs of body text. */
+    private static LogicalPage paragraphs(PdfLayoutMgr pageMgr, int count) {
+        Random rand = new Random(2);
+        LogicalPage lp = pageMgr.logicalPageStart(LogicalPage.Orientation.PORTRAIT);
+        double y = lp.yPageTop();
+        for (int i = 0; i < count; i++) {
+            y = lp.putCell(40, y, Cell.of(CELL, 500, TEXT, words(rand, 800))).getY() - 10;
+        }
+        return lp;
+    }
+
+    private static void finish(PdfLayoutMgr pageMgr, LogicalPage lp) throws IOException {
+        lp.commit();
+        pageMgr.save(new ByteArrayOutputStream());
+    }
+
+    @Test public void tablePages() throws IOException {
+        PdfLayoutMgr pageMgr = PdfLayoutMgr.newRgbPageMgr();
+        LogicalPage lp = tableReport(pageMgr, 600);
+        Footprint fp = measurePages(pageMgr);
+        assertTrue(fp.pages > 5);
+        assertTrue(fp.byItemType.containsKey("DrawLine"));
+        assertTrue(fp.byItemType.containsKey("FillRect"));
+        assertTrue(fp.byItemType.containsKey("Text"));
+        assertTrue(fp.byItemType.containsKey("DrawImage"));
+        assertTrue("Table page footprint " + fp.perPage() + " is over the budget of " +
+                   TABLE_PAGE_BUDGET, fp.perPage() < TABLE_PAGE_BUDGET);
+
+        // Committing lets go of the items.
+        lp.commit();
+        Footprint after = measurePages(pageMgr);
+        assertTrue(after.total < fp.total / 10);
+        pageMgr.save(new ByteArrayOutputStream());
+    }
+
+    @Test public void paragraphPages() throws IOException {
+        PdfLayoutMgr pageMgr = PdfLayoutMgr.newRgbPageMgr();
+        LogicalPage lp = paragraphs(pageMgr, 60);
+        Footprint fp = measurePages(pageMgr);
+        assertTrue(fp.pages > 5);
+        assertTrue("Paragraph page footprint " + fp.perPage() + " is over the budget of " +
+                   PARAGRAPH_PAGE_BUDGET, fp.perPage() < PARAGRAPH_PAGE_BUDGET);
+        finish(pageMgr, lp);
+    }
+
+    @Test public void borderItems() throws IOException {
+        PdfLayoutMgr pageMgr = PdfLayoutMgr.newRgbPageMgr();
+        LogicalPage lp = pageMgr.logicalPageStart(LogicalPage.Orientation.PORTRAIT);
+        lp.putCellAsHeaderFooter(40, lp.yPageTop() + 20,
+                                 Cell.of(CELL, 500, TEXT, "Quarterly report - Confidential"));
+        lp.putCellAsHeaderFooter(40, 20, Cell.of(CELL, 500, TEXT, "Printed 2026-10-19"));
+        ObjectGraphSizer sizer = sizer();
+        long bytes = sizer.add(ObjectGraphSizer.field(lp, "borderItems"));
+        assertEquals(2, sizer.count(PdfLayoutMgr.PageBuffer.Text.class));
+        // Border items are per logical page, not per physical page.
+        long perItem = sizer.bytes(PdfLayoutMgr.PageBuffer.Text.class) / 2;
+        assertTrue(perItem > 0);
+        assertTrue("2 header/footer lines hold " + bytes + " bytes", bytes < 2048);
+        finish(pageMgr, lp);
+    }
+
+    @Test public void layoutCaches() {
+        Random rand = new Random(3);
+        String paragraph = words(rand, 2000);
+        Text text = Text.of(TEXT, paragraph);
+        ObjectGraphSizer sizer = sizer();
+        long empty = sizer.add(ObjectGraphSizer.field(text, "dims"));
+
+        // Each width that's asked for is cached separately.
+        double[] widths = new double[] { 100, 300, 500 };
+        long[] textCache = new long[widths.length];
+        for (int i = 0; i < widths.length; i++) {
+            text.calcDimensions(widths[i]);
+            textCache[i] = sizer().add(ObjectGraphSizer.field(text, "dims")) - empty;
+        }
+        String sizes = "Text.dims for 2000 chars: " + Arrays.toString(textCache) +
+                       " bytes after widths " + Arrays.toString(widths);
+        assertTrue(sizes, textCache[0] > 0);
+        assertTrue(sizes, textCache[1] > textCache[0]);
+        assertTrue(sizes, textCache[2] > textCache[1]);
+
+        Cell cell = Cell.of(CELL, 300, Text.of(TEXT, paragraph));
+        long before = sizer().add(ObjectGraphSizer.field(cell, "preCalcRows"));
+        cell.calcDimensions(300);
+        // This includes the Text.dims entry that calcDimensions made for the cell's text.
+        long after = sizer().add(ObjectGraphSizer.field(cell, "preCalcRows"));
+        assertTrue("Cell.preCalcRows went from " + before + " to " + after + " bytes",
+                   after > before);
+    }
+}
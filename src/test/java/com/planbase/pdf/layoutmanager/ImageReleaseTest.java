@@ -0,0 +1,76 @@
+package com.planbase.pdf.layoutmanager;
+
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+
+import static com.planbase.pdf.layoutmanager.Fixtures.CELL;
+import static com.planbase.pdf.layoutmanager.Fixtures.TEXT;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ Checks that once an image has been embedded and the caller lets go of it, the manager doesn't
+ keep the source BufferedImage alive for the rest of the document.
+ */
+public class ImageReleaseTest {
+    /**
+     Draws an image on its own logical page and commits it.  The image and everything that
+     refers to it are local to this method, so only the returned WeakReference is left after.
+     */
+    private static WeakReference<BufferedImage> drawAndCommit(PdfLayoutMgr pageMgr, boolean jpeg)
+            throws IOException {
+        BufferedImage bi = Fixtures.photo();
+        LogicalPage lp = pageMgr.logicalPageStart();
+        lp.putCell(40, lp.yPageTop(),
+                   Cell.of(CELL, 200, jpeg ? ScaledJpeg.of(bi, 150, 112)
+                                           : ScaledPng.of(bi, 150, 112)));
+        lp.commit();
+        return new WeakReference<>(bi);
+    }
+
+    /** Asks for a garbage collection until the reference is cleared, for at most a few seconds. */
+    private static void awaitCollection(WeakReference<?> ref) throws InterruptedException {
+        for (int i = 0; (i < 50) && (ref.get() != null); i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+    }
+
+    @Test public void rastersAreCollectedAfterCommit() throws IOException, InterruptedException {
+        PdfLayoutMgr pageMgr = PdfLayoutMgr.newRgbPageMgr();
+        WeakReference<BufferedImage> png = drawAndCommit(pageMgr, false);
+        WeakReference<BufferedImage> jpeg = drawAndCommit(pageMgr, true);
+
+        awaitCollection(png);
+        awaitCollection(jpeg);
+        assertNull("The PNG source image is still reachable", png.get());
+        assertNull("The JPEG source image is still reachable", jpeg.get());
+
+        // The manager is still alive and the embedded images are still in the document.
+        LogicalPage lp = pageMgr.logicalPageStart();
+        lp.putCell(40, lp.yPageTop(), Cell.of(CELL, 200, TEXT, "After the images"));
+        lp.commit();
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        pageMgr.save(bos);
+        try (PDDocument doc = PDDocument.load(bos.toByteArray())) {
+            assertEquals(3, doc.getNumberOfPages());
+            assertEquals(1, imageCount(doc.getPage(0).getResources()));
+            assertEquals(1, imageCount(doc.getPage(1).getResources()));
+        }
+    }
+
+    private static int imageCount(PDResources resources) {
+        int ret = 0;
+        for (COSName name : resources.getXObjectNames()) {
+            if (resources.isImageXObject(name)) { ret++; }
+        }
+        return ret;
+    }
+}
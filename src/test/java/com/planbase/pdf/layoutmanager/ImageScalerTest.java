@@ -0,0 +1,39 @@
+package com.planbase.pdf.layoutmanager;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ImageScalerTest {
+    @Test public void pixelsFor() {
+        // One inch at 300 DPI
+        assertEquals(300, ImageScaler.pixelsFor(72, 300));
+        // Round up partial pixels
+        assertEquals(2, ImageScaler.pixelsFor(0.25, 300));
+        // Never zero
+        assertEquals(1, ImageScaler.pixelsFor(0, 300));
+    }
+
+    @Test public void downsample() {
+        BufferedImage big = new BufferedImage(4000, 3000, BufferedImage.TYPE_INT_RGB);
+        // Fits already - same object
+        assertTrue(big == ImageScaler.downsample(big, 4000, 3000));
+        assertTrue(big == ImageScaler.downsample(big, 5000, 5000));
+
+        BufferedImage small = ImageScaler.downsample(big, 300, 225);
+        assertEquals(300, small.getWidth());
+        assertEquals(225, small.getHeight());
+        assertEquals(BufferedImage.TYPE_INT_RGB, small.getType());
+
+        // Each axis is limited separately, but never enlarged.
+        BufferedImage tall = ImageScaler.downsample(big, 5000, 100);
+        assertEquals(4000, tall.getWidth());
+        assertEquals(100, tall.getHeight());
+
+        BufferedImage alpha = new BufferedImage(1000, 1000, BufferedImage.TYPE_4BYTE_ABGR);
+        assertEquals(BufferedImage.TYPE_INT_ARGB, ImageScaler.downsample(alpha, 10, 10).getType());
+    }
+}
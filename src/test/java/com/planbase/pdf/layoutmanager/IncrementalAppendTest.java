@@ -0,0 +1,185 @@
+package com.planbase.pdf.layoutmanager;
+
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceRGB;
+import org.apache.pdfbox.rendering.PDFRenderer;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static com.planbase.pdf.layoutmanager.Fixtures.CELL;
+import static com.planbase.pdf.layoutmanager.Fixtures.TEXT;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class IncrementalAppendTest {
+    private static void logPages(PdfLayoutMgr pageMgr, String day, int pages) throws IOException {
+        BufferedImage chart = new BufferedImage(50, 50, BufferedImage.TYPE_INT_RGB);
+        for (int x = 0; x < 50; x++) {
+            for (int y = 0; y < 50; y++) { chart.setRGB(x, y, 0xff0000); }
+        }
+        for (int p = 0; p < pages; p++) {
+            // Mix orientations to be sure an appended page doesn't inherit the wrong rotation.
+            LogicalPage lp = pageMgr.logicalPageStart((p % 2) == 0 ? LogicalPage.Orientation.PORTRAIT
+                                                                   : LogicalPage.Orientation.LANDSCAPE);
+            lp.putCell(40, lp.yPageTop(), Cell.of(CELL, 300, TEXT, day + " entry " + p));
+            lp.putCell(40, lp.yPageTop() - 40, Cell.of(CELL, 60, ScaledPng.of(chart)));
+            lp.commit();
+        }
+    }
+
+    private static Path existing(int pages, boolean compress) throws IOException {
+        Path path = Files.createTempFile("IncrementalAppendTest", ".pdf");
+        PdfLayoutMgr pageMgr = PdfLayoutMgr.newRgbPageMgr().compressObjects(compress);
+        logPages(pageMgr, "Day 1", pages);
+        pageMgr.save(path);
+        return path;
+    }
+
+    private static void append(Path path, String day, int pages) throws IOException {
+        PdfLayoutMgr pageMgr = PdfLayoutMgr.appendTo(path, PDDeviceRGB.INSTANCE, null);
+        logPages(pageMgr, day, pages);
+        pageMgr.save();
+    }
+
+    private static void appendTwice(boolean compress) throws IOException {
+        Path path = existing(20, compress);
+        try {
+            byte[] before = Files.readAllBytes(path);
+            append(path, "Day 2", 3);
+            byte[] after = Files.readAllBytes(path);
+            // Nothing that was there has changed.
+            assertArrayEquals(before, Arrays.copyOf(after, before.length));
+            String update = new String(after, before.length, after.length - before.length,
+                                       StandardCharsets.ISO_8859_1);
+            assertTrue(update.contains("/Prev "));
+
+            append(path, "Day 3", 2);
+            try (PDDocument doc = PDDocument.load(path.toFile())) {
+                assertEquals(25, doc.getNumberOfPages());
+                assertEquals(0, doc.getPage(22).getRotation());
+                assertEquals(90, doc.getPage(24).getRotation());
+                String text = new PDFTextStripper().getText(doc);
+                assertTrue(text.contains("Day 1 entry 19"));
+                assertTrue(text.indexOf("Day 2 entry 2") < text.indexOf("Day 3 entry 0"));
+                assertTrue(text.contains("Day 3 entry 1"));
+                // Renders with the image.
+                BufferedImage page = new PDFRenderer(doc).renderImage(23);
+                boolean red = false;
+                for (int y = 0; (y < page.getHeight()) && !red; y++) {
+                    for (int x = 0; x < page.getWidth(); x++) {
+                        if ((page.getRGB(x, y) & 0xffffff) == 0xff0000) { red = true; break; }
+                    }
+                }
+                assertTrue(red);
+            }
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test public void xrefTable() throws IOException { appendTwice(false); }
+
+    @Test public void xrefStream() throws IOException { appendTwice(true); }
+
+    @Test public void costOfNewPagesOnly() throws IOException {
+        Path small = existing(20, false);
+        Path big = existing(2000, false);
+        try {
+            long[] appended = new long[2];
+            Path[] files = new Path[] { small, big };
+            for (int i = 0; i < 2; i++) {
+                long size = Files.size(files[i]);
+                append(files[i], "Today", 5);
+                appended[i] = Files.size(files[i]) - size;
+            }
+            // The only difference is rewriting the list of kids at the root of the page tree.
+            assertTrue("Appended " + appended[0] + " bytes to 20 pages and " + appended[1] +
+                       " to 2000", appended[1] - appended[0] < 2000 * 12);
+            try (PDDocument doc = PDDocument.load(big.toFile())) {
+                assertEquals(2005, doc.getNumberOfPages());
+            }
+        } finally {
+            Files.delete(small);
+            Files.delete(big);
+        }
+    }
+
+    @Test public void notAPdf() throws IOException {
+        Path path = Files.createTempFile("IncrementalAppendTest", ".pdf");
+        try {
+            byte[] before = "Not a PDF\n".getBytes(StandardCharsets.ISO_8859_1);
+            Files.write(path, before);
+            try {
+                append(path, "Day 2", 1);
+                fail("Expected an IOException");
+            } catch (IOException expected) {
+                assertArrayEquals(before, Files.readAllBytes(path));
+            }
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    private static COSStream contents(int bytes) throws IOException {
+        COSStream stream = new COSStream();
+        try (OutputStream os = stream.createOutputStream()) {
+            for (int i = 0; i < bytes; i += 4) {
+                os.write("q Q\n".getBytes(StandardCharsets.ISO_8859_1));
+            }
+        }
+        return stream;
+    }
+
+    @Test public void failedAppendLeavesFileAlone() throws IOException {
+        Path path = existing(3, false);
+        try {
+            byte[] before = Files.readAllBytes(path);
+            // More than a buffer full of good content, then a content stream that can't be read
+            // any more, so that the update fails part way through.
+            PDPage good = new PDPage();
+            good.getCOSObject().setItem(COSName.CONTENTS, contents(200 * 1024));
+            PDPage bad = new PDPage();
+            COSStream closed = contents(10);
+            closed.close();
+            bad.getCOSObject().setItem(COSName.CONTENTS, closed);
+            try {
+                IncrementalPdfWriter.append(path, Arrays.asList(good, bad));
+                fail("Expected an IOException");
+            } catch (IOException expected) {
+                assertArrayEquals(before, Files.readAllBytes(path));
+            }
+
+            append(path, "Day 2", 1);
+            try (PDDocument doc = PDDocument.load(path.toFile())) {
+                assertEquals(4, doc.getNumberOfPages());
+            }
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void notToAStream() throws IOException {
+        Path path = existing(1, false);
+        try {
+            PdfLayoutMgr.appendTo(path, PDDeviceRGB.INSTANCE, null)
+                        .save(new ByteArrayOutputStream());
+        } finally {
+            Files.delete(path);
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.planbase.pdf.layoutmanager;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.contentstream.operator.Operator;
+import org.apache.pdfbox.pdfparser.PDFStreamParser;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.graphics.image.PDInlineImage;
+import org.apache.pdfbox.rendering.PDFRenderer;
+import org.junit.Test;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ Draws a table of 10,000 little icons with and without inline images, checks that both look the
+ same, that the inline ones are still compressed, and that the file isn't much bigger.  Then
+ does the same with icons reduced to an Indexed palette.
+ */
+public class InlineImageTest {
+    private static final int COLS = 40;
+    private static final int ROWS = 250;
+
+    private static BufferedImage checkMark() {
+        BufferedImage bi = new BufferedImage(16, 16, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < 16; y++) {
+            for (int x = 0; x < 16; x++) {
+                boolean mark = (Math.abs(y - (16 - x)) < 2) || ((x < 6) && (Math.abs(y - (x + 4)) < 2));
+                bi.setRGB(x, y, mark ? 0x008000 : 0xffffff);
+            }
+        }
+        return bi;
+    }
+
+    private static byte[] iconTable(int maxInlineBytes) throws IOException {
+        return iconTable(maxInlineBytes, false);
+    }
+
+    private static byte[] iconTable(int maxInlineBytes, boolean reduceColors) throws IOException {
+        PdfLayoutMgr pageMgr = PdfLayoutMgr.newRgbPageMgr().inlineImageMaxBytes(maxInlineBytes)
+                                           .reduceImageColors(reduceColors);
+        LogicalPage lp = pageMgr.logicalPageStart();
+        ScaledPng icon = ScaledPng.of(checkMark(), 12, 12);
+        CellStyle cellStyle = CellStyle.of(CellStyle.Align.MIDDLE_CENTER, Padding.of(1), null, null);
+        TableBuilder tb = lp.tableBuilder(Coord.of(40, lp.yPageTop()));
+        for (int c = 0; c < COLS; c++) { tb.addCellWidth(14.0); }
+        TablePart part = tb.partBuilder().cellStyle(cellStyle);
+        for (int r = 0; r < ROWS; r++) {
+            TableRowBuilder row = part.rowBuilder();
+            for (int c = 0; c < COLS; c++) {
+                row.addCell(Cell.of(cellStyle, 14, icon));
+            }
+            row.buildRow();
+        }
+        part.buildPart();
+        tb.buildTable();
+        lp.commit();
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        pageMgr.save(bos);
+        return bos.toByteArray();
+    }
+
+    private static void assertSameRendering(PDDocument expectedDoc, PDDocument actualDoc)
+            throws IOException {
+        BufferedImage expected = new PDFRenderer(expectedDoc).renderImage(0, 1);
+        BufferedImage actual = new PDFRenderer(actualDoc).renderImage(0, 1);
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                assertEquals(new Color(expected.getRGB(x, y)), new Color(actual.getRGB(x, y)));
+            }
+        }
+    }
+
+    /** Returns the inline image operators on the given page, as PDFBox parses them. */
+    private static List<Operator> inlineImages(PDPage page) throws IOException {
+        List<Operator> ret = new ArrayList<>();
+        PDFStreamParser parser = new PDFStreamParser(page);
+        for (Object token = parser.parseNextToken(); token != null;
+             token = parser.parseNextToken()) {
+            if ( (token instanceof Operator) && "BI".equals(((Operator) token).getName()) ) {
+                ret.add((Operator) token);
+            }
+        }
+        return ret;
+    }
+
+    private static PDInlineImage image(Operator bi, PDPage page) throws IOException {
+        return new PDInlineImage(bi.getImageParameters(), bi.getImageData(), page.getResources());
+    }
+
+    @Test public void inlineIcons() throws IOException {
+        byte[] xObjPdf = iconTable(0);
+        byte[] inlinePdf = iconTable(4096);
+
+        try (PDDocument xObjDoc = PDDocument.load(xObjPdf);
+             PDDocument inlineDoc = PDDocument.load(inlinePdf)) {
+
+            assertEquals(xObjDoc.getNumberOfPages(), inlineDoc.getNumberOfPages());
+            PDPage xObjPage = xObjDoc.getPage(0);
+            PDPage inlinePage = inlineDoc.getPage(0);
+            assertTrue(xObjPage.getResources().getXObjectNames().iterator().hasNext());
+            // No image resources at all when inlined.
+            assertTrue(!inlinePage.getResources().getXObjectNames().iterator().hasNext());
+            byte[] content = inlinePage.getContents().readAllBytes();
+            assertTrue(new String(content, StandardCharsets.ISO_8859_1).contains("BI"));
+
+            // The data is still Flate encoded, and the whole operator is small.
+            List<Operator> icons = inlineImages(inlinePage);
+            assertTrue(icons.size() > COLS);
+            PDInlineImage icon = image(icons.get(0), inlinePage);
+            assertEquals(Collections.singletonList("Fl"), icon.getFilters());
+            assertEquals("DeviceRGB", icon.getColorSpace().getName());
+            // Each one adds a little over a hundred bytes to the page, not the 768 of raw RGB.
+            assertTrue(content.length / icons.size() < 200);
+            assertTrue(inlinePdf.length + " bytes inline, " + xObjPdf.length + " as XObjects",
+                       inlinePdf.length < xObjPdf.length * 2);
+            // The limit is on the whole operator, not just the data.
+            int dataBytes = icons.get(0).getImageData().length;
+            try (PDDocument tooSmall = PDDocument.load(iconTable(dataBytes + 10))) {
+                assertTrue(tooSmall.getPage(0).getResources().getXObjectNames().iterator().hasNext());
+            }
+
+            // Same pixels either way.
+            assertSameRendering(xObjDoc, inlineDoc);
+        }
+    }
+
+    @Test public void inlineIndexedIcons() throws IOException {
+        byte[] xObjPdf = iconTable(0, true);
+        byte[] inlinePdf = iconTable(4096, true);
+
+        try (PDDocument xObjDoc = PDDocument.load(xObjPdf);
+             PDDocument inlineDoc = PDDocument.load(inlinePdf)) {
+            PDPage inlinePage = inlineDoc.getPage(0);
+            assertTrue(!inlinePage.getResources().getXObjectNames().iterator().hasNext());
+
+            // Green and white make a two-color palette, one bit per pixel, with the lookup table
+            // written inline.
+            PDInlineImage icon = image(inlineImages(inlinePage).get(0), inlinePage);
+            assertEquals("Indexed", icon.getColorSpace().getName());
+            assertEquals(1, icon.getBitsPerComponent());
+            BufferedImage pixels = icon.getImage();
+            assertEquals(0x008000, pixels.getRGB(8, 8) & 0xffffff);
+            assertEquals(0xffffff, pixels.getRGB(0, 0) & 0xffffff);
+
+            assertSameRendering(xObjDoc, inlineDoc);
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.planbase.pdf.layoutmanager;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceRGB;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImage;
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Flow;
+
+import static com.planbase.pdf.layoutmanager.Fixtures.BORDERED;
+import static com.planbase.pdf.layoutmanager.Fixtures.TEXT;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ Lays out a table with text and images under a listener that counts everything, checks that the
+ counts agree with each other and with the saved document, and that every phase was timed.
+ */
+public class LayoutListenerTest {
+    private static final class Counter implements LayoutListener {
+        int measured = 0, rendered = 0, items = 0, pages = 0, images = 0, saves = 0;
+        int committedItems = 0, savedPages = 0;
+        final Set<Cell> renderedCells = new HashSet<>();
+        final Map<String,Integer> itemTypes = new TreeMap<>();
+        final Map<String,Long> nanos = new HashMap<>();
+
+        private void time(String phase, long n) {
+            assertTrue(n >= 0);
+            nanos.merge(phase, n, Long::sum);
+        }
+
+        @Override public void measured(Cell cell, double maxWidth, long n) {
+            measured++;
+            assertEquals(cell.width(), maxWidth, 0);
+            time("measure", n);
+        }
+        @Override public void rendered(Cell cell, long n) {
+            rendered++;
+            renderedCells.add(cell);
+            time("render", n);
+        }
+        @Override public void itemAdded(int pageNum, PdfItem item, long n) {
+            items++;
+            itemTypes.merge(item.getClass().getSimpleName(), 1, Integer::sum);
+            time("add item", n);
+        }
+        @Override public void pageCommitted(int pageNum, int itemCount, long bytes, long n) {
+            pages++;
+            assertEquals(pages, pageNum);
+            committedItems += itemCount;
+            assertTrue(bytes > 0);
+            time("commit page", n);
+        }
+        @Override public void imageEncoded(String format, PDImage image, long n) {
+            images++;
+            assertTrue("jpeg".equals(format) || "png".equals(format));
+            assertTrue(image.getWidth() > 0);
+            time("encode image", n);
+        }
+        @Override public void saved(int pageCount, long n) {
+            saves++;
+            savedPages = pageCount;
+            time("save", n);
+        }
+    }
+
+    private static BufferedImage square(int rgb) {
+        BufferedImage bi = new BufferedImage(20, 20, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < 20; y++) {
+            for (int x = 0; x < 20; x++) { bi.setRGB(x, y, (x < y) ? rgb : 0xffffff); }
+        }
+        return bi;
+    }
+
+    @Test public void countsEveryPhase() throws IOException {
+        Counter counter = new Counter();
+        PdfLayoutMgr pageMgr = PdfLayoutMgr.newRgbPageMgr();
+        assertSame(LayoutListener.NONE, pageMgr.layoutListener());
+        pageMgr.layoutListener(counter);
+        assertSame(counter, pageMgr.layoutListener());
+
+        LogicalPage lp = pageMgr.logicalPageStart();
+        lp.putCellAsHeaderFooter(40, lp.yPageTop() + 20, Cell.of(BORDERED, 300, TEXT, "Header"));
+        ScaledPng png = ScaledPng.of(square(0x3366cc), 12, 12);
+        ScaledJpeg jpeg = ScaledJpeg.of(square(0xcc6633), 12, 12);
+        TableBuilder tb = lp.tableBuilder(Coord.of(40, lp.yPageTop()));
+        tb.addCellWidths(60, 200, 20, 20);
+        TablePart part = tb.partBuilder().cellStyle(BORDERED).textStyle(TEXT);
+        final int rows = 200;
+        for (int r = 0; r < rows; r++) {
+            part.rowBuilder().addTextCells("#" + r, "Some text that wraps onto a second line" +
+                                                    " in this column")
+                .addCell(Cell.of(BORDERED, 20, png))
+                .addCell(Cell.of(BORDERED, 20, jpeg)).buildRow();
+        }
+        part.buildPart();
+        tb.buildTable();
+        lp.commit();
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        pageMgr.save(bos);
+
+        // The header, plus every cell in the table, each rendered once and measured at least once.
+        int cells = 1 + (rows * 4);
+        assertEquals(cells, counter.rendered);
+        assertEquals(cells, counter.renderedCells.size());
+        assertTrue(counter.measured >= cells);
+        // Each image is encoded once, however many times it's shown.
+        assertEquals(2, counter.images);
+        assertEquals(counter.items, counter.committedItems);
+        assertEquals(rows * 2, (int) counter.itemTypes.get("DrawImage"));
+        assertTrue(counter.itemTypes.get("Text") > rows * 2);
+        assertTrue(counter.itemTypes.get("DrawLine") > rows * 4);
+        assertEquals(1, counter.saves);
+        assertEquals(new HashSet<>(Arrays.asList("measure", "render", "add item", "commit page",
+                                                 "encode image", "save")),
+                     counter.nanos.keySet());
+        try (PDDocument doc = PDDocument.load(bos.toByteArray())) {
+            assertTrue(doc.getNumberOfPages() > 1);
+            assertEquals(doc.getNumberOfPages(), counter.pages);
+            assertEquals(doc.getNumberOfPages(), counter.savedPages);
+        }
+    }
+
+    @Test public void streamingSave() throws IOException {
+        Counter counter = new Counter();
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        PdfLayoutMgr pageMgr = PdfLayoutMgr.of(PDDeviceRGB.INSTANCE, null, bos)
+                                           .layoutListener(counter);
+        for (int i = 0; i < 3; i++) {
+            LogicalPage lp = pageMgr.logicalPageStart();
+            lp.putCell(40, lp.yPageTop(), Cell.of(BORDERED, 300, TEXT, "Page " + i));
+            lp.commit();
+        }
+        pageMgr.save();
+        assertEquals(3, counter.pages);
+        assertEquals(3, counter.rendered);
+        assertEquals(1, counter.saves);
+        assertEquals(3, counter.savedPages);
+    }
+
+    private static PdfLayoutMgr threePages(Counter counter) throws IOException {
+        PdfLayoutMgr pageMgr = PdfLayoutMgr.newRgbPageMgr().layoutListener(counter);
+        for (int i = 0; i < 3; i++) {
+            LogicalPage lp = pageMgr.logicalPageStart();
+            lp.putCell(40, lp.yPageTop(), Cell.of(BORDERED, 300, TEXT, "Page " + i));
+            lp.commit();
+        }
+        return pageMgr;
+    }
+
+    @Test public void published() throws IOException {
+        Counter counter = new Counter();
+        Flow.Publisher<ByteBuffer> publisher = threePages(counter).publisher();
+        assertEquals(0, counter.saves);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        boolean[] complete = new boolean[1];
+        publisher.subscribe(new Flow.Subscriber<ByteBuffer>() {
+            @Override public void onSubscribe(Flow.Subscription s) { s.request(Long.MAX_VALUE); }
+            @Override public void onNext(ByteBuffer chunk) {
+                bos.write(chunk.array(), chunk.position(), chunk.remaining());
+            }
+            @Override public void onError(Throwable t) { throw new AssertionError(t); }
+            @Override public void onComplete() {
+                // The listener hears about it first.
+                assertEquals(1, counter.saves);
+                complete[0] = true;
+            }
+        });
+        assertTrue(complete[0]);
+        assertEquals(1, counter.saves);
+        assertEquals(3, counter.savedPages);
+        try (PDDocument doc = PDDocument.load(bos.toByteArray())) {
+            assertEquals(3, doc.getNumberOfPages());
+        }
+    }
+
+    @Test public void concatenated() throws IOException {
+        Counter first = new Counter();
+        Counter second = new Counter();
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (PdfConcatenator concat = PdfConcatenator.of(bos)) {
+            concat.add(threePages(first));
+            assertEquals(1, first.saves);
+            assertEquals(3, first.savedPages);
+            concat.add(threePages(second));
+        }
+        assertEquals(1, first.saves);
+        assertEquals(1, second.saves);
+        assertEquals(3, second.savedPages);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nullListener() {
+        PdfLayoutMgr.newRgbPageMgr().layoutListener(null);
+    }
+}
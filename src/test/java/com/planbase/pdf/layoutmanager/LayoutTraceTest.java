@@ -0,0 +1,132 @@
+package com.planbase.pdf.layoutmanager;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import static com.planbase.pdf.layoutmanager.Fixtures.BORDERED;
+import static com.planbase.pdf.layoutmanager.Fixtures.TEXT;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ Traces a table and some nested cells, and checks that the tree has the right shape, that every
+ item is counted once, and that a nested cell shows up as laid out at more than one width.
+ */
+public class LayoutTraceTest {
+
+    private static final class ItemCounter implements LayoutListener {
+        int items = 0;
+        @Override public void itemAdded(int pageNum, PdfItem item, long nanos) { items++; }
+    }
+
+    private static LayoutTrace.Node only(List<LayoutTrace.Node> nodes, String type) {
+        assertEquals(1, nodes.size());
+        assertEquals(type, nodes.get(0).type());
+        return nodes.get(0);
+    }
+
+    @Test public void tableAndNestedCells() throws IOException {
+        ItemCounter counter = new ItemCounter();
+        PdfLayoutMgr pageMgr = PdfLayoutMgr.newRgbPageMgr().layoutListener(counter);
+        LogicalPage lp = pageMgr.logicalPageStart();
+        ScaledPng icon = ScaledPng.of(new BufferedImage(8, 8, BufferedImage.TYPE_INT_RGB), 8, 8);
+        Cell inner = Cell.of(BORDERED, 150, TEXT, "The inner cell is laid out at two widths");
+        Cell outer = Cell.of(BORDERED, 300, inner);
+
+        LayoutTrace trace = LayoutTrace.start();
+        try {
+            assertSame(trace, LayoutTrace.current());
+            TableBuilder tb = lp.tableBuilder(Coord.of(40, lp.yPageTop()));
+            tb.addCellWidths(60, 120, 20);
+            TablePart part = tb.partBuilder().cellStyle(BORDERED).textStyle(TEXT);
+            for (int r = 0; r < 3; r++) {
+                part.rowBuilder().addTextCells("#" + r, "Some \"quoted\" text in row " + r)
+                    .addCell(Cell.of(BORDERED, 20, icon)).buildRow();
+            }
+            part.buildPart();
+            double y = tb.buildTable().getY();
+            lp.putCell(40, y - 10, outer);
+        } finally {
+            trace.close();
+        }
+        assertNull(LayoutTrace.current());
+        lp.commit();
+        pageMgr.save(new ByteArrayOutputStream());
+
+        // The table and the outer cell were put right on the page.
+        List<LayoutTrace.Node> roots = trace.roots();
+        assertEquals(2, roots.size());
+        LayoutTrace.Node table = roots.get(0);
+        assertEquals("TableBuilder", table.type());
+        LayoutTrace.Node tablePart = only(table.children(), "TablePart");
+        assertEquals(3, tablePart.children().size());
+        LayoutTrace.Node row = tablePart.children().get(0);
+        assertEquals("TableRowBuilder", row.type());
+        assertEquals(1, row.renderCalls());
+        assertEquals(3, row.children().size());
+        LayoutTrace.Node textCell = row.children().get(1);
+        assertEquals("Cell", textCell.type());
+        assertEquals(1, textCell.renderCalls());
+        assertTrue(textCell.measureCalls() >= 1);
+        assertEquals(1, textCell.widths().size());
+        assertEquals(1, textCell.layouts());
+        LayoutTrace.Node text = only(textCell.children(), "Text");
+        assertTrue(text.items() > 0);
+        assertTrue(text.renderNanos() > 0);
+        assertTrue(textCell.renderNanos() >= text.renderNanos());
+
+        // One icon in every row, but it's one node under the first row, with all three renders.
+        LayoutTrace.Node png = only(row.children().get(2).children(), "ScaledPng");
+        assertEquals(3, png.renderCalls());
+        assertEquals(3, png.items());
+        assertEquals(0, tablePart.children().get(1).children().get(2).children().size());
+
+        // The outer cell measures the inner one at its own width, but renders it at the width its
+        // text came out to, so the inner one is laid out twice.
+        LayoutTrace.Node outerNode = roots.get(1);
+        assertSame(outer, outerNode.thing());
+        LayoutTrace.Node innerNode = only(outerNode.children(), "Cell");
+        assertSame(inner, innerNode.thing());
+        // Measured inside the outer cell's padding of 2 on each side.
+        assertEquals(outer.width() - 4, innerNode.widths().iterator().next(), 0);
+        assertEquals(2, innerNode.layouts());
+
+        // Every item drawn while tracing is counted exactly once.
+        assertEquals(counter.items, table.totalItems() + outerNode.totalItems());
+
+        String json = trace.toJson();
+        assertTrue(json.startsWith("["));
+        assertTrue(json.contains("\"type\": \"TableBuilder\""));
+        assertTrue(json.contains("\"text\": \"Some \\\"quoted\\\" text in row 0\""));
+        assertTrue(json.contains("\"widths\": ["));
+        assertTrue(json.contains("\"layouts\": 2"));
+        int depth = 0;
+        for (char c : json.toCharArray()) {
+            if ( (c == '[') || (c == '{') ) { depth++; }
+            if ( (c == ']') || (c == '}') ) { depth--; }
+            assertTrue(depth >= 0);
+        }
+        assertEquals(0, depth);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void oneAtATime() {
+        try (LayoutTrace trace = LayoutTrace.start()) {
+            assertSame(trace, LayoutTrace.current());
+            LayoutTrace.start();
+        }
+    }
+
+    @Test public void offByDefault() {
+        assertNull(LayoutTrace.current());
+        // Without a trace, layout works as usual.
+        Text text = Text.of(TEXT, "Untraced");
+        assertTrue(text.calcDimensions(100).getWidth() > 0);
+    }
+}
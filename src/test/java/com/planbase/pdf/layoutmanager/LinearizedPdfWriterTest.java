@@ -0,0 +1,182 @@
+package com.planbase.pdf.layoutmanager;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.rendering.PDFRenderer;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.junit.Test;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LinearizedPdfWriterTest {
+    private static final int PAGES = 200;
+
+    private static byte[] statement(boolean linearize) throws IOException {
+        TextStyle textStyle = TextStyle.of(PDType1Font.HELVETICA, 12, Color.BLACK);
+        TextStyle boldStyle = TextStyle.of(PDType1Font.HELVETICA_BOLD, 12, Color.BLACK);
+        CellStyle cellStyle = CellStyle.of(CellStyle.Align.TOP_LEFT, Padding.of(2), null, null);
+        BufferedImage logo = new BufferedImage(30, 30, BufferedImage.TYPE_INT_RGB);
+        for (int i = 0; i < 30; i++) { logo.setRGB(i, 29 - i, 0x0000ff); }
+
+        PdfLayoutMgr pageMgr = PdfLayoutMgr.newRgbPageMgr().linearize(linearize);
+        for (int p = 0; p < PAGES; p++) {
+            LogicalPage lp = pageMgr.logicalPageStart(LogicalPage.Orientation.PORTRAIT);
+            // The logo and bold font are shared by every tenth page, but not the first.
+            if ( (p > 0) && ((p % 10) == 0) ) {
+                lp.putCell(40, lp.yPageTop(), Cell.of(cellStyle, 40, ScaledPng.of(logo)));
+                lp.putCell(100, lp.yPageTop(), Cell.of(cellStyle, 300, boldStyle, "Summary " + p));
+            }
+            // A different image on just one page.
+            if (p == 7) {
+                BufferedImage photo = new BufferedImage(20, 20, BufferedImage.TYPE_INT_RGB);
+                photo.setRGB(3, 3, 0xff0000);
+                lp.putCell(40, lp.yPageTop() - 60, Cell.of(cellStyle, 40, ScaledPng.of(photo)));
+            }
+            lp.putCell(100, lp.yPageTop() - 40, Cell.of(cellStyle, 300, textStyle, "Statement " + p));
+            lp.commit();
+        }
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        pageMgr.save(bos);
+        return bos.toByteArray();
+    }
+
+    private static long dictNum(String dict, String key) {
+        Matcher m = Pattern.compile("/" + key + " +(\\d+)").matcher(dict);
+        assertTrue(key, m.find());
+        return Long.parseLong(m.group(1));
+    }
+
+    /** Checks every entry of the cross-reference section that starts at the given offset. */
+    private static void assertXrefSection(String s, int xrefOffset) {
+        Matcher m = Pattern.compile("xref\n(\\d+) (\\d+)\n").matcher(s);
+        assertTrue(m.find(xrefOffset));
+        assertEquals(xrefOffset, m.start());
+        int first = Integer.parseInt(m.group(1));
+        int count = Integer.parseInt(m.group(2));
+        for (int i = 0; i < count; i++) {
+            int entry = m.end() + (i * 20);
+            if ((first + i) == 0) {
+                assertTrue(s.startsWith("0000000000 65535 f", entry));
+                continue;
+            }
+            int offset = Integer.parseInt(s.substring(entry, entry + 10));
+            assertTrue("object " + (first + i), s.startsWith((first + i) + " 0 obj", offset));
+        }
+    }
+
+    /** Reads numbers of any number of bits, most significant bit first. */
+    private static final class BitReader {
+        private final byte[] data;
+        private int bitPos;
+        BitReader(byte[] d, int bytePos) { data = d; bitPos = bytePos * 8; }
+        long read(int bits) {
+            long ret = 0;
+            for (int i = 0; i < bits; i++) {
+                int bit = (data[bitPos >> 3] >> (7 - (bitPos & 7))) & 1;
+                ret = (ret << 1) | bit;
+                bitPos++;
+            }
+            return ret;
+        }
+        void align() { bitPos = (bitPos + 7) & ~7; }
+    }
+
+    @Test public void linearized() throws Exception {
+        byte[] plain = statement(false);
+        byte[] pdf = statement(true);
+        String s = new String(pdf, StandardCharsets.ISO_8859_1);
+
+        // The linearization dictionary is the first object in the file.
+        int linStart = s.indexOf(" 0 obj");
+        assertTrue(linStart < 30);
+        String linDict = s.substring(linStart, s.indexOf("endobj", linStart));
+        assertEquals(1, dictNum(linDict, "Linearized"));
+        assertEquals(pdf.length, dictNum(linDict, "L"));
+        assertEquals(PAGES, dictNum(linDict, "N"));
+
+        // The first-page cross-reference table and trailer come right after it.
+        int firstXref = s.indexOf("xref\n", linStart);
+        assertXrefSection(s, firstXref);
+        String firstTrailer = s.substring(s.indexOf("trailer", firstXref), s.indexOf("%%EOF", firstXref));
+        int mainXref = (int) dictNum(firstTrailer, "Prev");
+        assertXrefSection(s, mainXref);
+        // The last startxref points back to the first-page table.
+        assertEquals(firstXref, Integer.parseInt(s.substring(s.lastIndexOf("startxref") + 9,
+                                                             s.lastIndexOf("%%EOF")).trim()));
+        // /T is the offset of the white space before the first entry of the main table.
+        int t = (int) dictNum(linDict, "T");
+        assertTrue(Character.isWhitespace(s.charAt(t)));
+        assertTrue(s.startsWith("0000000000 65535 f", t + 1));
+
+        // /O is the first page, which starts before /E, along with everything it uses.
+        long firstPageObj = dictNum(linDict, "O");
+        int e = (int) dictNum(linDict, "E");
+        int firstPageStart = s.indexOf("\n" + firstPageObj + " 0 obj") + 1;
+        assertTrue(firstPageStart < e);
+        String firstPage = s.substring(firstPageStart, s.indexOf("endobj", firstPageStart));
+        assertTrue(firstPage.contains("/Type /Page"));
+        // (Except the page tree, which goes at the end.)
+        Matcher refs = Pattern.compile("(\\d+) 0 R").matcher(firstPage.replaceAll("/Parent \\d+", ""));
+        while (refs.find()) {
+            int objStart = s.indexOf("\n" + refs.group(1) + " 0 obj");
+            assertTrue("object " + refs.group(1), (objStart > 0) && (objStart < e));
+        }
+
+        // /H is the hint stream.
+        Matcher h = Pattern.compile("/H \\[(\\d+) +(\\d+) *\\]").matcher(linDict);
+        assertTrue(h.find());
+        int hintOffset = Integer.parseInt(h.group(1));
+        int hintLength = Integer.parseInt(h.group(2));
+        assertTrue(s.startsWith("endobj\n", hintOffset + hintLength - 7));
+        int hintData = s.indexOf("stream\n", hintOffset) + 7;
+        assertTrue(hintData < firstPageStart);
+
+        // Walk the page offset hint table: each page should start where the hints say
+        // (remembering that hint offsets pretend the hint stream isn't there).
+        BitReader br = new BitReader(pdf, hintData);
+        long minObjs = br.read(32);
+        long firstPageLoc = br.read(32);
+        int objBits = (int) br.read(16);
+        long minLen = br.read(32);
+        int lenBits = (int) br.read(16);
+        br.read(32 + 16 + 32 + 16 + 16 + 16 + 16 + 16);
+        assertEquals(firstPageStart, firstPageLoc + hintLength);
+        assertTrue(minObjs >= 2);
+        for (int p = 0; p < PAGES; p++) {
+            br.read(objBits);
+        }
+        br.align();
+        long pageStart = firstPageLoc + hintLength;
+        for (int p = 0; p < PAGES; p++) {
+            String obj = s.substring((int) pageStart, s.indexOf("endobj", (int) pageStart));
+            assertTrue("page " + p + " at " + pageStart, obj.matches("(?s)\\d+ 0 obj\n<</Type /Page.*"));
+            pageStart += minLen + br.read(lenBits);
+        }
+
+        // And it's the same document.
+        try (PDDocument expected = PDDocument.load(plain);
+             PDDocument actual = PDDocument.load(pdf)) {
+            assertEquals(PAGES, actual.getNumberOfPages());
+            assertEquals(new PDFTextStripper().getText(expected),
+                         new PDFTextStripper().getText(actual));
+            for (int p : new int[] { 0, 7, 10 }) {
+                BufferedImage ei = new PDFRenderer(expected).renderImage(p, 0.5f);
+                BufferedImage ai = new PDFRenderer(actual).renderImage(p, 0.5f);
+                for (int y = 0; y < ei.getHeight(); y++) {
+                    for (int x = 0; x < ei.getWidth(); x++) {
+                        assertEquals(ei.getRGB(x, y), ai.getRGB(x, y));
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.planbase.pdf.layoutmanager;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ <p>Adds up the shallow sizes of everything reachable from some roots, counting each object once.
+ Sizes are estimated for a 64-bit HotSpot JVM with compressed oops and class pointers (the
+ default under 32GB): a 12-byte object header, 16 for arrays, 4-byte references, and every
+ object rounded up to 8 bytes.  That's within a few percent of what a heap dump reports.</p>
+
+ <p>Walking into java.util and java.lang needs those packages opened to the unnamed module
+ (see the surefire argLine in pom.xml).</p>
+ */
+final class ObjectGraphSizer {
+    private static final int HEADER = 12;
+    private static final int ARRAY_HEADER = 16;
+    private static final int REF = 4;
+
+    private final List<Class<?>> stopClasses = new ArrayList<>();
+    private final Set<Object> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final Map<Class<?>,long[]> byClass = new HashMap<>();
+    private long total = 0;
+
+    private static final Map<Class<?>,List<Field>> FIELDS = new HashMap<>();
+
+    /**
+     Don't count or walk into instances of these classes (or their subclasses).  Use this for things
+     that are shared by the whole document or the whole JVM, like fonts and the PDDocument.
+     */
+    ObjectGraphSizer stopAt(Class<?>... cs) {
+        Collections.addAll(stopClasses, cs);
+        return this;
+    }
+
+    /**
+     Adds everything reachable from the given root that hasn't been counted already.  Returns just
+     the bytes that this root added.
+     */
+    long add(Object root) {
+        long before = total;
+        Deque<Object> stack = new ArrayDeque<>();
+        push(stack, root);
+        while (!stack.isEmpty()) {
+            Object o = stack.pop();
+            Class<?> c = o.getClass();
+            long size;
+            if (c.isArray()) {
+                int len = Array.getLength(o);
+                Class<?> component = c.getComponentType();
+                size = align(ARRAY_HEADER + ((long) len * primitiveOrRefSize(component)));
+                if (!component.isPrimitive()) {
+                    for (int i = 0; i < len; i++) { push(stack, Array.get(o, i)); }
+                }
+            } else {
+                long fieldBytes = 0;
+                for (Field f : fields(c)) {
+                    fieldBytes += primitiveOrRefSize(f.getType());
+                    if (!f.getType().isPrimitive()) {
+                        try {
+                            push(stack, f.get(o));
+                        } catch (IllegalAccessException e) {
+                            throw new IllegalStateException("Can't read " + f, e);
+                        }
+                    }
+                }
+                size = align(HEADER + fieldBytes);
+            }
+            total += size;
+            long[] tally = byClass.computeIfAbsent(c, k -> new long[2]);
+            tally[0]++;
+            tally[1] += size;
+        }
+        return total - before;
+    }
+
+    /** Total bytes counted so far. */
+    long total() { return total; }
+
+    /** Bytes counted for instances of exactly this class. */
+    long bytes(Class<?> c) {
+        long[] tally = byClass.get(c);
+        return (tally == null) ? 0 : tally[1];
+    }
+
+    /** Instances counted of exactly this class. */
+    long count(Class<?> c) {
+        long[] tally = byClass.get(c);
+        return (tally == null) ? 0 : tally[0];
+    }
+
+    /** One line per class: count, bytes and class name, biggest first. */
+    String histogram(int maxLines) {
+        TreeMap<Long,List<String>> sorted = new TreeMap<>(Collections.reverseOrder());
+        for (Map.Entry<Class<?>,long[]> e : byClass.entrySet()) {
+            sorted.computeIfAbsent(e.getValue()[1], k -> new ArrayList<>())
+                  .add(String.format("%9d %10d  %s", e.getValue()[0], e.getValue()[1],
+                                     e.getKey().getName()));
+        }
+        StringBuilder sb = new StringBuilder();
+        int lines = 0;
+        for (List<String> ls : sorted.values()) {
+            for (String s : ls) {
+                if (lines++ == maxLines) { return sb.toString(); }
+                sb.append(s).append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    private void push(Deque<Object> stack, Object o) {
+        if ( (o == null) || (o instanceof Class) || (o instanceof Enum) || !seen.add(o) ) {
+            return;
+        }
+        for (Class<?> stop : stopClasses) {
+            if (stop.isInstance(o)) { return; }
+        }
+        stack.push(o);
+    }
+
+    private static long align(long size) { return (size + 7) & ~7L; }
+
+    private static int primitiveOrRefSize(Class<?> t) {
+        if (!t.isPrimitive()) { return REF; }
+        if ( (t == long.class) || (t == double.class) ) { return 8; }
+        if ( (t == int.class) || (t == float.class) ) { return 4; }
+        if ( (t == short.class) || (t == char.class) ) { return 2; }
+        return 1;
+    }
+
+    private static synchronized List<Field> fields(Class<?> c) {
+        List<Field> fs = FIELDS.get(c);
+        if (fs == null) {
+            fs = new ArrayList<>();
+            for (Class<?> k = c; k != null; k = k.getSuperclass()) {
+                for (Field f : k.getDeclaredFields()) {
+                    if (Modifier.isStatic(f.getModifiers())) { continue; }
+                    try {
+                        f.setAccessible(true);
+                    } catch (RuntimeException e) {
+                        throw new IllegalStateException("Can't open " + f + ".  Run with --add-opens " +
+                                                        k.getModule().getName() + "/" +
+                                                        k.getPackageName() + "=ALL-UNNAMED", e);
+                    }
+                    fs.add(f);
+                }
+            }
+            FIELDS.put(c, fs);
+        }
+        return fs;
+    }
+
+    /** Reads a private field of one of our own classes. */
+    static Object field(Object o, String name) {
+        for (Class<?> k = o.getClass(); k != null; k = k.getSuperclass()) {
+            try {
+                Field f = k.getDeclaredField(name);
+                f.setAccessible(true);
+                return f.get(o);
+            } catch (NoSuchFieldException e) {
+                // Try the superclass
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        throw new IllegalArgumentException("No field " + name + " in " + o.getClass());
+    }
+}
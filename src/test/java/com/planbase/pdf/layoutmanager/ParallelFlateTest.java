@@ -0,0 +1,161 @@
+package com.planbase.pdf.layoutmanager;
+
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.zip.Adler32;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ParallelFlateTest {
+    @Test public void adler32Combine() {
+        byte[] data = new byte[100000];
+        new Random(42).nextBytes(data);
+        Adler32 whole = new Adler32();
+        whole.update(data);
+
+        Adler32 first = new Adler32();
+        first.update(data, 0, 12345);
+        Adler32 second = new Adler32();
+        second.update(data, 12345, data.length - 12345);
+
+        assertEquals(whole.getValue(),
+                     ParallelFlate.adler32Combine(first.getValue(), second.getValue(),
+                                                  data.length - 12345));
+    }
+
+    /** Smooth gradients with some noise so that all the predictors get used. */
+    private static BufferedImage testImage(int w, int h) {
+        Random rand = new Random(7);
+        BufferedImage bi = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                int r = (x * 255) / w;
+                int g = (y * 255) / h;
+                int b = rand.nextInt(8) + ((x + y) % 200);
+                bi.setRGB(x, y, (r << 16) | (g << 8) | b);
+            }
+        }
+        return bi;
+    }
+
+    @Test public void multipleBandsRoundTrip() throws Exception {
+        // More than 1MB of raw RGB data, so several bands.
+        BufferedImage bi = testImage(1000, 700);
+        try (PDDocument doc = new PDDocument()) {
+            PDImageXObject img = ParallelFlate.createFlate(doc, bi, false, Deflater.DEFAULT_COMPRESSION);
+
+            // The raw stream must be a valid zlib stream, including the combined checksum.
+            byte[] raw;
+            try (InputStream is = img.getCOSObject().createRawInputStream()) {
+                raw = is.readAllBytes();
+            }
+            Inflater inflater = new Inflater();
+            inflater.setInput(raw);
+            byte[] buf = new byte[64 * 1024];
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buf);
+                assertTrue("inflater stalled", (n > 0) || !inflater.needsInput());
+                bos.write(buf, 0, n);
+            }
+            inflater.end();
+            // One filter-type byte per row plus three bytes per pixel.
+            assertEquals(700 * (1 + (1000 * 3)), bos.size());
+
+            // Decoding through PDFBox (with the PNG predictors) gives back the original pixels.
+            byte[] decoded;
+            try (InputStream is = img.createInputStream()) {
+                decoded = is.readAllBytes();
+            }
+            assertEquals(700 * 1000 * 3, decoded.length);
+            for (int y = 0; y < 700; y++) {
+                for (int x = 0; x < 1000; x++) {
+                    int i = ((y * 1000) + x) * 3;
+                    int rgb = ((decoded[i] & 0xff) << 16) | ((decoded[i + 1] & 0xff) << 8) |
+                              (decoded[i + 2] & 0xff);
+                    assertEquals(bi.getRGB(x, y) & 0xffffff, rgb);
+                }
+            }
+        }
+    }
+
+    /** A big scan: a gray gradient, or black and white stripes. */
+    private static BufferedImage scan(int type, int w, int h) {
+        BufferedImage bi = new BufferedImage(w, h, type);
+        WritableRaster raster = bi.getRaster();
+        int[] row = new int[w];
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                row[x] = (type == BufferedImage.TYPE_BYTE_BINARY) ? ((x / 7) + (y / 5)) % 2
+                                                                 : (x + y) % 256;
+            }
+            raster.setSamples(0, y, w, 1, 0, row);
+        }
+        return bi;
+    }
+
+    @Test public void bigGrayStaysGray() throws Exception {
+        BufferedImage gray = scan(BufferedImage.TYPE_BYTE_GRAY, 2048, 2048);
+        try (PDDocument doc = new PDDocument()) {
+            PDImageXObject img = ParallelFlate.createLossless(doc, gray, Deflater.DEFAULT_COMPRESSION);
+            assertEquals("DeviceGray", img.getColorSpace().getName());
+            assertEquals(8, img.getBitsPerComponent());
+            // The samples are written as they are, one byte per pixel.
+            byte[] decoded;
+            try (InputStream is = img.createInputStream()) {
+                decoded = is.readAllBytes();
+            }
+            assertEquals(2048 * 2048, decoded.length);
+            for (int i = 0; i < decoded.length; i += 997) {
+                assertEquals(((i % 2048) + (i / 2048)) % 256, decoded[i] & 0xff);
+            }
+        }
+    }
+
+    @Test public void bigBilevelStaysOneBit() throws Exception {
+        BufferedImage bw = scan(BufferedImage.TYPE_BYTE_BINARY, 2048, 2048);
+        try (PDDocument doc = new PDDocument()) {
+            PDImageXObject img = ParallelFlate.createLossless(doc, bw, Deflater.DEFAULT_COMPRESSION);
+            assertEquals(1, img.getBitsPerComponent());
+            assertEquals(1, img.getColorSpace().getNumberOfComponents());
+            assertEquals(COSName.CCITTFAX_DECODE,
+                         img.getCOSObject().getDictionaryObject(COSName.FILTER));
+        }
+    }
+
+    @Test public void smallImagesAtOtherLevels() throws Exception {
+        try (PDDocument doc = new PDDocument()) {
+            PDImageXObject gray = ParallelFlate.createLossless(
+                    doc, scan(BufferedImage.TYPE_BYTE_GRAY, 50, 40), Deflater.BEST_COMPRESSION);
+            assertEquals("DeviceGray", gray.getColorSpace().getName());
+            assertEquals(8, gray.getBitsPerComponent());
+
+            BufferedImage indexed = new BufferedImage(50, 40, BufferedImage.TYPE_BYTE_INDEXED);
+            for (int y = 0; y < 40; y++) {
+                for (int x = 0; x < 50; x++) {
+                    indexed.setRGB(x, y, (x < 25) ? 0xff0000 : (y < 20) ? 0x00ff00 : 0x0000ff);
+                }
+            }
+            PDImageXObject palette = ParallelFlate.createLossless(doc, indexed,
+                                                                  Deflater.BEST_SPEED);
+            assertEquals("Indexed", palette.getColorSpace().getName());
+            assertEquals(2, palette.getBitsPerComponent());
+
+            PDImageXObject rgb = ParallelFlate.createLossless(doc, testImage(50, 40),
+                                                              Deflater.BEST_SPEED);
+            assertEquals("DeviceRGB", rgb.getColorSpace().getName());
+            assertEquals(8, rgb.getBitsPerComponent());
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package com.planbase.pdf.layoutmanager;
+
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.junit.Test;
+
+import java.awt.Color;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ <p>Inputs that used to make layout take quadratic time (or forever): huge strings with and without
+ whitespace, rows of nothing but "\n", zero-width cells, deeply nested cells, and lines and tables
+ spanning hundreds of pages.  Each case has an allocation budget and checks that 4 times the
+ input costs roughly 4 times as much (less than 10 times, where quadratic growth would be 16
+ times), both in bytes allocated and in characters measured by the font.</p>
+
+ <p>Neither count depends on how busy the machine is.  The only limit on time is a generous
+ timeout on each test, to catch something that never finishes.  The benchmarks are the place to
+ see how fast these are.</p>
+ */
+public class PathologicalInputTest {
+    /** Helvetica that counts the characters it's asked to measure. */
+    private static final class CountingFont extends PDType1Font {
+        long chars = 0;
+
+        CountingFont(COSDictionary dict) throws IOException { super(dict); }
+
+        @Override public float getStringWidth(String text) throws IOException {
+            chars += text.length();
+            return super.getStringWidth(text);
+        }
+    }
+
+    private static CountingFont countingHelvetica() {
+        COSDictionary dict = new COSDictionary();
+        dict.setItem(COSName.TYPE, COSName.FONT);
+        dict.setItem(COSName.SUBTYPE, COSName.TYPE1);
+        dict.setName(COSName.BASE_FONT, "Helvetica");
+        dict.setItem(COSName.ENCODING, COSName.WIN_ANSI_ENCODING);
+        try {
+            return new CountingFont(dict);
+        } catch (IOException ioe) {
+            throw new IllegalStateException("Couldn't load the standard Helvetica metrics", ioe);
+        }
+    }
+
+    private static final CountingFont FONT = countingHelvetica();
+    private static final TextStyle TEXT = TextStyle.of(FONT, 10, Color.BLACK);
+    private static final CellStyle CELL = CellStyle.of(CellStyle.Align.TOP_LEFT, Padding.of(2),
+                                                       null, null);
+    private static final double MAX_GROWTH = 10;
+    private static final long TIMEOUT_MILLIS = 60000;
+
+    /** Something to measure: returns a result so the work can't be skipped. */
+    private interface Work { Object run(int n) throws IOException; }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static final class Cost {
+        final long bytes;
+        final long chars;
+        Cost(long b, long c) { bytes = b; chars = c; }
+        @Override public String toString() {
+            return (bytes / 1024) + "KB, " + chars + " chars measured";
+        }
+    }
+
+    /**
+     The least allocation out of 3 runs, and the characters measured in one (which is the same
+     every time).
+     */
+    private static Cost cost(Work work, int n) throws IOException {
+        long bytes = Long.MAX_VALUE;
+        long chars = 0;
+        for (int i = 0; i < 3; i++) {
+            long alloc = allocatedBytes();
+            FONT.chars = 0;
+            assertTrue(work.run(n) != null);
+            bytes = Math.min(bytes, allocatedBytes() - alloc);
+            chars = FONT.chars;
+        }
+        return new Cost(bytes, chars);
+    }
+
+    /**
+     Measures the work at n and at 4n, checks the bigger one against the allocation budget, and
+     checks that the growth in allocation and in characters measured is roughly linear.
+     */
+    private static void assertLinear(String name, Work work, int n, long maxBytes)
+            throws IOException {
+        work.run(n); // warm up
+        Cost small = cost(work, n);
+        Cost big = cost(work, 4 * n);
+        assertTrue(name + " allocated " + big, big.bytes < maxBytes);
+        assertTrue(name + " allocation grew from " + small + " to " + big,
+                   big.bytes < small.bytes * MAX_GROWTH);
+        assertTrue(name + " measuring grew from " + small + " to " + big,
+                   big.chars <= small.chars * MAX_GROWTH);
+    }
+
+    private static String repeat(char c, int n) {
+        char[] cs = new char[n];
+        Arrays.fill(cs, c);
+        return new String(cs);
+    }
+
+    private static String words(int length) {
+        String[] words = new String[] { "the", "quarterly", "report", "shows", "revenue", "of",
+                                        "widgets", "shipped", "to", "customers", "on", "time" };
+        Random rand = new Random(5);
+        StringBuilder sb = new StringBuilder(length + 16);
+        while (sb.length() < length) {
+            if (sb.length() > 0) { sb.append(' '); }
+            sb.append(words[rand.nextInt(words.length)]);
+        }
+        return sb.toString();
+    }
+
+    private static int lines(Text text, double width) {
+        return (int) Math.round(text.calcDimensions(width).getHeight() / TEXT.lineHeight());
+    }
+
+    private static void save(PdfLayoutMgr pageMgr, LogicalPage lp) throws IOException {
+        lp.commit();
+        pageMgr.save(new ByteArrayOutputStream());
+    }
+
+    @Test(timeout = TIMEOUT_MILLIS)
+    public void megabyteWithoutWhitespace() throws IOException {
+        final String big = repeat('x', 1024 * 1024);
+        assertLinear("no-whitespace Text", n -> Text.of(TEXT, big.substring(0, n)).calcDimensions(300),
+                     256 * 1024, 64L * 1024 * 1024);
+        // There's nowhere to wrap it, so it's cut into rows of the same length.
+        int quarter = lines(Text.of(TEXT, big.substring(0, big.length() / 4)), 300);
+        assertTrue(quarter > 1);
+        assertEquals(4 * quarter, lines(Text.of(TEXT, big), 300), 1);
+    }
+
+    @Test(timeout = TIMEOUT_MILLIS)
+    public void megabyteOfWords() throws IOException {
+        final String big = words(1024 * 1024);
+        assertLinear("1MB of words", n -> Text.of(TEXT, big.substring(0, n)).calcDimensions(300),
+                     256 * 1024, 64L * 1024 * 1024);
+    }
+
+    @Test(timeout = TIMEOUT_MILLIS)
+    public void oneVeryLongLine() throws IOException {
+        // Just wide enough that it doesn't wrap.  Wide letters make the first guess at where the
+        // line breaks fall short, so every word after that makes the line longer.
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < 256 * 1024) { sb.append("WWMW "); }
+        final String big = sb.toString();
+        assertLinear("one long line", n -> {
+            Text text = Text.of(TEXT, big.substring(0, n));
+            return text.calcDimensions(text.maxWidth() + 1);
+        }, 64 * 1024, 16L * 1024 * 1024);
+        Text text = Text.of(TEXT, big);
+        assertEquals(1, lines(text, text.maxWidth() + 1));
+    }
+
+    @Test(timeout = TIMEOUT_MILLIS)
+    public void newlineOnlyRows() throws IOException {
+        assertLinear("newline-only rows", n -> {
+            PdfLayoutMgr pageMgr = PdfLayoutMgr.newRgbPageMgr();
+            LogicalPage lp = pageMgr.logicalPageStart();
+            TableBuilder tb = lp.tableBuilder(Coord.of(40, lp.yPageTop()));
+            tb.addCellWidths(100, 100, 100);
+            TablePart part = tb.partBuilder().cellStyle(CELL).textStyle(TEXT);
+            for (int r = 0; r < n; r++) {
+                part.rowBuilder().addTextCells("\n", "\n\n", "\r\n").buildRow();
+            }
+            part.buildPart();
+            Coord end = tb.buildTable();
+            save(pageMgr, lp);
+            return end;
+        }, 1000, 256L * 1024 * 1024);
+        assertEquals(0, Text.of(TEXT, repeat('\n', 1024 * 1024)).calcDimensions(300).getHeight(), 0);
+    }
+
+    @Test(timeout = 10000)
+    public void zeroWidth() throws IOException {
+        // One word per line, instead of looping forever.
+        Text text = Text.of(TEXT, "Zero width still shows every word");
+        assertEquals(6, lines(text, 0));
+        assertEquals(6, lines(Text.of(TEXT, "  Zero width still shows every word  "), 0));
+        assertEquals(6, lines(text, 0.001));
+        // Narrower than the padding.
+        assertEquals(6, lines(text, -4));
+
+        PdfLayoutMgr pageMgr = PdfLayoutMgr.newRgbPageMgr();
+        LogicalPage lp = pageMgr.logicalPageStart();
+        lp.putCell(40, lp.yPageTop(), Cell.of(CELL, 0, TEXT, "Zero width cell"));
+        lp.putCell(40, lp.yPageTop(), Cell.of(CELL, 1, TEXT, "Narrower than its padding"));
+        TableBuilder tb = lp.tableBuilder(Coord.of(100, lp.yPageTop()));
+        tb.addCellWidths(0, 0, 50);
+        TablePart part = tb.partBuilder().cellStyle(CELL).textStyle(TEXT);
+        for (int r = 0; r < 100; r++) {
+            part.rowBuilder().addTextCells("a b c", "", "Row " + r).buildRow();
+        }
+        part.buildPart();
+        tb.buildTable();
+        save(pageMgr, lp);
+    }
+
+    private static Cell nested(int depth) {
+        Cell cell = Cell.of(CELL, 400, TEXT, "The innermost of many nested cells");
+        for (int i = 0; i < depth; i++) {
+            cell = Cell.of(CELL, 400, cell);
+        }
+        return cell;
+    }
+
+    @Test(timeout = TIMEOUT_MILLIS)
+    public void deeplyNestedCells() throws IOException {
+        assertLinear("nested cells", n -> {
+            PdfLayoutMgr pageMgr = PdfLayoutMgr.newRgbPageMgr();
+            LogicalPage lp = pageMgr.logicalPageStart();
+            Coord end = lp.putCell(40, lp.yPageTop(), nested(n));
+            save(pageMgr, lp);
+            return end;
+        }, 25, 64L * 1024 * 1024);
+    }
+
+    @Test(timeout = TIMEOUT_MILLIS)
+    public void lineAcrossHundredsOfPages() throws IOException {
+        assertLinear("line across pages", n -> {
+            PdfLayoutMgr pageMgr = PdfLayoutMgr.newRgbPageMgr();
+            LogicalPage lp = pageMgr.logicalPageStart(LogicalPage.Orientation.PORTRAIT);
+            double bottom = lp.yPageTop() - ((n - 0.5) * lp.printAreaHeight());
+            lp.putLine(40, lp.yPageTop(), 500, bottom, LineStyle.of(Color.BLUE));
+            lp.putRect(Coord.of(60, lp.yPageTop()), Dim.of(100, lp.yPageTop() - bottom), Color.GRAY);
+            save(pageMgr, lp);
+            return pageMgr;
+        }, 125, 256L * 1024 * 1024);
+
+        PdfLayoutMgr pageMgr = PdfLayoutMgr.newRgbPageMgr();
+        LogicalPage lp = pageMgr.logicalPageStart(LogicalPage.Orientation.PORTRAIT);
+        lp.putLine(40, lp.yPageTop(), 500, lp.yPageTop() - (499.5 * lp.printAreaHeight()),
+                   LineStyle.of(Color.BLUE));
+        lp.commit();
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        pageMgr.save(bos);
+        try (PDDocument doc = PDDocument.load(bos.toByteArray())) {
+            assertEquals(500, doc.getNumberOfPages());
+        }
+    }
+
+    @Test(timeout = TIMEOUT_MILLIS)
+    public void longTable() throws IOException {
+        // Every item at the bottom of a long table has to find its page.  That used to mean
+        // stepping down from the first page, one page at a time.
+        assertLinear("long table", n -> {
+            PdfLayoutMgr pageMgr = PdfLayoutMgr.newRgbPageMgr();
+            LogicalPage lp = pageMgr.logicalPageStart();
+            TableBuilder tb = lp.tableBuilder(Coord.of(40, lp.yPageTop()));
+            tb.addCellWidths(60, 60);
+            TablePart part = tb.partBuilder().cellStyle(CELL).textStyle(TEXT);
+            for (int r = 0; r < n; r++) {
+                part.rowBuilder().addTextCells("#" + r, "x").buildRow();
+            }
+            part.buildPart();
+            return tb.buildTable();
+        }, 5000, 256L * 1024 * 1024);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void notANumber() {
+        PdfLayoutMgr pageMgr = PdfLayoutMgr.newRgbPageMgr();
+        LogicalPage lp = pageMgr.logicalPageStart();
+        lp.putLine(40, lp.yPageTop(), 500, Double.NEGATIVE_INFINITY, LineStyle.of(Color.BLUE));
+    }
+}
@@ -0,0 +1,237 @@
+package com.planbase.pdf.layoutmanager;
+
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.junit.Test;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PdfConcatenatorTest {
+    private static final int CUSTOMERS = 60;
+
+    private static final BufferedImage LOGO = new BufferedImage(120, 60, BufferedImage.TYPE_INT_RGB);
+    static {
+        for (int x = 0; x < 120; x++) {
+            for (int y = 0; y < 60; y++) {
+                LOGO.setRGB(x, y, (x * 2) << 16 | (y * 4) << 8 | ((x + y) & 0xff));
+            }
+        }
+    }
+
+    /** A two-page statement with the same logo and fonts as every other one. */
+    private static PdfLayoutMgr statement(int customer) throws IOException {
+        TextStyle textStyle = TextStyle.of(PDType1Font.HELVETICA, 12, Color.BLACK);
+        TextStyle boldStyle = TextStyle.of(PDType1Font.HELVETICA_BOLD, 14, Color.BLACK);
+        CellStyle cellStyle = CellStyle.of(CellStyle.Align.TOP_LEFT, Padding.of(2), null, null);
+        PdfLayoutMgr pageMgr = PdfLayoutMgr.newRgbPageMgr();
+        for (int p = 0; p < 2; p++) {
+            LogicalPage lp = pageMgr.logicalPageStart(LogicalPage.Orientation.PORTRAIT);
+            lp.putCell(40, lp.yPageTop(), Cell.of(cellStyle, 100, ScaledPng.of(LOGO)));
+            lp.putCell(200, lp.yPageTop(), Cell.of(cellStyle, 300, boldStyle, "Customer " + customer));
+            lp.putCell(200, lp.yPageTop() - 40, Cell.of(cellStyle, 300, textStyle, "Page " + p));
+            lp.commit();
+        }
+        return pageMgr;
+    }
+
+    private static int count(String s, String regex) {
+        Matcher m = Pattern.compile(regex).matcher(s);
+        int ret = 0;
+        while (m.find()) { ret++; }
+        return ret;
+    }
+
+    @Test public void sharedResources() throws Exception {
+        // What everyone does now: save each one and glue the pages together with PDFBox.
+        ByteArrayOutputStream naive = new ByteArrayOutputStream();
+        // PDFBox needs every source open until the merged document is saved.
+        List<PDDocument> sources = new ArrayList<>();
+        try (PDDocument all = new PDDocument()) {
+            for (int c = 0; c < CUSTOMERS; c++) {
+                ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                statement(c).save(bos);
+                PDDocument one = PDDocument.load(bos.toByteArray());
+                sources.add(one);
+                for (PDPage page : one.getPages()) {
+                    all.importPage(page);
+                }
+            }
+            all.save(naive);
+        } finally {
+            for (PDDocument one : sources) {
+                one.close();
+            }
+        }
+
+        // Half from managers, half from saved files.
+        ByteArrayOutputStream combined = new ByteArrayOutputStream();
+        try (PdfConcatenator concat = PdfConcatenator.of(combined)) {
+            for (int c = 0; c < CUSTOMERS; c++) {
+                if ((c % 2) == 0) {
+                    concat.add(statement(c));
+                } else {
+                    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                    statement(c).save(bos);
+                    concat.add(new ByteArrayInputStream(bos.toByteArray()));
+                }
+            }
+            assertEquals(CUSTOMERS * 2, concat.pageCount());
+        }
+
+        byte[] pdf = combined.toByteArray();
+        StreamingPdfWriterTest.assertXrefOffsets(pdf);
+        String s = new String(pdf, StandardCharsets.ISO_8859_1);
+        // One logo and two fonts in the whole file.
+        assertEquals(1, count(s, "/Subtype /Image"));
+        assertEquals(2, count(s, "/Type /Font"));
+        assertTrue(combined.size() + " bytes concatenated, " + naive.size() + " merged with PDFBox",
+                   combined.size() < naive.size());
+
+        try (PDDocument doc = PDDocument.load(pdf)) {
+            assertEquals(CUSTOMERS * 2, doc.getNumberOfPages());
+            String text = new PDFTextStripper().getText(doc);
+            int pos = 0;
+            for (int c = 0; c < CUSTOMERS; c++) {
+                pos = text.indexOf("Customer " + c + "\n", pos);
+                assertTrue("Customer " + c, pos >= 0);
+            }
+        }
+    }
+
+    @Test public void compressed() throws Exception {
+        ByteArrayOutputStream combined = new ByteArrayOutputStream();
+        try (PdfConcatenator concat = PdfConcatenator.of(combined).compressObjects(true)) {
+            for (int c = 0; c < 5; c++) {
+                concat.add(statement(c));
+            }
+        }
+        try (PDDocument doc = PDDocument.load(combined.toByteArray())) {
+            assertEquals(10, doc.getNumberOfPages());
+        }
+    }
+
+    /** Saves a PDF with PDFBox and returns its bytes. */
+    private static byte[] saved(PDDocument doc) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        doc.save(bos);
+        return bos.toByteArray();
+    }
+
+    @Test public void sharedContentStream() throws Exception {
+        // A saved PDF whose three pages all draw the same content stream, like a template.
+        byte[] template;
+        try (PDDocument doc = new PDDocument()) {
+            PDPage first = new PDPage();
+            doc.addPage(first);
+            try (PDPageContentStream cs = new PDPageContentStream(doc, first)) {
+                cs.beginText();
+                cs.setFont(PDType1Font.HELVETICA, 12);
+                cs.newLineAtOffset(40, 700);
+                cs.showText("Template");
+                cs.endText();
+            }
+            for (int p = 0; p < 2; p++) {
+                PDPage page = new PDPage();
+                page.setResources(first.getResources());
+                page.getCOSObject().setItem(COSName.CONTENTS,
+                                            first.getCOSObject().getItem(COSName.CONTENTS));
+                doc.addPage(page);
+            }
+            template = saved(doc);
+        }
+
+        ByteArrayOutputStream combined = new ByteArrayOutputStream();
+        try (PdfConcatenator concat = PdfConcatenator.of(combined)) {
+            concat.add(new ByteArrayInputStream(template));
+            concat.add(statement(1));
+        }
+        byte[] pdf = combined.toByteArray();
+        StreamingPdfWriterTest.assertXrefOffsets(pdf);
+        String s = new String(pdf, StandardCharsets.ISO_8859_1);
+        // The template is written once and all three pages point to it.
+        Matcher m = Pattern.compile("/Contents +(\\d+) 0 R").matcher(s);
+        List<String> contents = new ArrayList<>();
+        while (m.find()) { contents.add(m.group(1)); }
+        assertEquals(5, contents.size());
+        assertEquals(contents.get(0), contents.get(1));
+        assertEquals(contents.get(0), contents.get(2));
+        try (PDDocument doc = PDDocument.load(pdf)) {
+            assertEquals(5, doc.getNumberOfPages());
+            PDFTextStripper stripper = new PDFTextStripper();
+            for (int p = 1; p <= 3; p++) {
+                stripper.setStartPage(p);
+                stripper.setEndPage(p);
+                assertEquals("Template\n", stripper.getText(doc));
+            }
+        }
+    }
+
+    @Test public void fontDescriptorsStayIndirect() throws Exception {
+        // Two fonts that share one descriptor, as they would when embedded from one font file.
+        COSDictionary descriptor = new COSDictionary();
+        descriptor.setItem(COSName.TYPE, COSName.FONT_DESC);
+        descriptor.setName(COSName.FONT_NAME, "Helvetica");
+        descriptor.setInt(COSName.FLAGS, 32);
+        byte[] source;
+        try (PDDocument doc = new PDDocument()) {
+            PDPage page = new PDPage();
+            doc.addPage(page);
+            try (PDPageContentStream cs = new PDPageContentStream(doc, page)) {
+                cs.beginText();
+                cs.newLineAtOffset(40, 700);
+                for (String name : new String[] { "One", "Two" }) {
+                    COSDictionary dict = new COSDictionary();
+                    dict.setItem(COSName.TYPE, COSName.FONT);
+                    dict.setItem(COSName.SUBTYPE, COSName.TYPE1);
+                    dict.setName(COSName.BASE_FONT, "Helvetica");
+                    // So they aren't the same font.
+                    dict.setName(COSName.NAME, name);
+                    dict.setItem(COSName.ENCODING, COSName.WIN_ANSI_ENCODING);
+                    dict.setItem(COSName.FONT_DESC, descriptor);
+                    cs.setFont(new PDType1Font(dict), 12);
+                    cs.showText(name + " ");
+                }
+                cs.endText();
+            }
+            source = saved(doc);
+        }
+
+        ByteArrayOutputStream combined = new ByteArrayOutputStream();
+        try (PdfConcatenator concat = PdfConcatenator.of(combined)) {
+            concat.add(new ByteArrayInputStream(source));
+        }
+        byte[] pdf = combined.toByteArray();
+        StreamingPdfWriterTest.assertXrefOffsets(pdf);
+        String s = new String(pdf, StandardCharsets.ISO_8859_1);
+        // Written once, as its own object, and referred to by both fonts.
+        assertEquals(1, count(s, "/Type /FontDescriptor"));
+        assertEquals(2, count(s, "/FontDescriptor +\\d+ 0 R"));
+        try (PDDocument doc = PDDocument.load(pdf)) {
+            assertEquals("One Two", new PDFTextStripper().getText(doc).trim());
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void usedUp() throws IOException {
+        PdfLayoutMgr pageMgr = statement(1);
+        PdfConcatenator.of(new ByteArrayOutputStream()).add(pageMgr);
+        pageMgr.save(new ByteArrayOutputStream());
+    }
+}
@@ -0,0 +1,131 @@
+package com.planbase.pdf.layoutmanager;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Flow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PdfPublisherTest {
+    private static final int PAGES = 300;
+
+    private static PdfLayoutMgr document() throws IOException {
+        return Fixtures.randomLines(PdfLayoutMgr.newRgbPageMgr(), PAGES, 40, 11);
+    }
+
+    /** A subscriber that only asks for more when the test tells it to. */
+    private static class SlowClient implements Flow.Subscriber<ByteBuffer> {
+        final ByteArrayOutputStream received = new ByteArrayOutputStream();
+        Flow.Subscription subscription;
+        int chunks = 0;
+        boolean complete = false;
+        Throwable error = null;
+
+        @Override public void onSubscribe(Flow.Subscription s) { subscription = s; }
+        @Override public void onNext(ByteBuffer item) {
+            chunks++;
+            byte[] bytes = new byte[item.remaining()];
+            item.get(bytes);
+            received.write(bytes, 0, bytes.length);
+        }
+        @Override public void onError(Throwable t) { error = t; }
+        @Override public void onComplete() { complete = true; }
+    }
+
+    @Test public void backpressure() throws Exception {
+        SlowClient client = new SlowClient();
+        document().publisher().subscribe(client);
+        assertNotNull(client.subscription);
+        // Nothing happens until someone asks.
+        assertEquals(0, client.received.size());
+
+        client.subscription.request(1);
+        assertEquals(1, client.chunks);
+        assertEquals(PdfPublisher.CHUNK_SIZE, client.received.size());
+        assertTrue(new String(client.received.toByteArray(), 0, 8, "ISO-8859-1").startsWith("%PDF-"));
+
+        client.subscription.request(2);
+        assertEquals(3, client.chunks);
+        assertFalse(client.complete);
+
+        // Take the rest.
+        while (!client.complete) {
+            assertNull(client.error);
+            client.subscription.request(5);
+        }
+        StreamingPdfWriterTest.assertXrefOffsets(client.received.toByteArray());
+        try (PDDocument doc = PDDocument.load(client.received.toByteArray())) {
+            assertEquals(PAGES, doc.getNumberOfPages());
+            assertTrue(new PDFTextStripper().getText(doc).contains("Page " + (PAGES - 1)));
+        }
+    }
+
+    @Test public void requestFromOnNext() throws Exception {
+        // An unbounded subscriber that asks for more from inside onNext().
+        SlowClient client = new SlowClient() {
+            @Override public void onSubscribe(Flow.Subscription s) {
+                super.onSubscribe(s);
+                s.request(1);
+            }
+            @Override public void onNext(ByteBuffer item) {
+                super.onNext(item);
+                subscription.request(1);
+            }
+        };
+        document().publisher().subscribe(client);
+        assertTrue(client.complete);
+        try (PDDocument doc = PDDocument.load(client.received.toByteArray())) {
+            assertEquals(PAGES, doc.getNumberOfPages());
+        }
+    }
+
+    @Test public void completesWithoutMoreDemand() throws Exception {
+        SlowClient first = new SlowClient();
+        document().publisher().subscribe(first);
+        while (!first.complete) { first.subscription.request(1); }
+
+        // Asking for exactly as many chunks as there are is enough to hear that it's complete.
+        SlowClient exact = new SlowClient();
+        document().publisher().subscribe(exact);
+        exact.subscription.request(first.chunks);
+        assertEquals(first.chunks, exact.chunks);
+        assertTrue(exact.complete);
+        assertNull(exact.error);
+    }
+
+    @Test public void cancel() throws Exception {
+        SlowClient client = new SlowClient();
+        document().publisher().subscribe(client);
+        client.subscription.request(1);
+        client.subscription.cancel();
+        int size = client.received.size();
+        client.subscription.request(10);
+        assertEquals(size, client.received.size());
+        assertFalse(client.complete);
+        assertNull(client.error);
+    }
+
+    @Test public void badRequest() throws Exception {
+        SlowClient client = new SlowClient();
+        document().publisher().subscribe(client);
+        client.subscription.request(0);
+        assertTrue(client.error instanceof IllegalArgumentException);
+    }
+
+    @Test public void oneSubscriber() throws Exception {
+        Flow.Publisher<ByteBuffer> publisher = document().publisher();
+        publisher.subscribe(new SlowClient());
+        SlowClient second = new SlowClient();
+        publisher.subscribe(second);
+        assertTrue(second.error instanceof IllegalStateException);
+    }
+}
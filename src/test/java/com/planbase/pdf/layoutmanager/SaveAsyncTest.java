@@ -0,0 +1,96 @@
+package com.planbase.pdf.layoutmanager;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.junit.Test;
+
+import java.awt.Color;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SaveAsyncTest {
+    private static final int PAGES = 200;
+
+    private static PdfLayoutMgr document(String name) throws IOException {
+        TextStyle textStyle = TextStyle.of(PDType1Font.HELVETICA, 12, Color.BLACK);
+        CellStyle cellStyle = CellStyle.of(CellStyle.Align.TOP_LEFT, Padding.of(2), null, null);
+        PdfLayoutMgr pageMgr = PdfLayoutMgr.newRgbPageMgr();
+        for (int p = 0; p < PAGES; p++) {
+            LogicalPage lp = pageMgr.logicalPageStart(LogicalPage.Orientation.PORTRAIT);
+            lp.putCell(40, lp.yPageTop(), Cell.of(cellStyle, 300, textStyle, name + " " + p));
+            lp.commit();
+        }
+        return pageMgr;
+    }
+
+    private static String text(byte[] pdf) throws IOException {
+        try (PDDocument doc = PDDocument.load(pdf)) {
+            assertEquals(PAGES, doc.getNumberOfPages());
+            return new PDFTextStripper().getText(doc);
+        }
+    }
+
+    @Test public void layOutWhileSaving() throws Exception {
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        document("First").save(expected);
+
+        ExecutorService writer = Executors.newSingleThreadExecutor();
+        try {
+            ByteArrayOutputStream first = new ByteArrayOutputStream();
+            ByteArrayOutputStream second = new ByteArrayOutputStream();
+            PdfLayoutMgr firstMgr = document("First");
+            CompletableFuture<Void> firstSaved = firstMgr.saveAsync(first, writer);
+
+            // The first manager is done.
+            try {
+                firstMgr.logicalPageStart();
+                fail("Expected an IllegalStateException");
+            } catch (IllegalStateException expectedEx) {
+                assertTrue(firstMgr.pages().isEmpty());
+            }
+
+            // Lay out the next one while the first is written.
+            CompletableFuture<Void> secondSaved = document("Second").saveAsync(second, writer);
+            CompletableFuture.allOf(firstSaved, secondSaved).get();
+
+            assertEquals(text(expected.toByteArray()), text(first.toByteArray()));
+            assertTrue(text(second.toByteArray()).contains("Second " + (PAGES - 1)));
+        } finally {
+            writer.shutdown();
+        }
+    }
+
+    @Test public void failureCompletesTheFuture() throws Exception {
+        OutputStream broken = new OutputStream() {
+            @Override public void write(int b) throws IOException {
+                throw new IOException("Disk full");
+            }
+        };
+        ExecutorService writer = Executors.newSingleThreadExecutor();
+        try {
+            document("Broken").saveAsync(broken, writer).get();
+            fail("Expected an ExecutionException");
+        } catch (ExecutionException ee) {
+            assertTrue(ee.getCause() instanceof IOException);
+        } finally {
+            writer.shutdown();
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void saveTwice() throws IOException {
+        PdfLayoutMgr pageMgr = document("Twice");
+        pageMgr.save(new ByteArrayOutputStream());
+        pageMgr.saveAsync(new ByteArrayOutputStream(), Runnable::run);
+    }
+}
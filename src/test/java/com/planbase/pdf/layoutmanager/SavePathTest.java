@@ -0,0 +1,76 @@
+package com.planbase.pdf.layoutmanager;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ Saves the same document through each output path and checks they're identical.
+ */
+public class SavePathTest {
+    private static final int PAGES = 300;
+
+    // compressObjects() makes the output exactly repeatable (PDFBox puts a time-based ID in its
+    // trailer).
+    private static PdfLayoutMgr document() throws IOException {
+        return Fixtures.randomLines(PdfLayoutMgr.newRgbPageMgr().compressObjects(true),
+                                    PAGES, 60, 7);
+    }
+
+    private interface Saver { void save(PdfLayoutMgr pageMgr, Path path) throws IOException; }
+
+    private static byte[] saved(Path path, Saver saver) throws IOException {
+        saver.save(document(), path);
+        return Files.readAllBytes(path);
+    }
+
+    @Test public void samePdfEveryWay() throws IOException {
+        Path path = Files.createTempFile("SavePathTest", ".pdf");
+        try {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            document().save(bos);
+            byte[] expected = bos.toByteArray();
+            assertTrue(expected.length > ChannelOutputStream.BUFFER_SIZE);
+
+            assertArrayEquals("FileOutputStream", expected, saved(path, (mgr, p) -> {
+                try (OutputStream os = new FileOutputStream(p.toFile())) {
+                    mgr.save(os);
+                }
+            }));
+            assertArrayEquals("FileChannel", expected, saved(path, PdfLayoutMgr::save));
+            assertArrayEquals("Memory mapped", expected,
+                              saved(path, (mgr, p) -> mgr.save(p, true)));
+            // Lots of little windows, to be sure the edges are right.
+            assertArrayEquals("Memory mapped 4K windows", expected, saved(path, (mgr, p) -> {
+                try (FileChannel ch = FileChannel.open(p, StandardOpenOption.CREATE,
+                                                       StandardOpenOption.TRUNCATE_EXISTING,
+                                                       StandardOpenOption.READ,
+                                                       StandardOpenOption.WRITE);
+                     MappedFileOutputStream os = new MappedFileOutputStream(ch, 4096)) {
+                    mgr.save(os);
+                }
+            }));
+
+            // Plain PDFBox output through a channel.
+            PdfLayoutMgr plain = document().compressObjects(false);
+            plain.save(path);
+            try (PDDocument doc = PDDocument.load(path.toFile())) {
+                assertEquals(PAGES, doc.getNumberOfPages());
+            }
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.planbase.pdf.layoutmanager;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceRGB;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.planbase.pdf.layoutmanager.Fixtures.BOLD;
+import static com.planbase.pdf.layoutmanager.Fixtures.CELL;
+import static com.planbase.pdf.layoutmanager.Fixtures.TEXT;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SplitOutputTest {
+    /** Keeps each part in memory, and remembers which ones have been closed. */
+    private static final class Parts implements PdfLayoutMgr.OutputParts {
+        final List<ByteArrayOutputStream> streams = new ArrayList<>();
+        final List<Boolean> closed = new ArrayList<>();
+        @Override public ByteArrayOutputStream open(int partNum) {
+            assertEquals(streams.size() + 1, partNum);
+            final int idx = streams.size();
+            closed.add(false);
+            ByteArrayOutputStream bos = new ByteArrayOutputStream() {
+                @Override public void close() { closed.set(idx, true); }
+            };
+            streams.add(bos);
+            return bos;
+        }
+    }
+
+    /** Lays out one page per logical page, numbered from 0.  Only page 3 uses the logo and bold font. */
+    private static void layOut(PdfLayoutMgr pageMgr, int pages, Parts parts) throws IOException {
+        BufferedImage logo = new BufferedImage(40, 40, BufferedImage.TYPE_INT_RGB);
+        for (int i = 0; i < 40; i++) { logo.setRGB(i, i, 0x00ff00); }
+        for (int p = 0; p < pages; p++) {
+            LogicalPage lp = pageMgr.logicalPageStart(LogicalPage.Orientation.PORTRAIT);
+            if (p == 3) {
+                lp.putCell(40, lp.yPageTop() - 40, Cell.of(CELL, 60, ScaledPng.of(logo)));
+                lp.putCell(40, lp.yPageTop() - 80, Cell.of(CELL, 300, BOLD, "Logo page"));
+            }
+            lp.putCell(40, lp.yPageTop(), Cell.of(CELL, 300, TEXT, "Page " + p));
+            lp.commit();
+            if ((p == 4) && (parts != null)) {
+                // The first part is finished as soon as its last page is committed.
+                assertEquals(2, parts.streams.size());
+                assertTrue(parts.closed.get(0));
+                assertFalse(parts.closed.get(1));
+            }
+        }
+    }
+
+    @Test public void everyNPages() throws Exception {
+        Parts parts = new Parts();
+        PdfLayoutMgr pageMgr = PdfLayoutMgr.of(PDDeviceRGB.INSTANCE, null, parts)
+                                           .maxPagesPerPart(4);
+        layOut(pageMgr, 10, parts);
+        pageMgr.save();
+        assertEquals(3, pageMgr.partCount());
+        assertEquals(3, parts.streams.size());
+
+        int[] expectedPages = new int[] { 4, 4, 2 };
+        int pageNum = 0;
+        for (int i = 0; i < parts.streams.size(); i++) {
+            assertTrue(parts.closed.get(i));
+            byte[] pdf = parts.streams.get(i).toByteArray();
+            StreamingPdfWriterTest.assertXrefOffsets(pdf);
+            String s = new String(pdf, StandardCharsets.ISO_8859_1);
+            // Only the first part uses the logo or the bold font.
+            assertEquals(i == 0, s.contains("/Subtype /Image"));
+            assertEquals(i == 0, s.contains("Helvetica-Bold"));
+            try (PDDocument doc = PDDocument.load(pdf)) {
+                assertEquals(expectedPages[i], doc.getNumberOfPages());
+                String text = new PDFTextStripper().getText(doc);
+                for (int p = 0; p < expectedPages[i]; p++) {
+                    assertTrue(text.contains("Page " + pageNum++ + "\n"));
+                }
+            }
+        }
+    }
+
+    @Test public void everyMBytes() throws Exception {
+        Parts parts = new Parts();
+        PdfLayoutMgr pageMgr = PdfLayoutMgr.of(PDDeviceRGB.INSTANCE, null, parts)
+                                           .maxBytesPerPart(3000)
+                                           .compressObjects(true);
+        layOut(pageMgr, 40, null);
+        pageMgr.save();
+        assertTrue(parts.streams.size() > 2);
+        int pages = 0;
+        for (ByteArrayOutputStream bos : parts.streams) {
+            // Over by at most about a page and the trailer.
+            assertTrue("A part of " + bos.size() + " bytes", bos.size() < 4000);
+            try (PDDocument doc = PDDocument.load(bos.toByteArray())) {
+                pages += doc.getNumberOfPages();
+            }
+        }
+        assertEquals(40, pages);
+    }
+
+    @Test public void noPages() throws Exception {
+        Parts parts = new Parts();
+        PdfLayoutMgr pageMgr = PdfLayoutMgr.of(PDDeviceRGB.INSTANCE, null, parts)
+                                           .maxPagesPerPart(4);
+        pageMgr.save();
+        assertEquals(1, parts.streams.size());
+        assertTrue(parts.closed.get(0));
+    }
+
+    @Test public void exactlyFull() throws Exception {
+        // The last part fills up on the last page, so save() has nothing more to write.
+        Parts parts = new Parts();
+        PdfLayoutMgr pageMgr = PdfLayoutMgr.of(PDDeviceRGB.INSTANCE, null, parts)
+                                           .maxPagesPerPart(5);
+        layOut(pageMgr, 10, null);
+        pageMgr.save();
+        assertEquals(2, parts.streams.size());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void notSplit() {
+        PdfLayoutMgr.newRgbPageMgr().maxPagesPerPart(500);
+    }
+}
@@ -0,0 +1,118 @@
+package com.planbase.pdf.layoutmanager;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceRGB;
+import org.apache.pdfbox.rendering.PDFRenderer;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static com.planbase.pdf.layoutmanager.Fixtures.BORDERED;
+import static com.planbase.pdf.layoutmanager.Fixtures.TEXT;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StreamingPdfWriterTest {
+    /** Lays out a few logical pages, each with text, lines, and the same two images. */
+    private static void layOut(PdfLayoutMgr pageMgr, ByteArrayOutputStream bytesSoFar,
+                               long[] sizeAfterFirstCommit) throws IOException {
+        BufferedImage melon = ImageIO.read(StreamingPdfWriterTest.class.getResourceAsStream("/melon.jpg"));
+        BufferedImage square = new BufferedImage(20, 20, BufferedImage.TYPE_INT_RGB);
+        for (int i = 0; i < 20; i++) { square.setRGB(i, i, 0xff0000); }
+
+        for (int p = 0; p < 3; p++) {
+            LogicalPage lp = pageMgr.logicalPageStart(LogicalPage.Orientation.PORTRAIT);
+            TableBuilder tb = lp.tableBuilder(Coord.of(40, lp.yPageTop()));
+            tb.addCellWidths(new double[] { 150, 150, 200 });
+            TablePart part = tb.partBuilder().cellStyle(BORDERED).textStyle(TEXT);
+            // Enough rows to break across two physical pages.
+            for (int r = 0; r < 40; r++) {
+                part.rowBuilder()
+                    .addTextCells("Page " + p + " row " + r, "(Parenthesis) \\ backslash")
+                    .addCell(Cell.of(BORDERED, 200,
+                                     Arrays.asList(ScaledJpeg.of(melon, 50, 30),
+                                                   ScaledPng.of(square, 20, 20))))
+                    .buildRow();
+            }
+            part.buildPart();
+            tb.buildTable();
+            lp.putLine(40, lp.yPageTop(), 500, lp.yPageBottom(), LineStyle.of(Color.BLUE));
+            lp.commit();
+            if (p == 0) {
+                sizeAfterFirstCommit[0] = bytesSoFar.size();
+            }
+        }
+    }
+
+    @Test public void sameAsSave() throws IOException {
+        long[] ignored = new long[1];
+        ByteArrayOutputStream savedBytes = new ByteArrayOutputStream();
+        PdfLayoutMgr saved = PdfLayoutMgr.newRgbPageMgr();
+        layOut(saved, savedBytes, ignored);
+        saved.save(savedBytes);
+
+        long[] sizeAfterFirstCommit = new long[1];
+        ByteArrayOutputStream streamedBytes = new ByteArrayOutputStream();
+        PdfLayoutMgr streamed = PdfLayoutMgr.of(PDDeviceRGB.INSTANCE, null, streamedBytes);
+        layOut(streamed, streamedBytes, sizeAfterFirstCommit);
+        // The first pages were on their way before the document was finished.
+        assertTrue(sizeAfterFirstCommit[0] > 0);
+        long sizeBeforeSave = streamedBytes.size();
+        streamed.save();
+        assertTrue(streamedBytes.size() > sizeBeforeSave);
+        assertXrefOffsets(streamedBytes.toByteArray());
+
+        try (PDDocument expected = PDDocument.load(savedBytes.toByteArray());
+             PDDocument actual = PDDocument.load(streamedBytes.toByteArray())) {
+            assertTrue(expected.getNumberOfPages() > 3);
+            assertEquals(expected.getNumberOfPages(), actual.getNumberOfPages());
+            assertEquals(new PDFTextStripper().getText(expected),
+                         new PDFTextStripper().getText(actual));
+
+            PDFRenderer expectedRenderer = new PDFRenderer(expected);
+            PDFRenderer actualRenderer = new PDFRenderer(actual);
+            for (int p = 0; p < expected.getNumberOfPages(); p++) {
+                BufferedImage e = expectedRenderer.renderImage(p, 0.5f);
+                BufferedImage a = actualRenderer.renderImage(p, 0.5f);
+                for (int y = 0; y < e.getHeight(); y++) {
+                    for (int x = 0; x < e.getWidth(); x++) {
+                        assertEquals(e.getRGB(x, y), a.getRGB(x, y));
+                    }
+                }
+            }
+        }
+        // Each image is written once, no matter how many pages show it.
+        assertTrue(streamedBytes.size() < savedBytes.size() * 1.1);
+    }
+
+    /**
+     PDFBox quietly rebuilds a broken cross-reference table, so check that every entry really
+     points at the start of its object.
+     */
+    static void assertXrefOffsets(byte[] pdf) {
+        String s = new String(pdf, StandardCharsets.ISO_8859_1);
+        int startXref = Integer.parseInt(s.substring(s.lastIndexOf("startxref") + 9,
+                                                     s.lastIndexOf("%%EOF")).trim());
+        assertTrue(s.startsWith("xref\n0 ", startXref));
+        int lineStart = s.indexOf('\n', startXref + 5) + 1;
+        int count = Integer.parseInt(s.substring(startXref + 7, lineStart - 1));
+        for (int objNum = 1; objNum < count; objNum++) {
+            int entry = lineStart + (objNum * 20);
+            int offset = Integer.parseInt(s.substring(entry, entry + 10));
+            assertTrue("object " + objNum, s.startsWith(objNum + " 0 obj", offset));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void wrongSave() throws IOException {
+        PdfLayoutMgr.of(PDDeviceRGB.INSTANCE, null, new ByteArrayOutputStream())
+                    .save(new ByteArrayOutputStream());
+    }
+}